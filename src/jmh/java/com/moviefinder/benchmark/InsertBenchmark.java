@@ -0,0 +1,56 @@
+package com.moviefinder.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.moviefinder.util.Trie;
+import com.moviefinder.util.TrieEngine;
+
+/**
+ * Time to insert a whole synthetic corpus in an empty trie of each engine. Divide size by the score
+ * for the inserts per second, and with -prof gc, gc.alloc.rate.norm by size for the bytes per insert.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xms6g", "-Xmx6g" })
+@State(Scope.Benchmark)
+public class InsertBenchmark {
+
+	@Param({ "10000", "1000000", "10000000" })
+	public int size;
+
+	@Param({ "HASHMAP", "COMPACT" })
+	public TrieEngine engine;
+
+	private List<String> titles;
+
+	@Setup(Level.Trial)
+	public void generateTitles() {
+		titles = TitleCorpus.titles(size, TitleCorpus.SEED);
+	}
+
+	@Benchmark
+	public Trie<String> insert() {
+		Trie<String> trie = engine.create();
+		for (String title : titles) {
+			trie.insert(title);
+		}
+		return trie;
+	}
+
+}
@@ -0,0 +1,95 @@
+package com.moviefinder.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.moviefinder.service.MovieService;
+import com.moviefinder.util.MovieDataLoader;
+
+/**
+ * Time to load a synthetic data file of size rows: parsing alone with both readers, and the complete
+ * {@link MovieService#loadData()} which also indexes the titles. Divide size by the score for the rows
+ * per second.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xms8g", "-Xmx8g" })
+@State(Scope.Benchmark)
+public class LoadBenchmark {
+
+	@Param({ "10000", "1000000", "10000000" })
+	public int size;
+
+	private Path file;
+	private ForkJoinPool pool;
+	@Setup(Level.Trial)
+	public void writeFile() throws Exception {
+		file = Files.createTempFile("moviefinder", ".tsv");
+		TitleCorpus.writeTsv(file, size, TitleCorpus.SEED);
+		pool = new ForkJoinPool();
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteFile() throws IOException {
+		pool.shutdown();
+		Files.deleteIfExists(file);
+	}
+
+	@Benchmark
+	public int readLines(Blackhole blackhole) throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			return MovieDataLoader.read(reader, blackhole::consume);
+		}
+	}
+
+	@Benchmark
+	public int readMapped(Blackhole blackhole) throws IOException {
+		return MovieDataLoader.read(file, pool, MovieDataLoader.DEFAULT_CHUNK_SIZE, blackhole::consume);
+	}
+
+	@Benchmark
+	public void loadData(Engine engine) {
+		engine.movieService.loadData();
+	}
+
+	/**
+	 * Service loading the data file with the trie engine of the parameter, the readers do not depend on it.
+	 */
+	@State(Scope.Benchmark)
+	public static class Engine {
+
+		@Param({ "hashmap", "compact" })
+		public String engine;
+
+		private MovieService movieService;
+
+		@Setup(Level.Trial)
+		public void createService(LoadBenchmark benchmark) throws ReflectiveOperationException {
+			movieService = Services.create(engine, benchmark.file.toString(), 0);
+		}
+
+	}
+
+}
@@ -0,0 +1,37 @@
+package com.moviefinder.benchmark;
+
+import java.lang.reflect.Field;
+
+import com.moviefinder.service.MovieService;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Creates services outside of Spring, setting their configuration fields the way Spring injects them.
+ */
+final class Services {
+
+	private Services() {
+	}
+
+	static MovieService create(String engine, String dataFile, int suggestionCacheSize)
+			throws ReflectiveOperationException {
+		MovieService movieService = new MovieService();
+		set(movieService, "trieEngine", engine);
+		set(movieService, "dataFile", dataFile);
+		set(movieService, "snapshotFile", "");
+		set(movieService, "deltaDir", "");
+		set(movieService, "loadParallelism", 0);
+		set(movieService, "suggestionCacheSize", suggestionCacheSize);
+		set(movieService, "meterRegistry", new SimpleMeterRegistry());
+		movieService.initialize();
+		return movieService;
+	}
+
+	private static void set(MovieService movieService, String name, Object value) throws ReflectiveOperationException {
+		Field field = MovieService.class.getDeclaredField(name);
+		field.setAccessible(true);
+		field.set(movieService, value);
+	}
+
+}
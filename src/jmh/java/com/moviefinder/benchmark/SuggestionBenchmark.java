@@ -0,0 +1,94 @@
+package com.moviefinder.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.moviefinder.model.SuggestionWrapper;
+import com.moviefinder.service.MovieService;
+
+/**
+ * What the suggestion endpoint costs behind the controller: every key typed while entering a title, one
+ * character more each time, with and without the suggestion cache, and in cursor mode.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms8g", "-Xmx8g" })
+@State(Scope.Benchmark)
+public class SuggestionBenchmark {
+
+	private static final int KEYS = 4096;
+
+	@Param({ "10000", "1000000", "10000000" })
+	public int size;
+
+	@Param({ "hashmap", "compact" })
+	public String engine;
+
+	@Param({ "0", "10000" })
+	public int cacheSize;
+
+	private MovieService movieService;
+	private String[] keys;
+	private int next;
+	private String cursor = "";
+
+	@Setup(Level.Trial)
+	public void loadData() throws IOException, ReflectiveOperationException {
+		Path file = Files.createTempFile("moviefinder", ".tsv");
+		try {
+			TitleCorpus.writeTsv(file, size, TitleCorpus.SEED);
+			movieService = Services.create(engine, file.toString(), cacheSize);
+			movieService.loadData();
+		} finally {
+			Files.deleteIfExists(file);
+		}
+		// the successive keys typed for random titles, up to twelve characters
+		List<String> typed = new ArrayList<>();
+		for (String title : TitleCorpus.keys(TitleCorpus.titles(size, TitleCorpus.SEED), 12, KEYS, false,
+				TitleCorpus.SEED)) {
+			for (int length = 1; length <= title.length() && typed.size() < KEYS; length++) {
+				typed.add(title.substring(0, length));
+			}
+		}
+		keys = typed.toArray(new String[typed.size()]);
+	}
+
+	private String nextKey() {
+		next = (next + 1) % keys.length;
+		return keys[next];
+	}
+
+	@Benchmark
+	public Set<String> getSuggestions() {
+		return movieService.getSuggestions(nextKey(), 10);
+	}
+
+	@Benchmark
+	public SuggestionWrapper getSuggestionsWithCursor() {
+		String key = nextKey();
+		SuggestionWrapper suggestions = movieService.getSuggestions(key, 10, key.length() == 1 ? "" : cursor);
+		cursor = suggestions.getCursor();
+		return suggestions;
+	}
+
+}
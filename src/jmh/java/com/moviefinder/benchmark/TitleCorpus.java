@@ -0,0 +1,146 @@
+package com.moviefinder.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic movie titles, the same for a given size and seed so that engines are compared on the same input.
+ *
+ * Words are drawn from a generated vocabulary of made up words with a Zipfian distribution, as in real
+ * titles where a few words are everywhere and most are rare. Titles have one to six words, about one
+ * in eight starts with "The", and some end with a sequel number or a year. The alternate titles of a movie
+ * get regions and languages drawn from the same kind of skewed distribution.
+ */
+public final class TitleCorpus {
+
+	public static final long SEED = 20180601L;
+
+	private static final int VOCABULARY = 50000;
+	private static final int[] WORD_COUNTS = { 1, 2, 2, 2, 3, 3, 3, 4, 4, 5, 6 };
+	private static final String[] SYLLABLES = { "ka", "lo", "mi", "ne", "ra", "to", "su", "vi", "an", "el", "or",
+			"us", "be", "da", "fi", "go", "hu", "je", "ly", "pa", "qu", "sa", "te", "wo", "ze", "ch", "st", "tr" };
+	private static final String[] REGIONS = { "US", "\\N", "XWW", "FR", "DE", "GB", "IT", "ES", "JP", "IN", "BR",
+			"RU", "CA", "AU", "SE", "MX", "PL", "NL", "GR", "TR" };
+	private static final String[] LANGUAGES = { "\\N", "en", "fr", "de", "ja", "es", "it", "ru", "hi", "pt" };
+
+	private final Random random;
+	private final String[] words = new String[VOCABULARY];
+	private final double[] wordCdf = zipfCdf(VOCABULARY, 1.0);
+	private final double[] regionCdf = zipfCdf(REGIONS.length, 1.2);
+	private final double[] languageCdf = zipfCdf(LANGUAGES.length, 1.5);
+
+	public TitleCorpus(long seed) {
+		random = new Random(seed);
+		for (int i = 0; i < VOCABULARY; i++) {
+			StringBuilder word = new StringBuilder();
+			for (int syllables = 1 + i % 3 + (i > 1000 ? 1 : 0); syllables > 0; syllables--) {
+				word.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+			}
+			word.setCharAt(0, Character.toUpperCase(word.charAt(0)));
+			words[i] = word.toString();
+		}
+	}
+
+	/**
+	 * @return size titles of the corpus of the seed
+	 */
+	public static List<String> titles(int size, long seed) {
+		TitleCorpus corpus = new TitleCorpus(seed);
+		List<String> titles = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			titles.add(corpus.nextTitle());
+		}
+		return titles;
+	}
+
+	/**
+	 * Writes a data file of movies with one to four alternate titles each, size rows in total.
+	 */
+	public static void writeTsv(Path file, int size, long seed) throws IOException {
+		TitleCorpus corpus = new TitleCorpus(seed);
+		try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			writer.write("titleId\tordering\ttitle\tregion\tlanguage\ttypes\tattributes\tisOriginalTitle\n");
+			int movie = 0;
+			for (int row = 0; row < size; movie++) {
+				int variants = 1 + corpus.random.nextInt(4);
+				String title = corpus.nextTitle();
+				for (int ordering = 1; ordering <= variants && row < size; ordering++, row++) {
+					String region = REGIONS[corpus.draw(corpus.regionCdf)];
+					String language = LANGUAGES[corpus.draw(corpus.languageCdf)];
+					writer.write(String.format("tt%07d\t%d\t%s\t%s\t%s\t%s\t\\N\t%d%n", movie, ordering,
+							ordering == 1 || region.equals("\\N") ? title : title + " " + region, region, language,
+							ordering == 1 ? "original" : "imdbDisplay", ordering == 1 ? 1 : 0));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns count search keys of the given length: the start of random titles, which most users type, or
+	 * when absent is set the same keys with a last character no title has.
+	 */
+	public static String[] keys(List<String> titles, int length, int count, boolean absent, long seed) {
+		Random random = new Random(seed);
+		String[] keys = new String[count];
+		for (int i = 0; i < count; i++) {
+			String title = titles.get(random.nextInt(titles.size()));
+			while (title.length() < length) {
+				title = title + " " + titles.get(random.nextInt(titles.size()));
+			}
+			keys[i] = title.substring(0, length);
+			if (absent) {
+				keys[i] = keys[i].substring(0, length - 1) + '~';
+			}
+		}
+		return keys;
+	}
+
+	private String nextTitle() {
+		StringBuilder title = new StringBuilder();
+		if (random.nextInt(8) == 0) {
+			title.append("The ");
+		}
+		for (int w = WORD_COUNTS[random.nextInt(WORD_COUNTS.length)]; w > 0; w--) {
+			title.append(words[draw(wordCdf)]);
+			if (w > 1) {
+				title.append(' ');
+			}
+		}
+		int suffix = random.nextInt(20);
+		if (suffix == 0) {
+			title.append(' ').append(2 + random.nextInt(4));
+		} else if (suffix == 1) {
+			title.append(" (").append(1920 + random.nextInt(100)).append(')');
+		}
+		return title.toString();
+	}
+
+	private int draw(double[] cdf) {
+		int position = Arrays.binarySearch(cdf, random.nextDouble());
+		return Math.min(position >= 0 ? position : -position - 1, cdf.length - 1);
+	}
+
+	/**
+	 * Cumulative distribution of ranks 1 to n with probabilities proportional to 1 / rank^exponent
+	 */
+	private static double[] zipfCdf(int n, double exponent) {
+		double[] cdf = new double[n];
+		double total = 0;
+		for (int rank = 1; rank <= n; rank++) {
+			total += 1 / Math.pow(rank, exponent);
+			cdf[rank - 1] = total;
+		}
+		for (int i = 0; i < n; i++) {
+			cdf[i] /= total;
+		}
+		return cdf;
+	}
+
+}
@@ -0,0 +1,85 @@
+package com.moviefinder.benchmark;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.moviefinder.util.Trie;
+import com.moviefinder.util.TrieEngine;
+
+/**
+ * Search latency of the trie engines over the synthetic corpora, by key length and whether the keys
+ * match: one character keys match a large part of the titles, twelve characters keys only a few.
+ * Run with -prof gc to get the bytes allocated per search (gc.alloc.rate.norm).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms6g", "-Xmx6g" })
+@State(Scope.Benchmark)
+public class TrieBenchmark {
+
+	private static final int KEYS = 1024;
+
+	@Param({ "10000", "1000000", "10000000" })
+	public int size;
+
+	@Param({ "HASHMAP", "COMPACT" })
+	public TrieEngine engine;
+
+	@Param({ "1", "3", "6", "12" })
+	public int keyLength;
+
+	@Param({ "false", "true" })
+	public boolean absent;
+
+	@Param({ "10" })
+	public int limit;
+
+	private Trie<String> trie;
+	private String[] keys;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void buildTrie() {
+		List<String> titles = TitleCorpus.titles(size, TitleCorpus.SEED);
+		trie = engine.create();
+		trie.insertAll(titles);
+		keys = TitleCorpus.keys(titles, keyLength, KEYS, absent, TitleCorpus.SEED + keyLength);
+	}
+
+	private String nextKey() {
+		next = (next + 1) & (KEYS - 1);
+		return keys[next];
+	}
+
+	@Benchmark
+	public Set<String> prefixSearch() {
+		return trie.prefixSearch(nextKey(), limit);
+	}
+
+	@Benchmark
+	public Set<String> search() {
+		return trie.search(nextKey(), limit);
+	}
+
+	@Benchmark
+	public Set<String> fuzzySearch() {
+		return trie.fuzzySearch(nextKey(), 1, limit);
+	}
+
+}
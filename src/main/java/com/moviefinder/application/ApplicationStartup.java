@@ -1,5 +1,8 @@
 package com.moviefinder.application;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
 import javax.inject.Inject;
 
 import org.springframework.boot.context.event.ApplicationReadyEvent;
@@ -8,6 +11,10 @@ import org.springframework.stereotype.Component;
 
 import com.moviefinder.service.MovieService;
 
+/**
+ * Loads the movie data once the application is ready, on a thread of its own so that requests are
+ * answered meanwhile. The health of the movie index reports when the data is loaded.
+ */
 @Component
 public class ApplicationStartup implements ApplicationListener<ApplicationReadyEvent> {
 
@@ -16,7 +23,16 @@ public class ApplicationStartup implements ApplicationListener<ApplicationReadyE
 	
 	@Override
 	public void onApplicationEvent(final ApplicationReadyEvent event) {
-		movieService.loadData();
+		Thread loader = new Thread(() -> {
+			movieService.loadData();
+			try {
+				movieService.watchDeltas();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}, "movie-loader");
+		loader.setDaemon(true);
+		loader.start();
 	}
 
 
@@ -0,0 +1,60 @@
+package com.moviefinder.application;
+
+import java.io.IOException;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import com.moviefinder.service.MovieService;
+
+/**
+ * Operations on the loaded index, not meant for the end users.
+ */
+@Controller
+@RequestMapping("/moviefinder/admin")
+public class MovieFinderAdminController {
+
+	@Inject
+	MovieService movieService;
+
+	@RequestMapping(value = "/snapshot", method = RequestMethod.POST, produces = "text/plain")
+	@ResponseBody
+	public String writeSnapshot() throws IOException {
+		return "Index snapshot written to " + movieService.writeSnapshot();
+	}
+
+	@RequestMapping(value = "/cache", method = RequestMethod.GET, produces = "application/json")
+	@ResponseBody
+	public Map<String, Number> getSuggestionCacheStats() {
+		return movieService.getSuggestionCacheStats();
+	}
+
+	@RequestMapping(value = "/status", method = RequestMethod.GET, produces = "application/json")
+	@ResponseBody
+	public Map<String, Object> getLoadProgress() {
+		return movieService.getLoadProgress().toMap();
+	}
+
+	/**
+	 * Applies a delta file of moviefinder.delta.dir, given by its name, no other file can be read.
+	 */
+	@RequestMapping(value = "/delta", method = RequestMethod.POST, produces = "text/plain")
+	@ResponseBody
+	public String applyDelta(@RequestParam("file") String file) throws IOException {
+		return movieService.applyDelta(file) + " titles added from " + file;
+	}
+
+	@ExceptionHandler(IllegalArgumentException.class)
+	public void badRequest(IllegalArgumentException e, HttpServletResponse response) throws IOException {
+		response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+	}
+
+}
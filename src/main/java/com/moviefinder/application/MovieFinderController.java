@@ -1,21 +1,33 @@
 package com.moviefinder.application;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 
 import javax.inject.Inject;
+import javax.servlet.http.HttpServletResponse;
 
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.moviefinder.application.SuggestionStreamWriter.Format;
 import com.moviefinder.model.MovieData;
 import com.moviefinder.model.MovieResponseWrapper;
+import com.moviefinder.model.SuggestionFilter;
 import com.moviefinder.model.SuggestionWrapper;
 import com.moviefinder.service.MovieService;
 import com.moviefinder.util.JqgridResponse;
@@ -24,42 +36,174 @@ import com.moviefinder.util.JqgridResponse;
 @RequestMapping("/moviefinder")
 public class MovieFinderController {
 
+	/**
+	 * Header set to true on the responses searched in a partial index, while the data is loading
+	 */
+	public static final String PARTIAL_HEADER = "X-Moviefinder-Partial";
+
 	@Inject
 	MovieService movieService;
 
+	@Inject
+	ObjectMapper objectMapper;
+
 	@GetMapping("/")
 	public String autocomplete(Model model) {
 		model.addAttribute("title", "MovieFinder");
 		return "moviefinder";
 	}
 
+	/**
+	 * Suggestions of the key. The optional region, language and isOriginalTitle restrict them to the titles
+	 * having a row with all of these values, ignoring case: a title with a US row in English and a FR row in
+	 * French passes region=US and language=en, not region=FR and language=en. Filtered suggestions are neither fuzzy nor in cursor mode, a filter with fuzzy answers 400.
+	 * A search exhausting its budget answers the suggestions found until then, flagged as truncated.
+	 */
 	@RequestMapping(value = "/suggestion", method = RequestMethod.GET, produces = "application/json")
 	@ResponseBody
-	public SuggestionWrapper getMovieSuggestions(@RequestParam("key") String key) {
-		Set<String> suggestions = movieService.getSuggestions(key);
-		SuggestionWrapper suggestionWrapper = SuggestionWrapper.builder().suggestions(suggestions).build();
+	public SuggestionWrapper getMovieSuggestions(@RequestParam("key") String key,
+			@RequestParam(value = "limit", defaultValue = "10") int limit,
+			@RequestParam(value = "fuzzy", defaultValue = "0") int fuzzy,
+			@RequestParam(value = "cursor", required = false) String cursor,
+			@RequestParam(value = "region", required = false) String region,
+			@RequestParam(value = "language", required = false) String language,
+			@RequestParam(value = "isOriginalTitle", required = false) String isOriginalTitle) {
+		checkLimit(limit, MovieService.MAX_LIMIT);
+		SuggestionFilter filter = SuggestionFilter.builder().region(region).language(language)
+				.isOriginalTitle(isOriginalTitle).build();
+		if (!filter.isEmpty()) {
+			if (fuzzy > 0) {
+				throw new IllegalArgumentException("Invalid fuzzy search with filters");
+			}
+			return SuggestionWrapper.builder().suggestions(movieService.getFilteredSuggestions(key, limit, filter))
+					.partial(movieService.isPartial()).truncated(movieService.isTruncated()).build();
+		}
+		if (fuzzy == 0 && cursor != null) {
+			return movieService.getSuggestions(key, limit, cursor);
+		}
+		Set<String> suggestions = fuzzy > 0 ? movieService.getFuzzySuggestions(key, fuzzy, limit)
+				: movieService.getSuggestions(key, limit);
+		SuggestionWrapper suggestionWrapper = SuggestionWrapper.builder().suggestions(suggestions)
+				.partial(movieService.isPartial()).truncated(movieService.isTruncated()).build();
 		suggestionWrapper.setSuggestions(suggestions);
 		return suggestionWrapper;
 	}
+
+	/**
+	 * Suggestions written one per line as JSON strings (NDJSON) while the index finds them, the first ones
+	 * reach the client before the search completes. Nothing is buffered, so limit can be large, up to
+	 * {@link MovieService#MAX_STREAM_LIMIT}.
+	 */
+	@RequestMapping(value = "/suggestion/stream", method = RequestMethod.GET, produces = "application/x-ndjson")
+	public void streamMovieSuggestions(@RequestParam("key") String key,
+			@RequestParam(value = "limit", defaultValue = "10") int limit, HttpServletResponse response)
+			throws IOException {
+		checkLimit(limit, MovieService.MAX_STREAM_LIMIT);
+		streamMovieSuggestions(key, limit, Format.NDJSON, "application/x-ndjson", response);
+	}
+
+	/**
+	 * Same as {@link #streamMovieSuggestions(String, int, HttpServletResponse)} as server sent events, one per
+	 * suggestion, followed by an end event holding the number of suggestions.
+	 */
+	@RequestMapping(value = "/suggestion/events", method = RequestMethod.GET, produces = "text/event-stream")
+	public void streamMovieSuggestionEvents(@RequestParam("key") String key,
+			@RequestParam(value = "limit", defaultValue = "10") int limit, HttpServletResponse response)
+			throws IOException {
+		checkLimit(limit, MovieService.MAX_STREAM_LIMIT);
+		streamMovieSuggestions(key, limit, Format.SSE, "text/event-stream", response);
+	}
+
+	private void streamMovieSuggestions(String key, int limit, Format format, String contentType,
+			HttpServletResponse response) throws IOException {
+		response.setContentType(contentType);
+		response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+		setPartialHeader(response);
+		try (SuggestionStreamWriter writer = new SuggestionStreamWriter(
+				objectMapper.getFactory().createGenerator(response.getOutputStream()), format)) {
+			movieService.streamSuggestions(key, limit, writer);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * @throws IllegalArgumentException if limit is not between 1 and max
+	 */
+	private static void checkLimit(int limit, int max) {
+		if (limit < 1 || limit > max) {
+			throw new IllegalArgumentException("Invalid limit " + limit + ", between 1 and " + max);
+		}
+	}
+
+	/**
+	 * Invalid parameters, a limit out of range or a batch too large, answer 400 instead of 500.
+	 */
+	@ExceptionHandler(IllegalArgumentException.class)
+	public void badRequest(IllegalArgumentException e, HttpServletResponse response) throws IOException {
+		response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+	}
+
+	private void setPartialHeader(HttpServletResponse response) {
+		if (movieService.isPartial()) {
+			response.setHeader(PARTIAL_HEADER, "true");
+		}
+	}
+
+	/**
+	 * Suggestions of a JSON array of keys, in a single request. The response maps every key to its
+	 * suggestions, empty when nothing matches.
+	 */
+	@RequestMapping(value = "/suggestions", method = RequestMethod.POST, consumes = "application/json",
+			produces = "application/json")
+	@ResponseBody
+	public Map<String, Set<String>> getMovieSuggestions(@RequestBody List<String> keys,
+			@RequestParam(value = "limit", defaultValue = "10") int limit,
+			@RequestParam(value = "fuzzy", defaultValue = "0") int fuzzy, HttpServletResponse response) {
+		checkLimit(limit, MovieService.MAX_LIMIT);
+		setPartialHeader(response);
+		return fuzzy > 0 ? movieService.getFuzzySuggestions(keys, fuzzy, limit)
+				: movieService.getSuggestions(keys, limit);
+	}
 	
 	@RequestMapping(value = "/movie", method = RequestMethod.GET, produces = "application/json")
 	@ResponseBody
 	public JqgridResponse<MovieResponseWrapper> getMovie(@RequestParam("key") String key) {
-		MovieData movieData = movieService.getMovieData(key.toLowerCase());
-		List<MovieResponseWrapper> movieResponseWrappers = new ArrayList<>();
-		MovieResponseWrapper movieResponseWrapper = MovieResponseWrapper.builder()
-				.id(String.valueOf(movieData.getId())).titleId(movieData.getTitleId())
-				.ordering(String.valueOf(movieData.getOrdering()))
-				.title(movieData.getTitle())
-				.region(movieData.getRegion())
-				.language(movieData.getLanguage())
-				.types(movieData.getTypes())
-				.attributes(movieData.getAttributes())
-				.isOriginalTitle(movieData.getIsOriginalTitle()).build();
-		movieResponseWrappers.add(movieResponseWrapper);
 		JqgridResponse<MovieResponseWrapper> response = new JqgridResponse<MovieResponseWrapper>();
-		response.setRow(movieResponseWrappers);
+		response.setRow(toResponse(movieService.getMovieVariants(key.toLowerCase())));
 		return response;
 	}
 
+	/**
+	 * Movies of a JSON array of titles, in a single request. The response maps every title to the
+	 * variants of its movie, an empty list for the titles no movie has.
+	 */
+	@RequestMapping(value = "/movies", method = RequestMethod.POST, consumes = "application/json",
+			produces = "application/json")
+	@ResponseBody
+	public Map<String, List<MovieResponseWrapper>> getMovies(@RequestBody List<String> keys) {
+		Map<String, List<MovieResponseWrapper>> movies = new LinkedHashMap<>();
+		for (Entry<String, List<MovieData>> variants : movieService.getMovieVariants(keys).entrySet()) {
+			movies.put(variants.getKey(), toResponse(variants.getValue()));
+		}
+		return movies;
+	}
+
+	private static List<MovieResponseWrapper> toResponse(List<MovieData> variants) {
+		List<MovieResponseWrapper> movieResponseWrappers = new ArrayList<>();
+		for (MovieData movieData : variants) {
+			MovieResponseWrapper movieResponseWrapper = MovieResponseWrapper.builder()
+					.id(String.valueOf(movieData.getId())).titleId(movieData.getTitleId())
+					.ordering(String.valueOf(movieData.getOrdering()))
+					.title(movieData.getTitle())
+					.region(movieData.getRegion())
+					.language(movieData.getLanguage())
+					.types(movieData.getTypes())
+					.attributes(movieData.getAttributes())
+					.isOriginalTitle(movieData.getIsOriginalTitle()).build();
+			movieResponseWrappers.add(movieResponseWrapper);
+		}
+		return movieResponseWrappers;
+	}
+
 }
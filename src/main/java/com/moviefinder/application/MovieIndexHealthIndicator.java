@@ -0,0 +1,47 @@
+package com.moviefinder.application;
+
+import java.util.Map.Entry;
+
+import javax.inject.Inject;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+import com.moviefinder.service.LoadProgress;
+import com.moviefinder.service.MovieService;
+
+/**
+ * Readiness of the movie index in /actuator/health: UP once the data is loaded, OUT_OF_SERVICE while it is
+ * loading and DOWN if the load failed, the last two answered with a 503 so that no traffic is routed to the
+ * instance yet. With moviefinder.ready.on.partial set, the instance is UP as soon as a partial index is
+ * searched. The details hold the progress of the load.
+ */
+@Component
+public class MovieIndexHealthIndicator implements HealthIndicator {
+
+	@Inject
+	MovieService movieService;
+
+	@Value("${moviefinder.ready.on.partial:false}")
+	private boolean readyOnPartial;
+
+	@Override
+	public Health health() {
+		LoadProgress progress = movieService.getLoadProgress();
+		Health.Builder builder;
+		if (progress.isLoaded() || readyOnPartial && progress.isPartial()) {
+			builder = Health.up();
+		} else if (progress.getState() == LoadProgress.State.FAILED) {
+			builder = Health.down();
+		} else {
+			builder = Health.outOfService();
+		}
+		for (Entry<String, Object> detail : progress.toMap().entrySet()) {
+			builder.withDetail(detail.getKey(), detail.getValue());
+		}
+		return builder.build();
+	}
+
+}
@@ -0,0 +1,63 @@
+package com.moviefinder.application;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Writes suggestions to a response as the index finds them, each title as a JSON string:
+ *
+ *	NDJSON - one title per line
+ *	SSE    - one server sent event per title, then an end event holding the number of titles
+ *
+ * The first title is flushed at once so that the client shows it while the search goes on, the
+ * next ones every {@link #FLUSH_EVERY} titles. A failed write, the client having left, throws an
+ * UncheckedIOException which stops the search.
+ */
+final class SuggestionStreamWriter implements Consumer<String>, Closeable {
+
+	enum Format {
+		NDJSON, SSE
+	}
+
+	private static final int FLUSH_EVERY = 64;
+
+	private final JsonGenerator generator;
+	private final Format format;
+	private int count;
+
+	SuggestionStreamWriter(JsonGenerator generator, Format format) {
+		this.generator = generator;
+		this.format = format;
+		// the separators are written explicitly
+		generator.setRootValueSeparator(null);
+	}
+
+	@Override
+	public void accept(String title) {
+		try {
+			if (format == Format.SSE) {
+				generator.writeRaw("data: ");
+			}
+			generator.writeString(title);
+			generator.writeRaw(format == Format.SSE ? "\n\n" : "\n");
+			if (++count == 1 || count % FLUSH_EVERY == 0) {
+				generator.flush();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (format == Format.SSE) {
+			generator.writeRaw("event: end\ndata: " + count + "\n\n");
+		}
+		generator.close();
+	}
+
+}
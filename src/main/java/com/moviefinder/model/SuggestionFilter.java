@@ -0,0 +1,31 @@
+package com.moviefinder.model;
+
+import java.util.Objects;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Values the suggested titles must have a row with, ignoring case. The values not set do not filter,
+ * the values set are all matched on the same row of the title.
+ */
+@Builder
+@Data
+public class SuggestionFilter {
+
+	private String region;
+	private String language;
+	private String isOriginalTitle;
+
+	/**
+	 * @return whether no value is set, every title passing the filter
+	 */
+	public boolean isEmpty() {
+		return isBlank(region) && isBlank(language) && isBlank(isOriginalTitle);
+	}
+
+	private static boolean isBlank(String value) {
+		return Objects.isNull(value) || value.isEmpty();
+	}
+
+}
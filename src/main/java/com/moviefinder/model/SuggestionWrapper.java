@@ -0,0 +1,29 @@
+package com.moviefinder.model;
+
+import java.util.Set;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Builder
+@Data
+public class SuggestionWrapper {
+
+	private Set<String> suggestions;
+
+	/**
+	 * Token to send back with the next key typed, only in cursor mode
+	 */
+	private String cursor;
+
+	/**
+	 * Whether the suggestions come from the first titles of a load still running
+	 */
+	private boolean partial;
+
+	/**
+	 * Whether the search ran out of its budget, the suggestions being the ones found until then
+	 */
+	private boolean truncated;
+
+}
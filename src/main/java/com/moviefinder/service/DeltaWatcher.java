@@ -0,0 +1,72 @@
+package com.moviefinder.service;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Daemon thread applying to the service every delta file, ending with .tsv, moved or created in a directory.
+ * Files should be moved in once complete, a file still being written could be applied partially.
+ */
+class DeltaWatcher extends Thread {
+
+	private static final Logger logger = LoggerFactory.getLogger(DeltaWatcher.class);
+	private static final String _extension = ".tsv";
+
+	private final Path directory;
+	private final MovieService movieService;
+	private final WatchService watchService;
+
+	DeltaWatcher(Path directory, MovieService movieService) throws IOException {
+		super("delta-watcher");
+		setDaemon(true);
+		this.directory = directory;
+		this.movieService = movieService;
+		this.watchService = FileSystems.getDefault().newWatchService();
+		directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE);
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (true) {
+				WatchKey key = watchService.take();
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+						logger.warn(":: Missed delta files in {} ::", directory);
+						continue;
+					}
+					Path file = directory.resolve((Path) event.context());
+					if (file.getFileName().toString().endsWith(_extension)) {
+						apply(file);
+					}
+				}
+				if (!key.reset()) {
+					logger.warn(":: Delta directory {} is no longer accessible ::", directory);
+					return;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ClosedWatchServiceException e) {
+			// stopped
+		}
+	}
+
+	private void apply(Path file) {
+		try {
+			movieService.applyDelta(file);
+		} catch (IOException | RuntimeException e) {
+			logger.error(":: Could not apply delta " + file + " ::", e);
+		}
+	}
+
+}
@@ -1,5 +1,7 @@
 package com.moviefinder.service;
 
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import com.moviefinder.model.MovieData;
@@ -23,12 +25,44 @@ public interface FinderService<E> {
 	
 	/**
 	 * Returns the list of closely matching data. This could be empty list.
-	 * or a list with a single or multiple element(s).
+	 * or a list with a single or multiple element(s), but never more than limit.
+	 * The search stops as soon as limit elements are found.
 	 *
 	 * @param e
+	 * @param limit maximum number of elements returned
 	 * @return
 	 */
-	public Set<E> getSuggestions(E e);
+	public Set<E> getSuggestions(E e, int limit);
+	
+	/**
+	 * Same as {@link #getSuggestions(Object, int)} for every key, searched in the same data.
+	 * 
+	 * @param keys
+	 * @param limit maximum number of elements returned per key
+	 * @return the suggestions of every key, in the order of the keys
+	 */
+	public Map<E, Set<E>> getSuggestions(List<E> keys, int limit);
+	
+	/**
+	 * Returns the data closely matching e once up to maxEdits typing mistakes are
+	 * corrected, the closest first, never more than limit elements.
+	 *
+	 * @param e
+	 * @param maxEdits maximum number of single character edits, 1 or 2
+	 * @param limit maximum number of elements returned
+	 * @return
+	 */
+	public Set<E> getFuzzySuggestions(E e, int maxEdits, int limit);
+	
+	/**
+	 * Same as {@link #getFuzzySuggestions(Object, int, int)} for every key, searched in the same data.
+	 * 
+	 * @param keys
+	 * @param maxEdits maximum number of single character edits, 1 or 2
+	 * @param limit maximum number of elements returned per key
+	 * @return the suggestions of every key, in the order of the keys
+	 */
+	public Map<E, Set<E>> getFuzzySuggestions(List<E> keys, int maxEdits, int limit);
 	
 	/**
 	 * Returns the movie data matching the key
@@ -37,4 +71,20 @@ public interface FinderService<E> {
 	 */
 	public MovieData getMovieData(E e);
 	
+	/**
+	 * Returns all the variants of the movie matching the key, one per
+	 * region and language it is known in. This could be an empty list.
+	 * @param e
+	 * @return
+	 */
+	public List<MovieData> getMovieVariants(E e);
+	
+	/**
+	 * Same as {@link #getMovieVariants(Object)} for every key, looked up in the same data.
+	 * A key matching no movie has an empty list.
+	 * @param keys
+	 * @return the variants of every key, in the order of the keys
+	 */
+	public Map<E, List<MovieData>> getMovieVariants(List<E> keys);
+	
 }
@@ -0,0 +1,107 @@
+package com.moviefinder.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Progress of the load of the movie data. The loading thread updates it while the health check and the
+ * status endpoint read it, every field is read on its own without locking.
+ */
+public final class LoadProgress {
+
+	public enum State {
+		PENDING, LOADING, READY, FAILED
+	}
+
+	private volatile State state = State.PENDING;
+	private volatile String source;
+	private volatile long startTime;
+	private volatile long endTime;
+	private volatile int rows;
+	private volatile int titles;
+	private volatile int partialTitles;
+	private volatile boolean loaded;
+	private volatile String error;
+
+	void start(String source) {
+		this.source = source;
+		this.startTime = System.currentTimeMillis();
+		this.endTime = 0;
+		this.rows = 0;
+		this.titles = 0;
+		this.partialTitles = 0;
+		this.error = null;
+		this.state = State.LOADING;
+	}
+
+	/**
+	 * Counts a row read, only called by the loading thread.
+	 */
+	void addRow(boolean newTitle) {
+		rows++;
+		if (newTitle) {
+			titles++;
+		}
+	}
+
+	/**
+	 * Records that an index of the first titles loaded is searched.
+	 */
+	void partial(int titles) {
+		this.partialTitles = titles;
+	}
+
+	void ready(int rows, int titles) {
+		this.rows = rows;
+		this.titles = titles;
+		this.partialTitles = 0;
+		this.endTime = System.currentTimeMillis();
+		this.loaded = true;
+		this.state = State.READY;
+	}
+
+	void failed(String error) {
+		this.error = error;
+		this.endTime = System.currentTimeMillis();
+		this.state = State.FAILED;
+	}
+
+	public State getState() {
+		return state;
+	}
+
+	/**
+	 * @return whether a complete index is searched, which stays true while it is being reloaded
+	 */
+	public boolean isLoaded() {
+		return loaded;
+	}
+
+	/**
+	 * @return whether the index searched is made of the first titles of a load still running
+	 */
+	public boolean isPartial() {
+		return !loaded && partialTitles > 0;
+	}
+
+	/**
+	 * @return the state, the rows and titles read so far and the time spent
+	 */
+	public Map<String, Object> toMap() {
+		Map<String, Object> map = new LinkedHashMap<>();
+		State state = this.state;
+		map.put("state", state);
+		map.put("source", source);
+		map.put("rows", rows);
+		map.put("titles", titles);
+		map.put("partialTitles", partialTitles);
+		long startTime = this.startTime;
+		long endTime = state == State.LOADING ? System.currentTimeMillis() : this.endTime;
+		map.put("elapsedMillis", state == State.PENDING ? 0 : Math.max(0, endTime - startTime));
+		if (error != null) {
+			map.put("error", error);
+		}
+		return map;
+	}
+
+}
@@ -0,0 +1,734 @@
+package com.moviefinder.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+import com.moviefinder.model.MovieData;
+import com.moviefinder.model.SuggestionFilter;
+import com.moviefinder.util.CaseFolding;
+import com.moviefinder.util.CompactTrie;
+import com.moviefinder.util.MovieRecordStore;
+import com.moviefinder.util.NumberedTrie;
+import com.moviefinder.util.OffHeapMovieDataCache;
+import com.moviefinder.util.ShardedTrie;
+import com.moviefinder.util.TitleFacets;
+import com.moviefinder.util.Trie;
+import com.moviefinder.util.TrieEngine;
+import com.moviefinder.util.TrigramIndex;
+import com.moviefinder.util.WordIndex;
+
+/**
+ * The search structures built from one load of the movie data: a trie answering the prefix
+ * searches, a trigram index answering the searches in the middle of the titles, and the store
+ * of all the rows loaded, which deltas append to a copy of. Keys of several words also find the titles holding
+ * all these words in any order, with a word index searched last. The facets of the titles restrict
+ * the searches to the titles of a region, language or isOriginalTitle value. The movie data of a title
+ * is the row of the store its lower cased title maps to, no other copy of the row is kept. With the movie
+ * data stored off heap, the rows are the records of an {@link OffHeapMovieDataCache} of the index instead,
+ * its record store holding no row.
+ * An index is built aside by {@link MovieService#loadData()} and published as a whole,
+ * it is never modified afterwards so any number of threads can read it without locking.
+ *
+ * Titles added after the load go to a small delta segment searched after the base one. Applying
+ * a delta creates a new index sharing the base structures and rebuilding the delta segment only,
+ * so its cost depends on the number of titles added since the load, not on the size of the base.
+ *
+ * The titles are numbered by their position in the substring indexes, the delta ones after the base ones.
+ * When the tries number their values the same way, the searches pass these ids from one structure to the
+ * next, in an int array which also drops the titles found twice, and only look the titles up for the ids
+ * returned. Otherwise, with a sharded trie, they collect the titles themselves.
+ *
+ * While the data is loaded, partial indexes of the titles read so far are published, so that suggestions
+ * are served before the load completes. They have no substring index: only the titles starting with the
+ * key are found.
+ */
+public final class MovieIndex {
+
+	/**
+	 * Largest edit distance of a fuzzy search, beyond it nearly every title matches a short key.
+	 */
+	public static final int MAX_EDITS = 2;
+
+	private static final AtomicLong generations = new AtomicLong();
+
+	private static final IntPredicate ALL = id -> true;
+
+	private final Trie<String> trie;
+	private final TrigramIndex substringIndex;
+	private final WordIndex wordIndex;
+	private final TitleFacets facets;
+	private final MovieRecordStore records;
+
+	/**
+	 * Row of the movie data of every lower cased title, those of the delta segment taking precedence
+	 */
+	private final Map<String, Integer> titleRows;
+	private final Map<String, Integer> deltaRows;
+
+	/**
+	 * Identifies the base structures, shared with the indexes adding deltas to them
+	 */
+	private final long generation;
+
+	private final List<String> deltaTitles;
+	private final Trie<String> deltaTrie;
+	private final TrigramIndex deltaSubstringIndex;
+	private final WordIndex deltaWordIndex;
+	private final TitleFacets deltaFacets;
+
+	/**
+	 * Movie data and rows of the titles stored off heap, null when they are read from the records
+	 */
+	private final OffHeapMovieDataCache offHeapMovieData;
+
+	/**
+	 * Whether the base holds the first titles of a load still running
+	 */
+	private final boolean partial;
+
+	/**
+	 * Whether the values of both tries are numbered like the titles of their substring index
+	 */
+	private final boolean numbered;
+
+	public MovieIndex(Trie<String> trie, TrigramIndex substringIndex, MovieRecordStore records) {
+		this(trie, substringIndex, records, new TitleFacets());
+	}
+
+	/**
+	 * @param facets the facets of the titles, by their position in the titles of substringIndex
+	 */
+	public MovieIndex(Trie<String> trie, TrigramIndex substringIndex, MovieRecordStore records, TitleFacets facets) {
+		this(trie, substringIndex, records, facets, Collections.emptyMap());
+	}
+
+	/**
+	 * @param titleRows the row of records holding the movie data of every lower cased title
+	 */
+	public MovieIndex(Trie<String> trie, TrigramIndex substringIndex, MovieRecordStore records, TitleFacets facets,
+			Map<String, Integer> titleRows) {
+		this(trie, substringIndex, new WordIndex(substringIndex.getTitles()), facets, records, titleRows,
+				generations.incrementAndGet(), Collections.emptyList(), new TitleFacets(), Collections.emptyMap(), false,
+				null);
+	}
+
+	/**
+	 * @param offHeapMovieData the movie data and rows of the titles, which must not be put to anymore
+	 */
+	public MovieIndex(Trie<String> trie, TrigramIndex substringIndex, TitleFacets facets,
+			OffHeapMovieDataCache offHeapMovieData) {
+		this(trie, substringIndex, new WordIndex(substringIndex.getTitles()), facets, new MovieRecordStore(),
+				Collections.emptyMap(), generations.incrementAndGet(), Collections.emptyList(), new TitleFacets(),
+				Collections.emptyMap(), false, offHeapMovieData);
+	}
+
+	private MovieIndex(Trie<String> trie, TrigramIndex substringIndex, WordIndex wordIndex, TitleFacets facets,
+			MovieRecordStore records, Map<String, Integer> titleRows, long generation, List<String> deltaTitles,
+			TitleFacets deltaFacets, Map<String, Integer> deltaRows, boolean partial,
+			OffHeapMovieDataCache offHeapMovieData) {
+		this.partial = partial;
+		this.offHeapMovieData = offHeapMovieData;
+		this.trie = trie;
+		this.substringIndex = substringIndex;
+		this.wordIndex = wordIndex;
+		this.facets = facets;
+		this.deltaFacets = deltaFacets;
+		this.records = records;
+		this.titleRows = titleRows;
+		this.deltaRows = deltaRows;
+		this.generation = generation;
+		this.deltaTitles = deltaTitles;
+		this.deltaTrie = new CompactTrie();
+		this.deltaTrie.insertAll(deltaTitles);
+		this.deltaSubstringIndex = new TrigramIndex(deltaTitles);
+		this.deltaWordIndex = new WordIndex(deltaTitles);
+		this.numbered = !partial && isNumbered(trie, substringIndex) && isNumbered(deltaTrie, deltaSubstringIndex);
+	}
+
+	/**
+	 * @return an index without any title, served until the data is loaded
+	 */
+	public static MovieIndex empty() {
+		return new MovieIndex(TrieEngine.HASHMAP.create(), new TrigramIndex(Collections.emptyList()),
+				new MovieRecordStore());
+	}
+
+	/**
+	 * Returns a partial index searching the titles of trie only, with prefix searches. Neither the trie nor
+	 * the records may be modified anymore, the loader publishing copies of those it keeps adding to.
+	 */
+	public static MovieIndex partial(CompactTrie trie, MovieRecordStore records) {
+		return partial(trie, records, Collections.emptyMap());
+	}
+
+	/**
+	 * Same as {@link #partial(CompactTrie, MovieRecordStore)}, with the rows of the titles, which may not be
+	 * modified anymore either.
+	 */
+	public static MovieIndex partial(CompactTrie trie, MovieRecordStore records, Map<String, Integer> titleRows) {
+		return new MovieIndex(trie, new TrigramIndex(Collections.emptyList()), new WordIndex(Collections.emptyList()),
+				new TitleFacets(), records, titleRows, generations.incrementAndGet(), Collections.emptyList(),
+				new TitleFacets(), Collections.emptyMap(), true, null);
+	}
+
+	/**
+	 * Same as {@link #partial(CompactTrie, MovieRecordStore)}, with the movie data of the titles stored off
+	 * heap. The load may keep putting to the store, which only adds the movie data of titles not put yet.
+	 */
+	public static MovieIndex partial(CompactTrie trie, OffHeapMovieDataCache offHeapMovieData) {
+		return new MovieIndex(trie, new TrigramIndex(Collections.emptyList()), new WordIndex(Collections.emptyList()),
+				new TitleFacets(), new MovieRecordStore(), Collections.emptyMap(), generations.incrementAndGet(),
+				Collections.emptyList(), new TitleFacets(), Collections.emptyMap(), true, offHeapMovieData);
+	}
+
+	/**
+	 * Titles starting with the key come first, then the titles containing it elsewhere, then for a key of
+	 * several words the titles holding all of them in another order, up to limit titles in total.
+	 */
+	public Set<String> search(String key, int limit) {
+		if (numbered) {
+			return searchIds(key, limit, CompactTrie.ROOT, 0, ALL, ALL);
+		}
+		return search(key, trie.prefixSearch(key, limit), limit);
+	}
+
+	/**
+	 * Same as {@link #search(String, int)} among the titles passing the filter. The title ids are tested on
+	 * the facets while the structures search, before the titles are verified or collected. The titles
+	 * starting with the key are searched in the base trie if its values are numbered like the titles,
+	 * otherwise in the substring index. A partial index has no facets yet
+	 * and finds no title passing a filter, the delta titles are found if their facets were given.
+	 *
+	 * @throws IllegalArgumentException if limit is not positive
+	 */
+	public Set<String> search(String key, int limit, SuggestionFilter filter) {
+		IntPredicate baseFilter = facets.filter(filter);
+		if (baseFilter == null) {
+			return search(key, limit);
+		}
+		if (partial) {
+			checkLimit(limit);
+			return new LinkedHashSet<>();
+		}
+		IntPredicate deltaFilter = deltaFacets.filter(filter);
+		return searchIds(key, limit, CompactTrie.ROOT, 0, baseFilter, deltaFilter == null ? ALL : deltaFilter);
+	}
+
+	/**
+	 * Whether the values of the trie are numbered like the titles of the substring index: a compact or
+	 * sharded trie numbers its values in insertion order, the titles being inserted in the same order, it
+	 * holds as many values unless two titles only differ by case in a way the trie folds and not the load.
+	 */
+	private static boolean isNumbered(Trie<String> trie, TrigramIndex substringIndex) {
+		return trie instanceof NumberedTrie && ((NumberedTrie) trie).size() == substringIndex.size();
+	}
+
+	/**
+	 * Searches the tiers of {@link #search(String, int)} among the ids passing the filters. The base titles
+	 * starting with the key are the ones of the base trie if it is numbered, a compact one being walked from
+	 * node along the key from position from on, otherwise the ones of the substring index starting with the key.
+	 * The ids are collected and the titles only looked up at the end.
+	 */
+	private Set<String> searchIds(String key, int limit, int node, int from, IntPredicate baseFilter,
+			IntPredicate deltaFilter) {
+		checkLimit(limit);
+		if (Objects.isNull(key)) {
+			return new LinkedHashSet<>();
+		}
+		int offset = substringIndex.size();
+		// the sink of every tier, the delta tiers offering their ids after an offset
+		IdList found = new IdList(limit);
+		if (isNumbered(trie, substringIndex) && trie instanceof CompactTrie) {
+			CompactTrie compact = (CompactTrie) trie;
+			compact.prefixSearchIds(node == CompactTrie.NONE ? node : compact.walk(node, key, from), limit, baseFilter,
+					found);
+		} else {
+			prefixSearchIds(trie, substringIndex, key, limit, baseFilter, found);
+		}
+		if (found.size < limit && !deltaTitles.isEmpty()) {
+			found.offset = offset;
+			prefixSearchIds(deltaTrie, deltaSubstringIndex, key, limit - found.size, deltaFilter, found);
+			found.offset = 0;
+		}
+		if (found.size < limit && trie instanceof ShardedTrie) {
+			// the parts of the search test the filter on other threads, the titles already found are filtered out
+			((ShardedTrie) trie).searchInside(substringIndex, key, limit - found.size,
+					id -> baseFilter.test(id) && !found.contains(id), found);
+		} else if (found.size < limit) {
+			substringIndex.searchIds(key, limit - found.size, baseFilter, found);
+		}
+		if (found.size < limit && !deltaTitles.isEmpty()) {
+			found.offset = offset;
+			deltaSubstringIndex.searchIds(key, limit - found.size, deltaFilter, found);
+			found.offset = 0;
+		}
+		if (found.size < limit && WordIndex.countWords(key) > 1) {
+			wordIndex.searchIds(key, limit - found.size, baseFilter, found);
+			if (found.size < limit && !deltaTitles.isEmpty()) {
+				found.offset = offset;
+				deltaWordIndex.searchIds(key, limit - found.size, deltaFilter, found);
+			}
+		}
+		Set<String> suggestions = new LinkedHashSet<>();
+		for (int i = 0; i < found.size; i++) {
+			int id = found.ids[i];
+			suggestions.add(id < offset ? substringIndex.title(id) : deltaSubstringIndex.title(id - offset));
+		}
+		return suggestions;
+	}
+
+	/**
+	 * Offers the ids of the titles starting with the key to the sink, those of the trie if it is numbered like
+	 * the substring index, otherwise those of the substring index starting with the key.
+	 */
+	private static void prefixSearchIds(Trie<String> trie, TrigramIndex substringIndex, String key, int limit,
+			IntPredicate filter, IntPredicate sink) {
+		if (isNumbered(trie, substringIndex)) {
+			((NumberedTrie) trie).prefixSearchIds(key, limit, filter, sink);
+		} else {
+			String folded = CaseFolding.fold(key);
+			substringIndex.searchIds(key, limit, filter,
+					id -> CaseFolding.startsWith(substringIndex.title(id), folded) && sink.test(id));
+		}
+	}
+
+	private static void checkLimit(int limit) {
+		if (limit < 1) {
+			throw new IllegalArgumentException("Invalid limit " + limit);
+		}
+	}
+
+	/**
+	 * Same as {@link #search(String, int)}, the titles starting with the key being the ones below node,
+	 * the node of the base trie returned by {@link #walk(int, String, int)} for the key.
+	 *
+	 * @throws UnsupportedOperationException if the base trie is not a CompactTrie
+	 */
+	public Set<String> search(String key, int limit, int node) {
+		if (numbered) {
+			return searchIds(key, limit, node, key.length(), ALL, ALL);
+		}
+		return search(key, compactTrie().prefixSearch(node, limit), limit);
+	}
+
+	/**
+	 * Node of the base trie reached from node by the characters of the key from position from on,
+	 * see {@link CompactTrie#walk(int, String, int)}.
+	 *
+	 * @throws UnsupportedOperationException if the base trie is not a CompactTrie
+	 */
+	public int walk(int node, String key, int from) {
+		return compactTrie().walk(node, key, from);
+	}
+
+	/**
+	 * @return whether nodes of the base trie can be walked to, only the nodes of a CompactTrie can
+	 */
+	public boolean isWalkable() {
+		return trie instanceof CompactTrie;
+	}
+
+	private CompactTrie compactTrie() {
+		if (!isWalkable()) {
+			throw new UnsupportedOperationException("Only the nodes of a compact trie can be walked to");
+		}
+		return (CompactTrie) trie;
+	}
+
+	/**
+	 * Adds the titles of the tiers following the base trie to its suggestions, every tier only searching
+	 * for the titles still missing. The titles already found do not count towards the limit of a tier.
+	 */
+	private Set<String> search(String key, Set<String> suggestions, int limit) {
+		if (suggestions.size() < limit && !deltaTitles.isEmpty()) {
+			deltaTrie.prefixSearch(key, limit - suggestions.size(), suggestions::add);
+		}
+		if (suggestions.size() < limit) {
+			substringIndex.search(key, limit - suggestions.size(), suggestions::add);
+		}
+		if (suggestions.size() < limit && !deltaTitles.isEmpty()) {
+			deltaSubstringIndex.search(key, limit - suggestions.size(), suggestions::add);
+		}
+		if (suggestions.size() < limit && WordIndex.countWords(key) > 1) {
+			wordIndex.search(key, limit - suggestions.size(), suggestions::add);
+			if (suggestions.size() < limit && !deltaTitles.isEmpty()) {
+				deltaWordIndex.search(key, limit - suggestions.size(), suggestions::add);
+			}
+		}
+		return suggestions;
+	}
+
+	/**
+	 * Titles starting with the key first, then the titles containing it elsewhere, like {@link #search(String, int)},
+	 * passed to the consumer as soon as they are found instead of being collected. Every title is passed once without remembering the ones passed:
+	 * the titles starting with the key all come from the tries, so the substring indexes only pass
+	 * the ones containing it elsewhere, and the word indexes the ones not containing it.
+	 *
+	 * @return the number of titles passed to the consumer
+	 * @throws IllegalArgumentException if limit is not positive
+	 */
+	public int stream(String key, int limit, Consumer<String> consumer) {
+		checkLimit(limit);
+		if (Objects.isNull(key)) {
+			return 0;
+		}
+		int count = trie.prefixSearch(key, limit, consumer);
+		if (count < limit && !deltaTitles.isEmpty()) {
+			count += deltaTrie.prefixSearch(key, limit - count, consumer);
+		}
+		String folded = CaseFolding.fold(key);
+		Predicate<String> inside = title -> {
+			if (CaseFolding.startsWith(title, folded)) {
+				return false;
+			}
+			consumer.accept(title);
+			return true;
+		};
+		if (count < limit) {
+			count += substringIndex.search(key, limit - count, inside);
+		}
+		if (count < limit && !deltaTitles.isEmpty()) {
+			count += deltaSubstringIndex.search(key, limit - count, inside);
+		}
+		if (count < limit && WordIndex.countWords(key) > 1) {
+			Predicate<String> reordered = title -> {
+				if (CaseFolding.contains(title, folded)) {
+					return false;
+				}
+				consumer.accept(title);
+				return true;
+			};
+			count += wordIndex.search(key, limit - count, reordered);
+			if (count < limit && !deltaTitles.isEmpty()) {
+				count += deltaWordIndex.search(key, limit - count, reordered);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Titles starting with a string at most maxEdits edits away from the key, the closest first.
+	 * The distance is capped to {@link #MAX_EDITS}, and lowered for short keys: none below three
+	 * characters and one below six.
+	 */
+	public Set<String> fuzzySearch(String key, int maxEdits, int limit) {
+		int allowedEdits = key.length() < 3 ? 0 : key.length() < 6 ? 1 : MAX_EDITS;
+		Set<String> suggestions = trie.fuzzySearch(key, Math.min(maxEdits, allowedEdits), limit);
+		if (!deltaTitles.isEmpty()) {
+			addAll(suggestions, deltaTrie.fuzzySearch(key, Math.min(maxEdits, allowedEdits), limit), limit);
+		}
+		return suggestions;
+	}
+
+	/**
+	 * Returns a new index made of the same base structures and of a delta segment holding
+	 * the titles of this delta followed by the given ones. This index is left unchanged.
+	 * The facets of the delta stay the same, the given titles pass no filter.
+	 */
+	public MovieIndex withDelta(List<String> titles) {
+		return withDelta(titles, deltaFacets);
+	}
+
+	/**
+	 * Same as {@link #withDelta(List)}, with the facets of all the titles of the new delta segment, numbered
+	 * by their position in it. They must not be modified anymore.
+	 */
+	public MovieIndex withDelta(List<String> titles, TitleFacets facets) {
+		return withDelta(titles, facets, records);
+	}
+
+	/**
+	 * Same as {@link #withDelta(List, TitleFacets)}, the new index holding the given records instead of
+	 * the ones of this index, typically a copy of them the rows of the delta were added to.
+	 */
+	public MovieIndex withDelta(List<String> titles, TitleFacets facets, MovieRecordStore records) {
+		return withDelta(titles, facets, records, Collections.emptyMap());
+	}
+
+	/**
+	 * Same as {@link #withDelta(List, TitleFacets, MovieRecordStore)}, the lower cased titles of rows mapping
+	 * to their new row in records, whether they are added by the delta or already indexed.
+	 */
+	public MovieIndex withDelta(List<String> titles, TitleFacets facets, MovieRecordStore records,
+			Map<String, Integer> rows) {
+		List<String> delta = new ArrayList<>(deltaTitles.size() + titles.size());
+		delta.addAll(deltaTitles);
+		delta.addAll(titles);
+		Map<String, Integer> deltaRows = new HashMap<>(this.deltaRows);
+		deltaRows.putAll(rows);
+		return new MovieIndex(trie, substringIndex, wordIndex, this.facets, records, titleRows, generation,
+				Collections.unmodifiableList(delta), facets, Collections.unmodifiableMap(deltaRows), partial,
+				offHeapMovieData);
+	}
+
+	/**
+	 * Same as {@link #withDelta(List, TitleFacets)}, the new index holding the given movie data stored off
+	 * heap instead of the ones of this index, typically a {@link OffHeapMovieDataCache#copy()} of them the
+	 * rows of the delta were put to.
+	 */
+	public MovieIndex withDelta(List<String> titles, TitleFacets facets, OffHeapMovieDataCache offHeapMovieData) {
+		List<String> delta = new ArrayList<>(deltaTitles.size() + titles.size());
+		delta.addAll(deltaTitles);
+		delta.addAll(titles);
+		return new MovieIndex(trie, substringIndex, wordIndex, this.facets, records, titleRows, generation,
+				Collections.unmodifiableList(delta), facets, deltaRows, partial, offHeapMovieData);
+	}
+
+	/**
+	 * Returns a new index with the delta titles moved into copies of the base structures, as a
+	 * single segment. Only a complete index whose base is a {@link CompactTrie} can be merged.
+	 *
+	 * @throws IllegalStateException if the base trie is not a CompactTrie or the index is partial
+	 */
+	public MovieIndex merged() {
+		if (partial) {
+			throw new IllegalStateException("A partial index can not be merged");
+		}
+		if (deltaTitles.isEmpty()) {
+			return this;
+		}
+		if (!(trie instanceof CompactTrie)) {
+			throw new IllegalStateException("Only a compact trie index can be merged");
+		}
+		CompactTrie mergedTrie = ((CompactTrie) trie).copy();
+		mergedTrie.insertAll(deltaTitles);
+		List<String> titles = new ArrayList<>(substringIndex.getTitles());
+		titles.addAll(deltaTitles);
+		Map<String, Integer> rows = new HashMap<>(titleRows);
+		rows.putAll(deltaRows);
+		return new MovieIndex(mergedTrie, new TrigramIndex(titles), new WordIndex(titles),
+				facets.merged(deltaFacets, substringIndex.size()), records, rows, generations.incrementAndGet(),
+				Collections.emptyList(), new TitleFacets(), Collections.emptyMap(), false, offHeapMovieData);
+	}
+
+	/**
+	 * @param key the lower cased title
+	 * @return the movie data of the title, null if there is no such title
+	 */
+	public MovieData getMovieData(String key) {
+		if (offHeapMovieData != null) {
+			return offHeapMovieData.get(key);
+		}
+		Integer row = deltaRows.get(key);
+		if (row == null) {
+			row = titleRows.get(key);
+		}
+		return row == null ? null : records.get(row);
+	}
+
+	/**
+	 * @param key the lower cased title
+	 * @return whether the title has movie data
+	 */
+	public boolean hasMovieData(String key) {
+		if (offHeapMovieData != null) {
+			return offHeapMovieData.contains(key);
+		}
+		return deltaRows.containsKey(key) || titleRows.containsKey(key);
+	}
+
+	/**
+	 * Returns all the rows of a titleId, by ordering, or an empty list if there is none.
+	 */
+	public List<MovieData> getVariants(String titleId) {
+		return offHeapMovieData != null ? offHeapMovieData.getVariants(titleId) : records.getVariants(titleId);
+	}
+
+	/**
+	 * @return the titles added since the base was built, in the order they were added
+	 */
+	public List<String> getDeltaTitles() {
+		return deltaTitles;
+	}
+
+	private static void addAll(Set<String> suggestions, Set<String> titles, int limit) {
+		for (String title : titles) {
+			if (suggestions.size() >= limit) {
+				break;
+			}
+			suggestions.add(title);
+		}
+	}
+
+	/**
+	 * @return the facets of the delta titles, by their position in {@link #getDeltaTitles()}
+	 */
+	public TitleFacets getDeltaFacets() {
+		return deltaFacets;
+	}
+
+	/**
+	 * @return whether this index only holds the first titles of a load still running
+	 */
+	public boolean isPartial() {
+		return partial;
+	}
+
+	/**
+	 * @return the number of titles indexed, deltas included
+	 */
+	public int size() {
+		return (partial ? compactTrie().size() : substringIndex.size()) + deltaTitles.size();
+	}
+
+	/**
+	 * @return the number of nodes of the tries, deltas included
+	 */
+	public int nodeCount() {
+		return trie.nodeCount() + deltaTrie.nodeCount();
+	}
+
+	/**
+	 * @return an estimate of the bytes used on the heap by the search structures and the records, or the
+	 *         tables of the movie data stored off heap
+	 */
+	public long memoryEstimate() {
+		return trie.memoryEstimate() + substringIndex.memoryEstimate() + wordIndex.memoryEstimate()
+				+ facets.memoryEstimate() + deltaTrie.memoryEstimate() + deltaSubstringIndex.memoryEstimate()
+				+ deltaWordIndex.memoryEstimate() + deltaFacets.memoryEstimate() + records.memoryEstimate()
+				+ (offHeapMovieData == null ? 0 : offHeapMovieData.memoryEstimate());
+	}
+
+	/**
+	 * @return the identifier of the base structures, the same for all the deltas applied to them
+	 */
+	public long getGeneration() {
+		return generation;
+	}
+
+	public Trie<String> getTrie() {
+		return trie;
+	}
+
+	public TrigramIndex getSubstringIndex() {
+		return substringIndex;
+	}
+
+	public WordIndex getWordIndex() {
+		return wordIndex;
+	}
+
+	public TitleFacets getFacets() {
+		return facets;
+	}
+
+	public MovieRecordStore getRecords() {
+		return records;
+	}
+
+	/**
+	 * @return the movie data stored off heap, null when they are read from the records
+	 */
+	public OffHeapMovieDataCache getOffHeapMovieData() {
+		return offHeapMovieData;
+	}
+
+	/**
+	 * Ids collected by a search, in the order they were found. Up to {@link #SCAN} ids, an id is looked
+	 * for in the array, beyond that in an open addressing table holding every id plus one, at most half full.
+	 * As a predicate, it is the sink of the tiers, adding the ids offered after offset.
+	 */
+	static final class IdList implements IntPredicate {
+
+		static final int SCAN = 16;
+
+		int[] ids;
+		int size;
+		private int[] table;
+
+		/**
+		 * Added to the ids offered to {@link #test(int)}, the number of base titles while a delta tier searches
+		 */
+		int offset;
+
+		IdList(int limit) {
+			ids = new int[Math.min(limit, SCAN)];
+		}
+
+		/**
+		 * Adds offset plus the id.
+		 *
+		 * @return whether it was added, false if it was already there
+		 */
+		@Override
+		public boolean test(int id) {
+			return add(offset + id);
+		}
+
+		/**
+		 * @return whether the id was added, false if it was already there
+		 */
+		boolean add(int id) {
+			if (contains(id)) {
+				return false;
+			}
+			if (size == ids.length) {
+				ids = Arrays.copyOf(ids, size << 1);
+			}
+			ids[size++] = id;
+			if (table != null) {
+				insert(id);
+			} else if (size > SCAN) {
+				table = new int[Integer.highestOneBit(size) << 2];
+				for (int i = 0; i < size; i++) {
+					insert(ids[i]);
+				}
+			}
+			return true;
+		}
+
+		boolean contains(int id) {
+			if (table == null) {
+				for (int i = 0; i < size; i++) {
+					if (ids[i] == id) {
+						return true;
+					}
+				}
+				return false;
+			}
+			for (int slot = slot(id); table[slot] != 0; slot = (slot + 1) & (table.length - 1)) {
+				if (table[slot] == id + 1) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private void insert(int id) {
+			if (size * 2 > table.length) {
+				int[] old = table;
+				table = new int[old.length << 1];
+				for (int entry : old) {
+					if (entry != 0) {
+						insert(entry - 1);
+					}
+				}
+			}
+			int slot = slot(id);
+			while (table[slot] != 0) {
+				slot = (slot + 1) & (table.length - 1);
+			}
+			table[slot] = id + 1;
+		}
+
+		/**
+		 * @return the high bits of the multiplied id, as many as the table of at least 64 slots needs
+		 */
+		private int slot(int id) {
+			return id * 0x9e3779b9 >>> Integer.numberOfLeadingZeros(table.length - 1);
+		}
+
+	}
+
+}
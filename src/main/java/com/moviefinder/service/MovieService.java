@@ -2,20 +2,51 @@ package com.moviefinder.service;
 
 import java.io.BufferedReader;
 import java.io.InputStream;
+import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
 
+import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
 import org.springframework.stereotype.Service;
 
 import com.moviefinder.model.MovieData;
-import com.moviefinder.util.MovieDataCache;
-import com.moviefinder.util.TrieImpl;
+import com.moviefinder.model.SuggestionFilter;
+import com.moviefinder.model.SuggestionWrapper;
+import com.moviefinder.util.CaseFolding;
+import com.moviefinder.util.CompactTrie;
+import com.moviefinder.util.IndexSnapshot;
+import com.moviefinder.util.MovieDataLoader;
+import com.moviefinder.util.MovieRecordStore;
+import com.moviefinder.util.OffHeapMovieDataCache;
+import com.moviefinder.util.SearchBudget;
+import com.moviefinder.util.ShardedTrie;
+import com.moviefinder.util.TitleFacets;
+import com.moviefinder.util.Trie;
+import com.moviefinder.util.TrieEngine;
+import com.moviefinder.util.TrigramIndex;
+
+import io.micrometer.core.instrument.MeterRegistry;
 
 @Service
 public class MovieService implements FinderService<String> {
@@ -24,67 +55,816 @@ public class MovieService implements FinderService<String> {
 	private static final String _classpath = "classpath:";
 	private static final String _resourcePath = "assets/data/moviedata.tsv";
 
+	/**
+	 * Largest number of keys of a batch
+	 */
+	public static final int MAX_BATCH_SIZE = 10000;
+
+	/**
+	 * Largest number of suggestions of a key
+	 */
+	public static final int MAX_LIMIT = 1000;
+
+	/**
+	 * Largest number of suggestions of a key streamed, nothing being buffered
+	 */
+	public static final int MAX_STREAM_LIMIT = 100000;
+
+	/**
+	 * Titles of the first partial index published while loading, the next ones having twice as many
+	 */
+	private static final int FIRST_PARTIAL_TITLES = 1 << 16;
+
 	@Inject
 	private ResourceLoader resourceLoader;
 
-	public Set<String> getSuggestions(String key) {
-		TrieImpl trie = TrieImpl.getInstance();
-		return trie.search(key);
-	}
-
-	public void loadData() {
-		Resource resource = resourceLoader.getResource(_classpath + _resourcePath);
-		try(InputStream in = resource.getInputStream();
-			BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF8"));) {
-			logger.info(":: Loading movie data ::");
-			
-			String line;
-			/**
-			 * Looping the read block until all lines in the file are read.
-			 */
-			int i = 0;
-			MovieDataCache movieDataCache = MovieDataCache.getInstance();
-			TrieImpl trie = TrieImpl.getInstance();
-			while ((line = reader.readLine()) != null) {
-				/**
-				 * Splitting the content of tabbed separated line
-				 */
-				if (i > 0) {
-					String datavalue[] = line.split("\t");
-					String titleId = datavalue[0];
-					int ordering = Integer.valueOf(datavalue[1]);
-					String title = datavalue[2];
-					String region = datavalue[3];
-					String language = datavalue[4];
-					String types = datavalue[5];
-					String attributes = datavalue[6];
-					String isOriginalTitle = datavalue[7];
-					MovieData movieData = MovieData.builder().titleId(titleId).ordering(ordering).title(title).region(region).language(language)
-							.types(types).attributes(attributes).isOriginalTitle(isOriginalTitle).build();
-					if(!movieDataCache.contains(title)){
-						trie.insert(title);
-						movieDataCache.put(title.toLowerCase(), movieData);
-					}
+	@Inject
+	private MeterRegistry meterRegistry;
+
+	@Value("${moviefinder.trie.engine:hashmap}")
+	private String trieEngine;
+
+	/**
+	 * Shards of the sharded trie engine, 0 for as many as processors
+	 */
+	@Value("${moviefinder.trie.shards:0}")
+	private int trieShards;
+
+	/**
+	 * Best completions stored at every node of a short prefix, 0 leaves the titles unranked
+	 */
+	@Value("${moviefinder.rank.completions:10}")
+	private int rankCompletions;
+
+	/**
+	 * Longest prefix whose completions are stored
+	 */
+	@Value("${moviefinder.rank.depth:6}")
+	private int rankDepth;
+
+	/**
+	 * Ratings file ranking the titles by number of votes, without it the titles are ranked by ordering
+	 */
+	@Value("${moviefinder.rank.file:}")
+	private String rankFile;
+
+	@Value("${moviefinder.data.file:}")
+	private String dataFile;
+
+	@Value("${moviefinder.snapshot.file:}")
+	private String snapshotFile;
+
+	/**
+	 * Directory watched for delta files, none if empty
+	 */
+	@Value("${moviefinder.delta.dir:}")
+	private String deltaDir;
+
+	private DeltaWatcher deltaWatcher;
+
+	/**
+	 * Delta titles beyond which the delta segment is folded into the base, with the compact trie engine
+	 */
+	@Value("${moviefinder.delta.max.titles:10000}")
+	private int maxDeltaTitles;
+
+	/**
+	 * Whether partial indexes of the titles read so far are searched until the first load completes,
+	 * with the compact trie engine only
+	 */
+	@Value("${moviefinder.load.partial:true}")
+	private boolean publishPartial;
+
+	private final LoadProgress loadProgress = new LoadProgress();
+
+	/**
+	 * Threads parsing the data file, 0 for as many as processors
+	 */
+	@Value("${moviefinder.data.parallelism:0}")
+	private int loadParallelism;
+
+	/**
+	 * Index searched by the suggestions. A new one is built aside on every load or delta and only
+	 * published once complete, it is never modified afterwards so reads need no locking. Updates
+	 * are serialized by the lock of the service.
+	 */
+	private volatile MovieIndex index = MovieIndex.empty();
+
+	/**
+	 * Entries of the suggestion cache, 0 to disable it
+	 */
+	@Value("${moviefinder.suggestion.cache.size:10000}")
+	private int suggestionCacheSize;
+
+	private SuggestionCache suggestionCache;
+
+	private SearchMetrics metrics;
+
+	/**
+	 * Where the movie data of the titles are read from: heap, the rows of the record store, or offheap, packed as bytes
+	 */
+	@Value("${moviefinder.movie.store:heap}")
+	private String movieStore;
+
+	/**
+	 * File the off heap movie data are memory mapped from, direct buffers if empty
+	 */
+	@Value("${moviefinder.movie.store.file:}")
+	private String movieStoreFile;
+
+	/**
+	 * Whether every load stores the movie data of its index off heap, instead of in the records of the index
+	 */
+	private boolean offHeap;
+
+	/**
+	 * Trie nodes and index entries a suggestion may visit, 0 for no bound
+	 */
+	@Value("${moviefinder.search.budget.nodes:0}")
+	private long searchBudgetNodes;
+
+	/**
+	 * Milliseconds a suggestion may search for, 0 for no bound
+	 */
+	@Value("${moviefinder.search.budget.millis:100}")
+	private long searchBudgetMillis;
+
+	@PostConstruct
+	public void initialize() {
+		offHeap = isOffHeap();
+		suggestionCache = new SuggestionCache(suggestionCacheSize);
+		metrics = new SearchMetrics(meterRegistry, () -> index);
+	}
+
+	/**
+	 * @return whether the movie data are stored off heap
+	 * @throws IllegalArgumentException if moviefinder.movie.store is neither heap nor offheap
+	 */
+	private boolean isOffHeap() {
+		switch (movieStore) {
+		case "heap":
+			return false;
+		case "offheap":
+			logger.info(":: Storing the movie data off heap in {} ::",
+					movieStoreFile.isEmpty() ? "direct buffers" : movieStoreFile);
+			return true;
+		default:
+			throw new IllegalArgumentException("Invalid movie store " + movieStore);
+		}
+	}
+
+	/**
+	 * Creates the off heap store of the movie data of a load, which replaces the file of the previous load
+	 * without affecting the index still searched, see {@link OffHeapMovieDataCache#OffHeapMovieDataCache(Path)}.
+	 *
+	 * @return the store, null to read the movie data from the records of the index
+	 */
+	private OffHeapMovieDataCache createOffHeapMovieData() {
+		if (!offHeap) {
+			return null;
+		}
+		try {
+			return movieStoreFile.isEmpty() ? new OffHeapMovieDataCache()
+					: new OffHeapMovieDataCache(Paths.get(movieStoreFile));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Closes the off heap store of an index replaced by a load, unless the new index holds it as well.
+	 * The index may still be searched, its records stay readable.
+	 */
+	private void closeOffHeapMovieData(MovieIndex replaced, MovieIndex loaded) {
+		OffHeapMovieDataCache movieData = replaced.getOffHeapMovieData();
+		if (movieData == null || movieData == loaded.getOffHeapMovieData()) {
+			return;
+		}
+		try {
+			movieData.close();
+		} catch (IOException e) {
+			logger.warn(":: Can not close the previous movie data store: {} ::", e.getMessage());
+		}
+	}
+
+	/**
+	 * Starts measuring a suggestion and its search budget on the current thread. The budget is stopped in a
+	 * finally block, a search throwing does not leave it to the next task of the thread.
+	 *
+	 * @return the start time to pass to {@link #record(SearchMetrics.Type, long, int)}
+	 */
+	private long start() {
+		return start(searchBudgetNodes, searchBudgetMillis);
+	}
+
+	private long start(long budgetNodes, long budgetMillis) {
+		SearchBudget.start(budgetNodes, budgetMillis);
+		return metrics.start();
+	}
+
+	/**
+	 * Records a suggestion started at start, {@link #isTruncated()} telling whether its budget was exhausted.
+	 */
+	private void record(SearchMetrics.Type type, long start, int resultCount) {
+		metrics.record(type, start, resultCount, SearchBudget.isTruncated());
+	}
+
+	/**
+	 * @return whether the last suggestion of the current thread exhausted its search budget, its titles
+	 * being the ones found until then
+	 */
+	public boolean isTruncated() {
+		return SearchBudget.isTruncated();
+	}
+
+	public Set<String> getSuggestions(String key, int limit) {
+		return getSuggestions(key, limit, index);
+	}
+
+	private Set<String> getSuggestions(String key, int limit, MovieIndex index) {
+		long start = start();
+		try {
+			Set<String> suggestions = suggestionCache.get(key, limit, index);
+			record(SearchMetrics.Type.PREFIX, start, suggestions.size());
+			return suggestions;
+		} finally {
+			SearchBudget.stop();
+		}
+	}
+
+	/**
+	 * Suggestions of the titles passing the filter, see {@link MovieIndex#search(String, int, SuggestionFilter)}.
+	 * They are not cached, an empty filter gives the cached suggestions of {@link #getSuggestions(String, int)}.
+	 */
+	public Set<String> getFilteredSuggestions(String key, int limit, SuggestionFilter filter) {
+		if (Objects.isNull(filter) || filter.isEmpty()) {
+			return getSuggestions(key, limit);
+		}
+		long start = start();
+		try {
+			Set<String> suggestions = index.search(key, limit, filter);
+			record(SearchMetrics.Type.FILTERED, start, suggestions.size());
+			return suggestions;
+		} finally {
+			SearchBudget.stop();
+		}
+	}
+
+	/**
+	 * Suggestions of a batch of keys, all searched in the same index. The keys are searched in
+	 * alphabetical order, a key coming right after its prefixes, so that the cache narrows the
+	 * suggestions of the longer keys from the ones of the shorter keys instead of searching again.
+	 *
+	 * @throws IllegalArgumentException if there are more than {@link #MAX_BATCH_SIZE} keys or a key is null
+	 */
+	@Override
+	public Map<String, Set<String>> getSuggestions(List<String> keys, int limit) {
+		checkBatch(keys);
+		MovieIndex index = this.index;
+		List<String> sorted = new ArrayList<>(keys);
+		sorted.sort(String.CASE_INSENSITIVE_ORDER);
+		Map<String, Set<String>> suggestions = new HashMap<>();
+		for (String key : sorted) {
+			if (!suggestions.containsKey(key)) {
+				suggestions.put(key, getSuggestions(key, limit, index));
+			}
+		}
+		return inOrder(keys, suggestions);
+	}
+
+	/**
+	 * Suggestions in cursor mode: the search resumes from the trie node saved in the cursor of the previous
+	 * key, if the key extends it, so only the characters typed since are walked. The response holds the cursor
+	 * to send with the next key. Only the compact trie engine has nodes a cursor can point to, with the other
+	 * engines the suggestions come without a cursor. Suggestions found this way are not cached.
+	 *
+	 * @param cursor the cursor returned with the previous key, empty or null to start a search
+	 */
+	public SuggestionWrapper getSuggestions(String key, int limit, String cursor) {
+		long start = start();
+		try {
+			return getSuggestions(key, limit, cursor, start);
+		} finally {
+			SearchBudget.stop();
+		}
+	}
+
+	private SuggestionWrapper getSuggestions(String key, int limit, String cursor, long start) {
+		MovieIndex index = this.index;
+		if (!index.isWalkable() || Objects.isNull(key)) {
+			Set<String> suggestions = suggestionCache.get(key, limit, index);
+			record(SearchMetrics.Type.CURSOR, start, suggestions.size());
+			return SuggestionWrapper.builder().suggestions(suggestions).partial(index.isPartial())
+					.truncated(SearchBudget.isTruncated()).build();
+		}
+		String folded = CaseFolding.fold(key);
+		SuggestionCursor previous = SuggestionCursor.decode(cursor);
+		int node = CompactTrie.ROOT;
+		if (previous != null && previous.resumes(index, folded)) {
+			try {
+				node = previous.getNode() == CompactTrie.NONE ? CompactTrie.NONE
+						: index.walk(previous.getNode(), folded, previous.getLength());
+			} catch (IllegalArgumentException e) {
+				node = index.walk(CompactTrie.ROOT, folded, 0);
+			}
+		} else {
+			node = index.walk(CompactTrie.ROOT, folded, 0);
+		}
+		Set<String> suggestions = index.search(key, limit, node);
+		record(SearchMetrics.Type.CURSOR, start, suggestions.size());
+		return SuggestionWrapper.builder().suggestions(suggestions).partial(index.isPartial())
+				.truncated(SearchBudget.isTruncated()).cursor(new SuggestionCursor(index.getGeneration(), folded, node).encode()).build();
+	}
+
+	/**
+	 * Suggestions passed to the consumer one at a time, as the index finds them, for responses written
+	 * while the search runs. Nothing is buffered nor cached. The search has the node budget of the other
+	 * suggestions but no deadline: the time recorded includes the time the consumer takes, and a slow
+	 * client would exhaust it.
+	 *
+	 * @return the number of suggestions passed to the consumer
+	 */
+	public int streamSuggestions(String key, int limit, Consumer<String> consumer) {
+		long start = start(searchBudgetNodes, 0);
+		try {
+			int count = index.stream(key, limit, consumer);
+			record(SearchMetrics.Type.STREAM, start, count);
+			return count;
+		} finally {
+			SearchBudget.stop();
+		}
+	}
+
+	/**
+	 * @return the statistics of the suggestion cache
+	 */
+	public Map<String, Number> getSuggestionCacheStats() {
+		return suggestionCache.getStats();
+	}
+
+	/**
+	 * Makes the index the one searched. The cached suggestions of the previous one are dropped,
+	 * a search still running on it can not cache its result anymore.
+	 */
+	private void publish(MovieIndex index) {
+		this.index = index;
+		suggestionCache.clear();
+	}
+
+	public Set<String> getFuzzySuggestions(String key, int maxEdits, int limit) {
+		return getFuzzySuggestions(key, maxEdits, limit, index);
+	}
+
+	private Set<String> getFuzzySuggestions(String key, int maxEdits, int limit, MovieIndex index) {
+		long start = start();
+		try {
+			Set<String> suggestions = index.fuzzySearch(key, maxEdits, limit);
+			record(SearchMetrics.Type.FUZZY, start, suggestions.size());
+			return suggestions;
+		} finally {
+			SearchBudget.stop();
+		}
+	}
+
+	/**
+	 * Fuzzy suggestions of a batch of keys, all searched in the same index.
+	 *
+	 * @throws IllegalArgumentException if there are more than {@link #MAX_BATCH_SIZE} keys or a key is null
+	 */
+	@Override
+	public Map<String, Set<String>> getFuzzySuggestions(List<String> keys, int maxEdits, int limit) {
+		checkBatch(keys);
+		MovieIndex index = this.index;
+		Map<String, Set<String>> suggestions = new LinkedHashMap<>();
+		for (String key : keys) {
+			if (!suggestions.containsKey(key)) {
+				suggestions.put(key, getFuzzySuggestions(key, maxEdits, limit, index));
+			}
+		}
+		return suggestions;
+	}
+
+	/**
+	 * @return the progress of the current or last load
+	 */
+	public LoadProgress getLoadProgress() {
+		return loadProgress;
+	}
+
+	/**
+	 * @return whether the index searched only holds the first titles of a load still running
+	 */
+	public boolean isPartial() {
+		return index.isPartial();
+	}
+
+	/**
+	 * Loads the movie data into a new index. A valid snapshot at moviefinder.snapshot.file is mapped
+	 * back directly. Otherwise the data is parsed: the file set in moviefinder.data.file is memory
+	 * mapped and parsed in parallel, without it the data bundled in the classpath is read line by line.
+	 *
+	 * Until the first load completes, a partial index of the titles parsed so far is published every
+	 * time their number doubles, from {@link #FIRST_PARTIAL_TITLES} on, if moviefinder.load.partial is
+	 * set and the engine is the compact trie, which is copied as a few arrays. The progress is
+	 * reported by {@link #getLoadProgress()}.
+	 */
+	public synchronized void loadData() {
+		if (!snapshotFile.isEmpty() && loadSnapshot(Paths.get(snapshotFile))) {
+			return;
+		}
+		logger.info(":: Loading movie data ::");
+		long start = System.currentTimeMillis();
+		loadProgress.start(dataFile.isEmpty() ? _resourcePath : dataFile);
+		MovieIndex replaced = index;
+		// the movie data of this load only, published with its index
+		OffHeapMovieDataCache movieData = createOffHeapMovieData();
+		Trie<String> trie = createTrie();
+		// the shards are built in parallel once all the titles are read
+		boolean sharded = trie instanceof ShardedTrie;
+		List<String> titles = new ArrayList<>();
+		MovieRecordStore records = new MovieRecordStore();
+		// ids of the lower cased titles indexed by this load
+		Map<String, Integer> keys = new HashMap<>();
+		// rows of the movie data of the titles, the partial indexes getting a copy of those added so far
+		Map<String, Integer> titleRows = new HashMap<>();
+		TitleFacets facets = new TitleFacets();
+		boolean partial = publishPartial && !loadProgress.isLoaded() && trie instanceof CompactTrie;
+		int[] nextPartial = { FIRST_PARTIAL_TITLES };
+		logger.info(":: Indexing titles with the {} trie engine ::", trieEngine);
+		Consumer<MovieData> indexer = row -> {
+			String title = row.getTitle();
+			String key = title.toLowerCase();
+			Integer id = keys.putIfAbsent(key, titles.size());
+			boolean newTitle = id == null;
+			facets.add(newTitle ? titles.size() : id, row);
+			if (movieData != null) {
+				if (newTitle) {
+					movieData.put(key, row);
 				} else {
-					i++;
+					movieData.add(row);
+				}
+			} else if (newTitle) {
+				titleRows.put(key, records.add(row));
+			} else {
+				records.add(row);
+			}
+			if(newTitle){
+				if (!sharded) {
+					trie.insert(title);
+				}
+				titles.add(title);
+				if (partial && titles.size() == nextPartial[0]) {
+					publish(movieData != null ? MovieIndex.partial(((CompactTrie) trie).copy(), movieData)
+							: MovieIndex.partial(((CompactTrie) trie).copy(), records.copy(), new HashMap<>(titleRows)));
+					loadProgress.partial(titles.size());
+					logger.info(":: Searching the first {} titles ::", titles.size());
+					nextPartial[0] <<= 1;
 				}
-				
-				
-				//trie.printTrie();
-
 			}
-			logger.info(":: Completed loading movie data ::");
-			//trie.printTrie();
+			loadProgress.addRow(newTitle);
+		};
+		try {
+			int rows;
+			if (dataFile.isEmpty()) {
+				Resource resource = resourceLoader.getResource(_classpath + _resourcePath);
+				try(InputStream in = resource.getInputStream();
+					BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF8"));) {
+					rows = MovieDataLoader.read(reader, indexer);
+				}
+			} else {
+				ForkJoinPool pool = new ForkJoinPool(
+						loadParallelism > 0 ? loadParallelism : Runtime.getRuntime().availableProcessors());
+				int[] skipped = new int[1];
+				try {
+					rows = MovieDataLoader.read(Paths.get(dataFile), pool, MovieDataLoader.DEFAULT_CHUNK_SIZE, indexer,
+							count -> skipped[0] += count);
+				} finally {
+					pool.shutdown();
+				}
+				if (skipped[0] > 0) {
+					logger.warn(":: Skipped {} malformed lines of {} ::", skipped[0], dataFile);
+				}
+			}
+			if (sharded) {
+				long buildStart = System.currentTimeMillis();
+				trie.insertAll(titles);
+				logger.info(":: Built {} trie shards in {} ms ::", ((ShardedTrie) trie).shardCount(),
+						System.currentTimeMillis() - buildStart);
+			}
+			MovieIndex loaded = movieData != null ? new MovieIndex(trie, new TrigramIndex(titles), facets, movieData)
+					: new MovieIndex(trie, new TrigramIndex(titles), records, facets, titleRows);
+			rankTitles(loaded);
+			publish(loaded);
+			closeOffHeapMovieData(replaced, loaded);
+			loadProgress.ready(rows, titles.size());
+			long elapsed = System.currentTimeMillis() - start;
+			metrics.recordLoad("data", rows, elapsed);
+			logger.info(":: Completed loading {} rows of movie data, {} titles and {} titleIds, in {} ms ::", rows,
+					titles.size(), movieData != null ? movieData.titleIdCount() : records.titleIdCount(), elapsed);
+			if (movieData != null) {
+				logger.info(":: Stored {} rows of movie data in {} KB off heap, {} KB of tables on heap, {} KB of index on heap ::",
+						movieData.rowCount(), movieData.storedBytes() >> 10, movieData.memoryEstimate() >> 10,
+						loaded.memoryEstimate() >> 10);
+			}
+			if (!snapshotFile.isEmpty() && trie instanceof CompactTrie && movieData == null) {
+				writeSnapshot();
+			}
 		} catch (Throwable t) {
 			t.printStackTrace();
 			logger.error(t.getMessage(), t.getCause());
+			if (loadProgress.getState() == LoadProgress.State.LOADING) {
+				loadProgress.failed(String.valueOf(t.getMessage()));
+			}
 		} 
 	}
 
+	/**
+	 * Ranks the titles of the index, when its trie is a compact or sharded one, by the votes of moviefinder.rank.file
+	 * if set, otherwise by the ordering of their row, the lowest first. The prefix suggestions then come best first,
+	 * those of the prefixes up to moviefinder.rank.depth characters without walking the trie below them. The titles
+	 * stay unranked if the ratings file can not be read. The index must not be published yet.
+	 */
+	private void rankTitles(MovieIndex index) {
+		Trie<String> trie = index.getTrie();
+		if (rankCompletions <= 0 || !(trie instanceof CompactTrie || trie instanceof ShardedTrie)) {
+			return;
+		}
+		long start = System.currentTimeMillis();
+		ToIntFunction<String> score;
+		if (rankFile.isEmpty()) {
+			score = title -> {
+				MovieData movieData = getMovieData(title.toLowerCase(), index);
+				return movieData == null ? Integer.MIN_VALUE : -movieData.getOrdering();
+			};
+		} else {
+			Map<String, Integer> votes;
+			try (BufferedReader reader = Files.newBufferedReader(Paths.get(rankFile), StandardCharsets.UTF_8)) {
+				votes = MovieDataLoader.readVotes(reader);
+			} catch (IOException | RuntimeException e) {
+				logger.warn(":: Leaving the titles unranked, can not read {}: {} ::", rankFile, e.getMessage());
+				return;
+			}
+			score = title -> {
+				MovieData movieData = getMovieData(title.toLowerCase(), index);
+				return movieData == null ? Integer.MIN_VALUE : votes.getOrDefault(movieData.getTitleId(), 0);
+			};
+		}
+		if (trie instanceof ShardedTrie) {
+			((ShardedTrie) trie).rank(score, rankCompletions, rankDepth);
+		} else {
+			((CompactTrie) trie).rank(score, rankCompletions, rankDepth);
+		}
+		logger.info(":: Ranked the titles by {} in {} ms ::", rankFile.isEmpty() ? "ordering" : rankFile,
+				System.currentTimeMillis() - start);
+	}
+
+	private Trie<String> createTrie() {
+		TrieEngine engine = TrieEngine.of(trieEngine);
+		return engine == TrieEngine.SHARDED ? new ShardedTrie(trieShards) : engine.create();
+	}
+
+	/**
+	 * Publishes the index and records of the snapshot, if there is a valid one.
+	 *
+	 * @return whether the snapshot was loaded
+	 */
+	private boolean loadSnapshot(Path file) {
+		if (!Files.isRegularFile(file)) {
+			logger.info(":: No index snapshot at {} ::", file);
+			return false;
+		}
+		long start = System.currentTimeMillis();
+		loadProgress.start(file.toString());
+		try {
+			IndexSnapshot snapshot = IndexSnapshot.read(file, dataFile.isEmpty() ? null : Paths.get(dataFile));
+			MovieRecordStore records = snapshot.getRecords();
+			Map<String, Integer> titleRows = new HashMap<>();
+			// the facets are not written, they are rebuilt from the rows and the ids of the titles
+			Map<String, Integer> ids = new HashMap<>();
+			List<String> titles = snapshot.getSubstringIndex().getTitles();
+			for (int id = 0; id < titles.size(); id++) {
+				ids.putIfAbsent(titles.get(id).toLowerCase(), id);
+			}
+			TitleFacets facets = new TitleFacets();
+			MovieIndex replaced = index;
+			// the rows read from the snapshot are dropped once stored off heap
+			OffHeapMovieDataCache offHeapMovieData = createOffHeapMovieData();
+			for (int row = 0; row < records.size(); row++) {
+				MovieData movieData = records.get(row);
+				String key = movieData.getTitle().toLowerCase();
+				boolean newTitle = titleRows.putIfAbsent(key, row) == null;
+				if (offHeapMovieData != null && newTitle) {
+					offHeapMovieData.put(key, movieData);
+				} else if (offHeapMovieData != null) {
+					offHeapMovieData.add(movieData);
+				}
+				Integer id = ids.get(key);
+				if (id != null) {
+					facets.add(id, movieData);
+				}
+			}
+			MovieIndex loaded = offHeapMovieData != null
+					? new MovieIndex(snapshot.getTrie(), snapshot.getSubstringIndex(), facets, offHeapMovieData)
+					: new MovieIndex(snapshot.getTrie(), snapshot.getSubstringIndex(), records, facets, titleRows);
+			rankTitles(loaded);
+			publish(loaded);
+			closeOffHeapMovieData(replaced, loaded);
+			loadProgress.ready(records.size(), snapshot.getTrie().size());
+			long elapsed = System.currentTimeMillis() - start;
+			metrics.recordLoad("snapshot", records.size(), elapsed);
+			logger.info(":: Loaded index snapshot {} with {} titles in {} ms ::", file, snapshot.getTrie().size(),
+					elapsed);
+			return true;
+		} catch (IOException | RuntimeException e) {
+			// the data file is parsed instead
+			logger.warn(":: Ignoring index snapshot {}, {} ::", file, e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Writes the current index and records to moviefinder.snapshot.file, to be loaded on the next start.
+	 * Only the compact trie engine, whose nodes are plain arrays, can be written, with the movie data of
+	 * the records on the heap.
+	 *
+	 * @return the snapshot file
+	 */
+	public synchronized Path writeSnapshot() throws IOException {
+		if (snapshotFile.isEmpty()) {
+			throw new IllegalStateException("moviefinder.snapshot.file is not set");
+		}
+		if (!(index.getTrie() instanceof CompactTrie)) {
+			throw new IllegalStateException("Index snapshots need the compact trie engine");
+		}
+		if (index.getOffHeapMovieData() != null) {
+			throw new IllegalStateException("Index snapshots need the movie data stored on the heap");
+		}
+		MovieIndex index = this.index.merged();
+		Path file = Paths.get(snapshotFile);
+		new IndexSnapshot((CompactTrie) index.getTrie(), index.getSubstringIndex(), index.getRecords()).write(file,
+				dataFile.isEmpty() ? null : Paths.get(dataFile));
+		logger.info(":: Wrote index snapshot {} ::", file);
+		return file;
+	}
+
+	/**
+	 * Applies a delta file of moviefinder.delta.dir, given by its name in the directory.
+	 *
+	 * @return the number of titles added
+	 * @throws IllegalStateException if moviefinder.delta.dir is not set
+	 * @throws IllegalArgumentException if the name is not the one of a file of the directory
+	 */
+	public int applyDelta(String name) throws IOException {
+		if (deltaDir.isEmpty()) {
+			throw new IllegalStateException("moviefinder.delta.dir is not set");
+		}
+		Path dir = Paths.get(deltaDir).toRealPath();
+		Path file = dir.resolve(name).normalize();
+		// a link out of the directory is followed before checking
+		if (!Files.isRegularFile(file) || !file.toRealPath().startsWith(dir)) {
+			throw new IllegalArgumentException("Invalid delta file " + name);
+		}
+		return applyDelta(file);
+	}
+
+	/**
+	 * Applies a delta file, tab separated with a header line like the data file. Every row is added
+	 * to a copy of the record store, or of the off heap store, replacing the row of the same titleId and
+	 * ordering if there is one, and its movie data replaces the one of the same title. Then the titles not indexed yet are added
+	 * to the delta segment of a new index holding the copy, which is published in a single step. The base
+	 * index is neither rebuilt nor modified, readers keep searching the previous index until the swap.
+	 * The rows of the titles added give their facets, the facets of the titles already indexed are left
+	 * unchanged. Once the delta segment holds more than moviefinder.delta.max.titles titles, it is folded
+	 * into the base, when that is a compact trie, so that the delta structures rebuilt by every delta stay small.
+	 *
+	 * @return the number of titles added
+	 */
+	public synchronized int applyDelta(Path file) throws IOException {
+		long start = System.currentTimeMillis();
+		List<String> titles = new ArrayList<>();
+		// ids of the titles added, numbered after the titles of the delta segment
+		Map<String, Integer> ids = new HashMap<>();
+		// new rows of the titles, whether added or already indexed
+		Map<String, Integer> titleRows = new HashMap<>();
+		int offset = index.getDeltaTitles().size();
+		TitleFacets facets = index.getDeltaFacets().copy();
+		int rows;
+		// the rows are added to copies of the stores, published with the new index
+		OffHeapMovieDataCache offHeapMovieData = index.getOffHeapMovieData() == null ? null
+				: index.getOffHeapMovieData().copy();
+		MovieRecordStore records = offHeapMovieData == null ? index.getRecords().copy() : index.getRecords();
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			rows = MovieDataLoader.read(reader, movieData -> {
+				String key = movieData.getTitle().toLowerCase();
+				if (!ids.containsKey(key) && !hasMovieData(key, index)) {
+					ids.put(key, offset + titles.size());
+					titles.add(movieData.getTitle());
+				}
+				Integer id = ids.get(key);
+				if (id != null) {
+					facets.add(id, movieData);
+				}
+				if (offHeapMovieData != null) {
+					offHeapMovieData.put(key, movieData);
+				} else {
+					titleRows.put(key, records.add(movieData));
+				}
+			});
+		}
+		MovieIndex updated = offHeapMovieData != null ? index.withDelta(titles, facets, offHeapMovieData)
+				: index.withDelta(titles, facets, records, titleRows);
+		if (updated.getDeltaTitles().size() > maxDeltaTitles && updated.getTrie() instanceof CompactTrie
+				&& !updated.isPartial()) {
+			updated = updated.merged();
+			rankTitles(updated);
+			logger.info(":: Folded the delta titles into the base, {} titles ::", updated.size());
+		}
+		publish(updated);
+		long elapsed = System.currentTimeMillis() - start;
+		metrics.recordLoad("delta", rows, elapsed);
+		logger.info(":: Applied {} rows of delta {}, {} new titles, in {} ms ::", rows, file, titles.size(), elapsed);
+		return titles.size();
+	}
+
+	/**
+	 * Starts applying the delta files created in moviefinder.delta.dir, if set.
+	 */
+	public synchronized void watchDeltas() throws IOException {
+		if (deltaDir.isEmpty() || deltaWatcher != null) {
+			return;
+		}
+		deltaWatcher = new DeltaWatcher(Paths.get(deltaDir), this);
+		deltaWatcher.start();
+		logger.info(":: Watching {} for delta files ::", deltaDir);
+	}
+
 	@Override
 	public MovieData getMovieData(String key) {
-		MovieDataCache movieDataCache = MovieDataCache.getInstance();
-		return movieDataCache.get(key);
+		return getMovieData(key, index);
+	}
+
+	private MovieData getMovieData(String key, MovieIndex index) {
+		return index.getMovieData(key);
+	}
+
+	private boolean hasMovieData(String key, MovieIndex index) {
+		return index.hasMovieData(key);
+	}
+
+	/**
+	 * Returns every regional and language variant of the movie whose title is the key, lower cased,
+	 * or an empty list if there is no such movie.
+	 */
+	@Override
+	public List<MovieData> getMovieVariants(String key) {
+		return getMovieVariants(key, index);
+	}
+
+	private List<MovieData> getMovieVariants(String key, MovieIndex index) {
+		MovieData movieData = getMovieData(key, index);
+		if (movieData == null) {
+			return new ArrayList<>();
+		}
+		return index.getVariants(movieData.getTitleId());
+	}
+
+	/**
+	 * Variants of a batch of movies, by title ignoring case. A key matching no movie has an
+	 * empty list, a key given several times is looked up once.
+	 *
+	 * @throws IllegalArgumentException if there are more than {@link #MAX_BATCH_SIZE} keys or a key is null
+	 */
+	@Override
+	public Map<String, List<MovieData>> getMovieVariants(List<String> keys) {
+		checkBatch(keys);
+		MovieIndex index = this.index;
+		Map<String, List<MovieData>> variants = new LinkedHashMap<>();
+		for (String key : keys) {
+			if (!variants.containsKey(key)) {
+				variants.put(key, getMovieVariants(key.toLowerCase(), index));
+			}
+		}
+		return variants;
+	}
+
+	private static void checkBatch(List<String> keys) {
+		if (keys.size() > MAX_BATCH_SIZE) {
+			throw new IllegalArgumentException("Invalid batch size " + keys.size() + ", at most " + MAX_BATCH_SIZE);
+		}
+		if (keys.contains(null)) {
+			throw new IllegalArgumentException("Invalid key null");
+		}
+	}
+
+	/**
+	 * @return the values of the keys, in the order of the keys
+	 */
+	private static <V> Map<String, V> inOrder(List<String> keys, Map<String, V> values) {
+		Map<String, V> ordered = new LinkedHashMap<>();
+		for (String key : keys) {
+			ordered.put(key, values.get(key));
+		}
+		return ordered;
 	}
 
 }
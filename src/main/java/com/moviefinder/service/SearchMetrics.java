@@ -0,0 +1,113 @@
+package com.moviefinder.service;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import com.moviefinder.util.SearchCounter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Meters of the suggestions and loads of {@link MovieService}, scraped from /actuator/prometheus:
+ *
+ *	moviefinder.suggestions         - latency of the suggestions, by type
+ *	moviefinder.suggestions.nodes   - trie nodes visited by a suggestion, by type
+ *	moviefinder.suggestions.results - titles returned by a suggestion, by type
+ *	moviefinder.suggestions.truncated - suggestions which exhausted their search budget, by type
+ *	moviefinder.load                - duration of the loads, by source: data, snapshot or delta
+ *	moviefinder.load.rows           - rows loaded, by source
+ *	moviefinder.load.rate           - rows per second of the last load of the data file
+ *	moviefinder.index.titles, moviefinder.index.nodes, moviefinder.index.memory - the index searched
+ *
+ * The suggestion meters publish histograms, percentiles are computed from them over any number of
+ * instances. Recording a suggestion costs two clock reads and a few lock free additions.
+ */
+final class SearchMetrics {
+
+	/**
+	 * Suggestions by the way they are searched
+	 */
+	enum Type {
+		PREFIX, CURSOR, FUZZY, STREAM, FILTERED
+	}
+
+	private final MeterRegistry registry;
+	private final Timer[] latencies = new Timer[Type.values().length];
+	private final DistributionSummary[] nodes = new DistributionSummary[Type.values().length];
+	private final DistributionSummary[] results = new DistributionSummary[Type.values().length];
+	private final Counter[] truncated = new Counter[Type.values().length];
+
+	/**
+	 * Gauges only keep a weak reference to their object, this one lives as long as the metrics
+	 */
+	private final Supplier<MovieIndex> index;
+	private volatile double loadRate;
+
+	SearchMetrics(MeterRegistry registry, Supplier<MovieIndex> index) {
+		this.registry = registry;
+		this.index = index;
+		for (Type type : Type.values()) {
+			String tag = type.name().toLowerCase(Locale.ROOT);
+			latencies[type.ordinal()] = Timer.builder("moviefinder.suggestions").description("Suggestion latency")
+					.tag("type", tag).publishPercentileHistogram().register(registry);
+			nodes[type.ordinal()] = DistributionSummary.builder("moviefinder.suggestions.nodes")
+					.description("Trie nodes visited per suggestion").baseUnit("nodes").tag("type", tag)
+					.publishPercentileHistogram().register(registry);
+			results[type.ordinal()] = DistributionSummary.builder("moviefinder.suggestions.results")
+					.description("Titles returned per suggestion").baseUnit("titles").tag("type", tag)
+					.publishPercentileHistogram().register(registry);
+			truncated[type.ordinal()] = Counter.builder("moviefinder.suggestions.truncated")
+					.description("Suggestions which exhausted their search budget").tag("type", tag).register(registry);
+		}
+		Gauge.builder("moviefinder.index.titles", index, supplier -> supplier.get().size())
+				.description("Titles indexed").register(registry);
+		Gauge.builder("moviefinder.index.nodes", index, supplier -> supplier.get().nodeCount())
+				.description("Trie nodes").register(registry);
+		Gauge.builder("moviefinder.index.memory", index, supplier -> supplier.get().memoryEstimate())
+				.description("Estimated size of the index and records").baseUnit("bytes").register(registry);
+		Gauge.builder("moviefinder.load.rate", this, metrics -> metrics.loadRate)
+				.description("Rows per second of the last load").baseUnit("rows").register(registry);
+	}
+
+	/**
+	 * Starts measuring a suggestion on the current thread.
+	 *
+	 * @return the start time to pass to {@link #record(Type, long, int, boolean)}
+	 */
+	long start() {
+		SearchCounter.reset();
+		return System.nanoTime();
+	}
+
+	/**
+	 * Records a suggestion of the current thread started at start, with the nodes visited since.
+	 *
+	 * @param truncated whether the suggestion exhausted its search budget
+	 */
+	void record(Type type, long start, int resultCount, boolean truncated) {
+		latencies[type.ordinal()].record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		nodes[type.ordinal()].record(SearchCounter.reset());
+		results[type.ordinal()].record(resultCount);
+		if (truncated) {
+			this.truncated[type.ordinal()].increment();
+		}
+	}
+
+	/**
+	 * Records a load of rows from the source, which took millis milliseconds.
+	 */
+	void recordLoad(String source, long rows, long millis) {
+		registry.timer("moviefinder.load", "source", source).record(millis, TimeUnit.MILLISECONDS);
+		Counter.builder("moviefinder.load.rows").description("Rows loaded").baseUnit("rows").tag("source", source)
+				.register(registry).increment(rows);
+		if (source.equals("data")) {
+			loadRate = millis == 0 ? rows * 1000.0 : rows * 1000.0 / millis;
+		}
+	}
+
+}
@@ -0,0 +1,252 @@
+package com.moviefinder.service;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.moviefinder.util.CaseFolding;
+import com.moviefinder.util.SearchBudget;
+import com.moviefinder.util.WordIndex;
+
+/**
+ * Bounded cache of the suggestions of a {@link MovieIndex}, by lower cased key.
+ *
+ * An entry holding fewer titles than the limit it was searched with holds every title matching its key,
+ * it is complete. The suggestions of a key are narrowed from the complete entry of its longest cached
+ * prefix matching all the titles the key matches, instead of searching the index again: typing "the g"
+ * after "the" filters the titles cached for "the". Narrowed suggestions are the same titles as searched
+ * ones, titles starting with the key first.
+ *
+ * A title starting with or containing a key starts with or contains its prefixes, but a key of several
+ * words also matches the titles holding its words in another order, which a prefix only matches if it
+ * is part of a single word of the key or ends in a word of a key of as many words. "hotel " does not
+ * match "A Badly Managed Hotel", which "hotel b" matches, so "hotel b" is searched.
+ *
+ * When full, the cache evicts the least frequently hit of a few entries picked at random, and halves all
+ * the hit counts from time to time so that old favourites do not stay forever. Entries are tied to the
+ * index they were searched in and ignored once another index is published. The suggestions of a search
+ * which exhausted its {@link SearchBudget} are not cached, they may miss titles.
+ */
+public final class SuggestionCache {
+
+	private static final int SAMPLE = 8;
+
+	private final int capacity;
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+	/**
+	 * Keys by slot, eviction samples random slots
+	 */
+	private final String[] keys;
+	private int size;
+	private long puts;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong narrowedHits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * @param capacity maximum number of entries, 0 disables the cache
+	 * @throws IllegalArgumentException if capacity is negative
+	 */
+	public SuggestionCache(int capacity) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("Invalid capacity " + capacity);
+		}
+		this.capacity = capacity;
+		this.keys = new String[capacity];
+	}
+
+	/**
+	 * Returns the suggestions of the key from the cache, narrowed from a cached prefix or searched in the index.
+	 *
+	 * @throws IllegalArgumentException if limit is not positive
+	 */
+	public Set<String> get(String key, int limit, MovieIndex index) {
+		if (limit < 1) {
+			throw new IllegalArgumentException("Invalid limit " + limit);
+		}
+		if (capacity == 0 || Objects.isNull(key) || key.isEmpty()) {
+			return index.search(key, limit);
+		}
+		String folded = CaseFolding.fold(key);
+		Entry entry = entries.get(folded);
+		if (entry != null && entry.index == index && (entry.complete || entry.titles.length >= limit)) {
+			entry.frequency.incrementAndGet();
+			hits.incrementAndGet();
+			return first(entry.titles, limit);
+		}
+		int words = WordIndex.countWords(folded);
+		for (int length = folded.length() - 1; length > 0; length--) {
+			String prefixKey = folded.substring(0, length);
+			Entry prefix = entries.get(prefixKey);
+			if (prefix != null && prefix.index == index && prefix.complete && matchesAll(prefixKey, folded, words)) {
+				prefix.frequency.incrementAndGet();
+				narrowedHits.incrementAndGet();
+				String[] titles = narrow(prefix.titles, folded);
+				put(folded, new Entry(index, titles, true));
+				return first(titles, limit);
+			}
+		}
+		misses.incrementAndGet();
+		Set<String> suggestions = index.search(key, limit);
+		if (!SearchBudget.isTruncated()) {
+			put(folded, new Entry(index, suggestions.toArray(new String[suggestions.size()]), suggestions.size() < limit));
+		}
+		return suggestions;
+	}
+
+	/**
+	 * Removes all the entries, the statistics are kept.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		Arrays.fill(keys, null);
+		size = 0;
+	}
+
+	/**
+	 * @return the number of entries and the hit, narrowed hit, miss and eviction counts
+	 */
+	public Map<String, Number> getStats() {
+		long hits = this.hits.get();
+		long narrowedHits = this.narrowedHits.get();
+		long misses = this.misses.get();
+		long requests = hits + narrowedHits + misses;
+		Map<String, Number> stats = new LinkedHashMap<>();
+		stats.put("capacity", capacity);
+		stats.put("size", entries.size());
+		stats.put("hits", hits);
+		stats.put("narrowedHits", narrowedHits);
+		stats.put("misses", misses);
+		stats.put("evictions", evictions.get());
+		stats.put("hitRate", requests == 0 ? 0.0 : (double) (hits + narrowedHits) / requests);
+		return stats;
+	}
+
+	private synchronized void put(String key, Entry entry) {
+		Entry previous = entries.get(key);
+		if (previous != null) {
+			entry.slot = previous.slot;
+			entry.frequency.set(previous.frequency.get());
+			entries.put(key, entry);
+			return;
+		}
+		if (size == capacity) {
+			entry.slot = evict();
+		} else {
+			entry.slot = size++;
+		}
+		keys[entry.slot] = key;
+		entries.put(key, entry);
+		if (++puts % (10L * capacity) == 0) {
+			for (Entry cached : entries.values()) {
+				cached.frequency.updateAndGet(frequency -> frequency >>> 1);
+			}
+		}
+	}
+
+	/**
+	 * Removes the least frequently hit of SAMPLE random entries.
+	 *
+	 * @return its slot
+	 */
+	private int evict() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int victim = random.nextInt(size);
+		for (int i = 1; i < SAMPLE; i++) {
+			int slot = random.nextInt(size);
+			if (entries.get(keys[slot]).frequency.get() < entries.get(keys[victim]).frequency.get()) {
+				victim = slot;
+			}
+		}
+		entries.remove(keys[victim]);
+		evictions.incrementAndGet();
+		return victim;
+	}
+
+	/**
+	 * Whether every title matching the folded key of the given number of words matches its prefix: a key
+	 * of one word only matches titles starting with or containing it, a key of several words also matches
+	 * the titles holding its words, which hold its first word, and the words of a prefix of as many words
+	 * ending in a word.
+	 */
+	private static boolean matchesAll(String prefix, String folded, int words) {
+		if (words <= 1 || WordIndex.countWords(prefix) == words && WordIndex.endsInWord(prefix)) {
+			return true;
+		}
+		// part of the first word of the key, contained by the titles holding that word
+		for (int i = 0; i < prefix.length(); i++) {
+			if (!Character.isLetterOrDigit(prefix.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * The titles matching the folded key among the titles of a complete entry, the ones starting with it first,
+	 * then the ones containing it, then for a key of several words the ones holding all its words.
+	 */
+	private static String[] narrow(String[] titles, String folded) {
+		String[] narrowed = new String[titles.length];
+		int starting = 0;
+		for (String title : titles) {
+			if (CaseFolding.startsWith(title, folded)) {
+				narrowed[starting++] = title;
+			}
+		}
+		int count = starting;
+		for (String title : titles) {
+			if (!CaseFolding.startsWith(title, folded) && CaseFolding.contains(title, folded)) {
+				narrowed[count++] = title;
+			}
+		}
+		if (WordIndex.countWords(folded) > 1) {
+			String[] words = WordIndex.words(folded);
+			boolean lastIsPrefix = WordIndex.endsInWord(folded);
+			for (String title : titles) {
+				if (!CaseFolding.contains(title, folded) && WordIndex.containsWords(title, words, lastIsPrefix)) {
+					narrowed[count++] = title;
+				}
+			}
+		}
+		return Arrays.copyOf(narrowed, count);
+	}
+
+	private static Set<String> first(String[] titles, int limit) {
+		Set<String> suggestions = new LinkedHashSet<>();
+		for (int i = 0; i < titles.length && i < limit; i++) {
+			suggestions.add(titles[i]);
+		}
+		return suggestions;
+	}
+
+	private static final class Entry {
+
+		private final MovieIndex index;
+		private final String[] titles;
+		private final boolean complete;
+		/**
+		 * Hits, counted by the readers concurrently
+		 */
+		private final AtomicInteger frequency = new AtomicInteger();
+		private int slot;
+
+		Entry(MovieIndex index, String[] titles, boolean complete) {
+			this.index = index;
+			this.titles = titles;
+			this.complete = complete;
+		}
+
+	}
+
+}
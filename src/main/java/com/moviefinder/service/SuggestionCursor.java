@@ -0,0 +1,81 @@
+package com.moviefinder.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Objects;
+
+/**
+ * Position of a suggestion search in the base trie of an index, handed to the client as an opaque
+ * token so that the search of the next key typed resumes from it. The token holds the generation of
+ * the index, the length and hash of the lower cased key, and the trie node this key reached, so the
+ * server keeps no state per client.
+ *
+ * A token only resumes a key extending the one it was issued for, on the same base structures.
+ * Any other token, from another key, a previous load or simply malformed, is ignored and the search
+ * starts from the root again.
+ */
+final class SuggestionCursor {
+
+	private static final String _separator = ".";
+
+	private final long generation;
+	private final int length;
+	private final int hash;
+	private final int node;
+
+	SuggestionCursor(long generation, String folded, int node) {
+		this(generation, folded.length(), folded.hashCode(), node);
+	}
+
+	private SuggestionCursor(long generation, int length, int hash, int node) {
+		this.generation = generation;
+		this.length = length;
+		this.hash = hash;
+		this.node = node;
+	}
+
+	/**
+	 * @return the cursor of the token, or null if it is not a valid token
+	 */
+	static SuggestionCursor decode(String token) {
+		if (Objects.isNull(token) || token.isEmpty()) {
+			return null;
+		}
+		try {
+			String[] fields = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.US_ASCII)
+					.split("\\.");
+			if (fields.length != 4) {
+				return null;
+			}
+			return new SuggestionCursor(Long.parseLong(fields[0]), Integer.parseInt(fields[1]),
+					Integer.parseInt(fields[2]), Integer.parseInt(fields[3]));
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	String encode() {
+		String value = generation + _separator + length + _separator + hash + _separator + node;
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.US_ASCII));
+	}
+
+	/**
+	 * @return whether the search of the folded key in the index can resume from this cursor
+	 */
+	boolean resumes(MovieIndex index, String folded) {
+		return generation == index.getGeneration() && length <= folded.length()
+				&& folded.substring(0, length).hashCode() == hash;
+	}
+
+	/**
+	 * @return the number of characters of the key already walked
+	 */
+	int getLength() {
+		return length;
+	}
+
+	int getNode() {
+		return node;
+	}
+
+}
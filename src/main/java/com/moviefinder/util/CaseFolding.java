@@ -0,0 +1,74 @@
+package com.moviefinder.util;
+
+/**
+ * Case folding of the titles and of the keys searched: every character is lower cased on its own with
+ * Character.toLowerCase, the way the tries walk them, so a folded string keeps the length of the original.
+ *
+ * A key is folded once per search. The tries and indexes keep the titles as they were given and match them
+ * with the methods of this class, which fold the characters of the title as they compare them without
+ * creating any object.
+ */
+public final class CaseFolding {
+
+	private CaseFolding() {
+	}
+
+	/**
+	 * @return the folded value, the value itself if none of its characters changes
+	 */
+	public static String fold(String value) {
+		for (int i = 0; i < value.length(); i++) {
+			if (Character.toLowerCase(value.charAt(i)) != value.charAt(i)) {
+				char[] chars = value.toCharArray();
+				for (int j = i; j < chars.length; j++) {
+					chars[j] = Character.toLowerCase(chars[j]);
+				}
+				return new String(chars);
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * @return whether the value, once folded, starts with the folded key
+	 */
+	public static boolean startsWith(String value, String folded) {
+		return startsWith(value, folded, folded.length());
+	}
+
+	/**
+	 * @return whether the value, once folded, starts with the first length characters of the folded key
+	 */
+	public static boolean startsWith(String value, String folded, int length) {
+		return value.length() >= length && matches(value, 0, folded, length);
+	}
+
+	/**
+	 * @return whether the value, once folded, contains the folded key
+	 */
+	public static boolean contains(String value, String folded) {
+		for (int start = 0; start <= value.length() - folded.length(); start++) {
+			if (matches(value, start, folded, folded.length())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return whether the value, once folded, holds the folded key at position start
+	 */
+	public static boolean matchesAt(String value, int start, String folded) {
+		return start >= 0 && start <= value.length() - folded.length() && matches(value, start, folded, folded.length());
+	}
+
+	private static boolean matches(String value, int start, String folded, int length) {
+		for (int i = 0; i < length; i++) {
+			if (Character.toLowerCase(value.charAt(start + i)) != folded.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
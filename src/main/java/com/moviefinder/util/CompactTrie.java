@@ -0,0 +1,896 @@
+package com.moviefinder.util;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * Array backed trie implementation of String. Where {@link TrieImpl} allocates a node object with its
+ * own HashMap, boxed Character and parent pointer, this trie keeps the whole structure
+ * in a few parallel primitive arrays indexed by an int node id:
+ *
+ *	labels      - the lower cased character of the node
+ *	firstChild  - id of the first child, children are chained in label order
+ *	nextSibling - id of the next child of the same parent
+ *	values      - index in keys of the value ending at the node, or -1
+ *
+ * The node 0 is the empty root. Every other node costs 14 bytes, and every value is stored exactly once.
+ * Search semantics are the same as the ones of {@link TrieImpl}. The searches fold the values as they compare
+ * them (see {@link CaseFolding}) rather than keeping folded copies, and work in arrays reused by the thread:
+ * they allocate little more than the set they return.
+ *
+ * Once built, the values can be ranked by a score with {@link #rank(ToIntFunction, int, int)}: the prefix
+ * searches then return the best values first, read from completions stored at the nodes of the short prefixes.
+ */
+public final class CompactTrie implements NumberedTrie {
+
+	/**
+	 * Id of the root node
+	 */
+	public static final int ROOT = 0;
+
+	/**
+	 * Id of no node
+	 */
+	public static final int NONE = -1;
+	private static final int INITIAL_CAPACITY = 1024;
+	private static final IntPredicate ALL = key -> true;
+
+	private char[] labels;
+	private int[] firstChild;
+	private int[] nextSibling;
+	private int[] values;
+	private int nodeCount;
+
+	private String[] keys;
+	private int keyCount;
+
+	/**
+	 * Ranking of the values, null until ranked: the position of every key in the ranking, and the best keys
+	 * below the nodes close to the root, sorted in topNodes, the ones of topNodes[i] being topKeys[topStart[i]]
+	 * to topKeys[topStart[i + 1]]
+	 */
+	private int[] ranks;
+	private int[] topNodes;
+	private int[] topStart;
+	private int[] topKeys;
+	private int topCount;
+
+	public CompactTrie() {
+		clear();
+	}
+
+	/**
+	 * Trie restored from its arrays, see {@link IndexSnapshot}.
+	 */
+	CompactTrie(char[] labels, int[] firstChild, int[] nextSibling, int[] values, String[] keys) {
+		this.labels = labels;
+		this.firstChild = firstChild;
+		this.nextSibling = nextSibling;
+		this.values = values;
+		this.nodeCount = labels.length;
+		this.keys = keys;
+		this.keyCount = keys.length;
+	}
+
+	/**
+	 * Work arrays of the searches of a thread, reused from one search to the next. A search never runs
+	 * inside another one on the same thread, the consumers of the prefix searches do not search.
+	 */
+	private static final class Buffers {
+
+		private final IntStack stack = new IntStack();
+		private IntStack frontier = new IntStack();
+		private IntStack next = new IntStack();
+		private char[] letters = new char[64];
+		private int[][] rows = new int[64][];
+
+		/**
+		 * @return the row of the fuzzy search at depth, of at least width distances
+		 */
+		int[] row(int depth, int width) {
+			if (depth == rows.length) {
+				rows = Arrays.copyOf(rows, depth << 1);
+			}
+			if (rows[depth] == null || rows[depth].length < width) {
+				rows[depth] = new int[Math.max(width, 64)];
+			}
+			return rows[depth];
+		}
+
+		void swapFrontier() {
+			IntStack swapped = frontier;
+			frontier = next;
+			next = swapped;
+			next.clear();
+		}
+	}
+
+	private static final ThreadLocal<Buffers> buffers = ThreadLocal.withInitial(Buffers::new);
+
+	/**
+	 * Method that inserts multiple String values in the trie
+	 */
+	@Override
+	public void insertAll(List<String> values) {
+		for (String value : values) {
+			insert(value);
+		}
+	}
+
+	/**
+	 * Walks down the trie one lower cased character at a time, adding the missing nodes, and records the
+	 * value on the last one. Inserting a value which only differs by case replaces the previous one.
+	 */
+	@Override
+	public void insert(String value) {
+		if (Objects.isNull(value) || value.isEmpty()) {
+			throw new IllegalArgumentException("Invalid value");
+		}
+		int node = ROOT;
+		for (int i = 0; i < value.length(); i++) {
+			node = addChild(node, Character.toLowerCase(value.charAt(i)));
+		}
+		if (values[node] == NONE) {
+			if (keyCount == keys.length) {
+				keys = Arrays.copyOf(keys, grow(keys.length));
+			}
+			values[node] = keyCount;
+			keys[keyCount++] = value;
+		} else {
+			keys[values[node]] = value;
+		}
+		dropRanking();
+	}
+
+	/**
+	 * Ranks the values by score, the highest first and the ones of the same score in trie order, and stores
+	 * the count best values below every node of at most depth characters. The prefix searches then return
+	 * the values in rank order: for a prefix of at most depth characters and a limit of at most count values,
+	 * the stored ones are returned without walking the subtree, otherwise the subtree is walked keeping the best
+	 * limit values.
+	 *
+	 * Takes a walk of the trie, a sort of the values and a walk of the first depth characters of every value.
+	 * The ranking costs 4 bytes per value for its rank, and 8 bytes plus 4 bytes per stored completion, at most
+	 * count, for every node of at most depth characters. Inserting a value drops the ranking.
+	 *
+	 * @throws IllegalArgumentException if count is not positive or depth is negative
+	 */
+	public void rank(ToIntFunction<String> score, int count, int depth) {
+		if (count < 1) {
+			throw new IllegalArgumentException("Invalid count " + count);
+		}
+		if (depth < 0) {
+			throw new IllegalArgumentException("Invalid depth " + depth);
+		}
+		int[] trieOrder = valuesBelow(ROOT);
+		// highest score first, the position in trie order breaking the ties
+		long[] sorted = new long[trieOrder.length];
+		for (int i = 0; i < trieOrder.length; i++) {
+			sorted[i] = (long) ~score.applyAsInt(keys[trieOrder[i]]) << 32 | i;
+		}
+		Arrays.sort(sorted);
+		int[] ordered = new int[sorted.length];
+		int[] ranks = new int[keyCount];
+		for (int i = 0; i < sorted.length; i++) {
+			ordered[i] = trieOrder[(int) sorted[i]];
+			ranks[ordered[i]] = i;
+		}
+		int[] topNodes = nodesAbove(depth);
+		// counts the completions of every node first, then fills them in rank order
+		int[] filled = new int[topNodes.length];
+		for (int key : ordered) {
+			for (int node : path(keys[key], depth)) {
+				int slot = Arrays.binarySearch(topNodes, node);
+				filled[slot] = Math.min(filled[slot] + 1, count);
+			}
+		}
+		int[] topStart = new int[topNodes.length + 1];
+		for (int slot = 0; slot < topNodes.length; slot++) {
+			topStart[slot + 1] = topStart[slot] + filled[slot];
+		}
+		int[] topKeys = new int[topStart[topNodes.length]];
+		Arrays.fill(filled, 0);
+		for (int key : ordered) {
+			for (int node : path(keys[key], depth)) {
+				int slot = Arrays.binarySearch(topNodes, node);
+				if (filled[slot] < topStart[slot + 1] - topStart[slot]) {
+					topKeys[topStart[slot] + filled[slot]++] = key;
+				}
+			}
+		}
+		this.topKeys = topKeys;
+		this.topNodes = topNodes;
+		this.topStart = topStart;
+		this.topCount = count;
+		this.ranks = ranks;
+	}
+
+	/**
+	 * @return whether the values are ranked
+	 */
+	public boolean isRanked() {
+		return ranks != null;
+	}
+
+	private void dropRanking() {
+		ranks = null;
+		topNodes = null;
+		topStart = null;
+		topKeys = null;
+	}
+
+	/**
+	 * @return the nodes of at most depth characters, the root included, sorted
+	 */
+	private int[] nodesAbove(int depth) {
+		IntStack nodes = new IntStack();
+		IntStack stack = new IntStack();
+		// node and depth pairs
+		stack.push(ROOT);
+		stack.push(0);
+		while (!stack.isEmpty()) {
+			int level = stack.pop();
+			int node = stack.pop();
+			nodes.push(node);
+			if (level < depth) {
+				for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+					stack.push(child);
+					stack.push(level + 1);
+				}
+			}
+		}
+		int[] sorted = nodes.toArray();
+		Arrays.sort(sorted);
+		return sorted;
+	}
+
+	/**
+	 * @return the position of the stored completions of the node in topNodes, negative if it has none
+	 */
+	private int topSlot(int node) {
+		return Arrays.binarySearch(topNodes, node);
+	}
+
+	/**
+	 * @return the nodes of the first depth characters of the value, the root included
+	 */
+	private int[] path(String value, int depth) {
+		int length = Math.min(depth, value.length());
+		int[] path = new int[length + 1];
+		for (int i = 0; i < length; i++) {
+			path[i + 1] = findChild(path[i], Character.toLowerCase(value.charAt(i)));
+		}
+		return path;
+	}
+
+	/**
+	 * Returns the keys of the first limit values below node in rank order, the stored completions of the node
+	 * if they hold them. The values must be ranked.
+	 */
+	private int[] rankedValues(int node, int limit) {
+		int slot = topSlot(node);
+		int start = slot < 0 ? 0 : topStart[slot];
+		int count = slot < 0 ? 0 : topStart[slot + 1] - start;
+		// fewer completions than stored at most are all the values below the node
+		if (count > 0 && (limit <= count || count < topCount)) {
+			return Arrays.copyOfRange(topKeys, start, start + Math.min(limit, count));
+		}
+		return bestBelow(node, limit, ALL);
+	}
+
+	/**
+	 * Walks the values below node and keeps the best limit of the ones passing the filter in a heap, the worst
+	 * of them on top, so that only limit keys are held whatever the size of the subtree. The values must be ranked.
+	 *
+	 * @return the keys kept, in rank order
+	 */
+	private int[] bestBelow(int node, int limit, IntPredicate filter) {
+		int[] heap = new int[Math.min(limit, 16)];
+		int size = 0;
+		int visited = 0;
+		SearchBudget budget = SearchBudget.current();
+		IntStack stack = buffers.get().stack;
+		stack.clear();
+		stack.push(node);
+		while (!stack.isEmpty() && budget.step()) {
+			int current = stack.pop();
+			visited++;
+			int key = values[current];
+			if (key != NONE && filter.test(key)) {
+				if (size < limit) {
+					if (size == heap.length) {
+						heap = Arrays.copyOf(heap, (int) Math.min(limit, 2L * size));
+					}
+					siftUp(heap, size++, key);
+				} else if (ranks[key] < ranks[heap[0]]) {
+					siftDown(heap, size, key);
+				}
+			}
+			if (current != node && nextSibling[current] != NONE) {
+				stack.push(nextSibling[current]);
+			}
+			if (firstChild[current] != NONE) {
+				stack.push(firstChild[current]);
+			}
+		}
+		SearchCounter.add(visited);
+		// takes the worst key off the top to the end of the array, until the array is in rank order
+		for (int end = size - 1; end > 0; end--) {
+			int worst = heap[0];
+			siftDown(heap, end, heap[end]);
+			heap[end] = worst;
+		}
+		return Arrays.copyOf(heap, size);
+	}
+
+	/**
+	 * Adds the key at position index of the heap and moves it up above the keys ranked after it.
+	 */
+	private void siftUp(int[] heap, int index, int key) {
+		while (index > 0) {
+			int parent = (index - 1) >> 1;
+			if (ranks[heap[parent]] > ranks[key]) {
+				break;
+			}
+			heap[index] = heap[parent];
+			index = parent;
+		}
+		heap[index] = key;
+	}
+
+	/**
+	 * Replaces the top of the heap of size keys by the key and moves it down below the keys ranked after it.
+	 */
+	private void siftDown(int[] heap, int size, int key) {
+		int index = 0;
+		for (int child = 1; child < size; child = 2 * index + 1) {
+			if (child + 1 < size && ranks[heap[child + 1]] > ranks[heap[child]]) {
+				child++;
+			}
+			if (ranks[heap[child]] < ranks[key]) {
+				break;
+			}
+			heap[index] = heap[child];
+			index = child;
+		}
+		heap[index] = key;
+	}
+
+	/**
+	 * Walks the whole subtree whatever the {@link SearchBudget} of the thread: the ranking runs while the index
+	 * is built, a walk truncated by the budget left by a search would leave values out of the ranking.
+	 *
+	 * @return the keys of all the values below node, in pre-order
+	 */
+	private int[] valuesBelow(int node) {
+		int[] below = new int[16];
+		int count = 0;
+		IntStack stack = buffers.get().stack;
+		stack.clear();
+		stack.push(node);
+		while (!stack.isEmpty()) {
+			int current = stack.pop();
+			if (values[current] != NONE) {
+				if (count == below.length) {
+					below = Arrays.copyOf(below, count << 1);
+				}
+				below[count++] = values[current];
+			}
+			if (current != node && nextSibling[current] != NONE) {
+				stack.push(nextSibling[current]);
+			}
+			if (firstChild[current] != NONE) {
+				stack.push(firstChild[current]);
+			}
+		}
+		return Arrays.copyOf(below, count);
+	}
+
+	@Override
+	public void clear() {
+		labels = new char[INITIAL_CAPACITY];
+		firstChild = new int[INITIAL_CAPACITY];
+		nextSibling = new int[INITIAL_CAPACITY];
+		values = new int[INITIAL_CAPACITY];
+		keys = new String[INITIAL_CAPACITY];
+		keyCount = 0;
+		nodeCount = 0;
+		newNode('\0');
+		dropRanking();
+	}
+
+	/**
+	 * @return the number of nodes, root included
+	 */
+	@Override
+	public int nodeCount() {
+		return nodeCount;
+	}
+
+	/**
+	 * The node arrays, the array of references to the values and the ranking, as allocated.
+	 */
+	@Override
+	public long memoryEstimate() {
+		long bytes = 2L * labels.length + 4L * (firstChild.length + nextSibling.length + values.length + keys.length);
+		if (ranks != null) {
+			bytes += 4L * (ranks.length + topNodes.length + topStart.length + topKeys.length);
+		}
+		return bytes;
+	}
+
+	/**
+	 * @return the number of values stored
+	 */
+	@Override
+	public int size() {
+		return keyCount;
+	}
+
+	/**
+	 * @return an independent trie holding the same values, not ranked, which can be modified without affecting this one
+	 */
+	public CompactTrie copy() {
+		return new CompactTrie(Arrays.copyOf(labels, nodeCount), Arrays.copyOf(firstChild, nodeCount),
+				Arrays.copyOf(nextSibling, nodeCount), Arrays.copyOf(values, nodeCount), Arrays.copyOf(keys, keyCount));
+	}
+
+	/*
+	 * Internal arrays, valid up to nodeCount() nodes and size() keys, written by IndexSnapshot
+	 */
+
+	char[] labels() {
+		return labels;
+	}
+
+	int[] firstChildren() {
+		return firstChild;
+	}
+
+	int[] nextSiblings() {
+		return nextSibling;
+	}
+
+	int[] values() {
+		return values;
+	}
+
+	String[] keys() {
+		return keys;
+	}
+
+	@Override
+	public Set<String> prefixSearch(String prefix) {
+		return prefixSearch(prefix, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Returns the first limit values starting with the given prefix, in pre-order of the trie or in rank order.
+	 */
+	@Override
+	public Set<String> prefixSearch(String prefix, int limit) {
+		checkLimit(limit);
+		if (Objects.isNull(prefix)) {
+			return new LinkedHashSet<>();
+		}
+		return prefixSearch(walk(ROOT, prefix, 0), limit);
+	}
+
+	/**
+	 * Walks down from node along the characters of key from position from on. With the node reached by
+	 * the first characters of a key, the node of the whole key only costs its remaining characters.
+	 *
+	 * @return the node reached, or {@link #NONE} if no value starts with the key
+	 * @throws IllegalArgumentException if there is no such node
+	 */
+	public int walk(int node, String key, int from) {
+		if (node < 0 || node >= nodeCount) {
+			throw new IllegalArgumentException("Invalid node " + node);
+		}
+		int i = from;
+		for (; i < key.length() && node != NONE; i++) {
+			node = findChild(node, Character.toLowerCase(key.charAt(i)));
+		}
+		SearchCounter.add(i - from);
+		return node;
+	}
+
+	/**
+	 * Returns the first limit values below a node returned by {@link #walk(int, String, int)},
+	 * the same ones prefixSearch returns for the key walked.
+	 */
+	public Set<String> prefixSearch(int node, int limit) {
+		checkLimit(limit);
+		Set<String> suggestions = new LinkedHashSet<>();
+		if (node != NONE && ranks != null) {
+			for (int key : rankedValues(node, limit)) {
+				suggestions.add(keys[key]);
+			}
+		} else if (node != NONE) {
+			SearchCounter.add(collect(node, null, 0, suggestions, limit, SearchBudget.current()));
+		}
+		return suggestions;
+	}
+
+	@Override
+	public int prefixSearch(String prefix, int limit, Consumer<String> consumer) {
+		checkLimit(limit);
+		if (Objects.isNull(prefix)) {
+			return 0;
+		}
+		int node = walk(ROOT, prefix, 0);
+		if (node == NONE) {
+			return 0;
+		}
+		if (ranks != null) {
+			int[] ranked = rankedValues(node, limit);
+			for (int key : ranked) {
+				consumer.accept(keys[key]);
+			}
+			return ranked.length;
+		}
+		int count = 0;
+		int visited = 0;
+		SearchBudget budget = SearchBudget.current();
+		IntStack stack = buffers.get().stack;
+		stack.clear();
+		stack.push(node);
+		while (!stack.isEmpty() && count < limit && budget.step()) {
+			int current = stack.pop();
+			visited++;
+			if (values[current] != NONE) {
+				consumer.accept(keys[values[current]]);
+				count++;
+			}
+			if (current != node && nextSibling[current] != NONE) {
+				stack.push(nextSibling[current]);
+			}
+			if (firstChild[current] != NONE) {
+				stack.push(firstChild[current]);
+			}
+		}
+		SearchCounter.add(visited);
+		return count;
+	}
+
+	@Override
+	public String value(int id) {
+		if (id < 0 || id >= keyCount) {
+			throw new IndexOutOfBoundsException("Invalid id " + id);
+		}
+		return keys[id];
+	}
+
+	@Override
+	public int prefixSearchIds(String prefix, int limit, IntPredicate filter, IntPredicate sink) {
+		checkLimit(limit);
+		if (Objects.isNull(prefix)) {
+			return 0;
+		}
+		return prefixSearchIds(walk(ROOT, prefix, 0), limit, filter, sink);
+	}
+
+	/**
+	 * Offers to the sink the ids, or keys, of the first limit values below a node returned by
+	 * {@link #walk(int, String, int)} which pass the filter, in the order {@link #prefixSearch(int, int)}
+	 * returns them. The values filtered out or declined by the sink do not count towards limit. With a
+	 * ranking, the stored completions are offered first, and the values below the node are only walked for the
+	 * best ones missing when they were not enough.
+	 *
+	 * @return the number of ids the sink took
+	 * @throws IllegalArgumentException if limit is not positive
+	 */
+	public int prefixSearchIds(int node, int limit, IntPredicate filter, IntPredicate sink) {
+		checkLimit(limit);
+		if (node == NONE) {
+			return 0;
+		}
+		int count = 0;
+		if (ranks != null) {
+			int slot = topSlot(node);
+			int start = slot < 0 ? 0 : topStart[slot];
+			int stored = slot < 0 ? 0 : topStart[slot + 1] - start;
+			int passed = 0;
+			for (int i = 0; i < stored && count < limit; i++) {
+				int key = topKeys[start + i];
+				if (filter.test(key)) {
+					passed++;
+					if (sink.test(key)) {
+						count++;
+					}
+				}
+			}
+			// the stored completions are the first ones of the ranking, or all of them when fewer than topCount
+			if (count < limit && (stored == 0 || stored >= topCount)) {
+				// the best values passing the filter start with the stored ones which passed it
+				int[] ranked = bestBelow(node, (int) Math.min(Integer.MAX_VALUE, (long) passed + limit - count), filter);
+				for (int i = passed; i < ranked.length && count < limit; i++) {
+					if (sink.test(ranked[i])) {
+						count++;
+					}
+				}
+			}
+			return count;
+		}
+		int visited = 0;
+		SearchBudget budget = SearchBudget.current();
+		IntStack stack = buffers.get().stack;
+		stack.clear();
+		stack.push(node);
+		while (!stack.isEmpty() && count < limit && budget.step()) {
+			int current = stack.pop();
+			visited++;
+			int key = values[current];
+			if (key != NONE && filter.test(key) && sink.test(key)) {
+				count++;
+			}
+			if (current != node && nextSibling[current] != NONE) {
+				stack.push(nextSibling[current]);
+			}
+			if (firstChild[current] != NONE) {
+				stack.push(firstChild[current]);
+			}
+		}
+		SearchCounter.add(visited);
+		return count;
+	}
+
+	@Override
+	public Set<String> search(String key) {
+		return search(key, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Same walk as {@link TrieImpl#search(String, int)}: for every character of the key the frontier moves to
+	 * the closest descendants carrying that character, then the values below the final frontier are filtered
+	 * on starting with the key (less its last two characters) or containing it, until limit of them are found.
+	 * The frontiers are kept in the buffers of the thread, and the values folded as they are matched.
+	 */
+	@Override
+	public Set<String> search(String key, int limit) {
+		checkLimit(limit);
+		Set<String> foundNodes = new LinkedHashSet<>();
+		if (Objects.isNull(key) || key.isEmpty()) {
+			return foundNodes;
+		}
+		int visited = 0;
+		SearchBudget budget = SearchBudget.current();
+		Buffers buffers = CompactTrie.buffers.get();
+		buffers.frontier.clear();
+		buffers.next.clear();
+		buffers.frontier.push(ROOT);
+		for (int i = 0; i < key.length() && !buffers.frontier.isEmpty(); i++) {
+			char letter = Character.toLowerCase(key.charAt(i));
+			for (int j = 0; j < buffers.frontier.size; j++) {
+				visited += findClosest(buffers.frontier.elements[j], letter, buffers.next, buffers.stack, budget);
+			}
+			buffers.swapFrontier();
+		}
+		String folded = CaseFolding.fold(key);
+		int prefixLength = key.length() > 2 ? key.length() - 2 : key.length();
+		IntStack frontier = buffers.frontier;
+		for (int j = 0; j < frontier.size && foundNodes.size() < limit; j++) {
+			visited += collect(frontier.elements[j], folded, prefixLength, foundNodes, limit, budget);
+		}
+		SearchCounter.add(visited);
+		return foundNodes;
+	}
+
+	/**
+	 * Same walk as {@link TrieImpl#fuzzySearch(String, int, int)}: depth first, carrying the row of Levenshtein
+	 * distances between the key prefixes and the path of the node, and leaving a branch once no distance is
+	 * within maxEdits.
+	 */
+	@Override
+	public Set<String> fuzzySearch(String key, int maxEdits, int limit) {
+		checkLimit(limit);
+		if (maxEdits < 0) {
+			throw new IllegalArgumentException("Invalid edit distance " + maxEdits);
+		}
+		Set<String> foundNodes = new LinkedHashSet<>();
+		if (Objects.isNull(key) || key.isEmpty()) {
+			return foundNodes;
+		}
+		Buffers buffers = CompactTrie.buffers.get();
+		int length = key.length();
+		if (buffers.letters.length < length) {
+			buffers.letters = new char[length];
+		}
+		char[] letters = buffers.letters;
+		int[] row = buffers.row(0, length + 1);
+		row[0] = 0;
+		for (int i = 0; i < length; i++) {
+			letters[i] = Character.toLowerCase(key.charAt(i));
+			row[i + 1] = i + 1;
+		}
+		SearchBudget budget = SearchBudget.current();
+		int visited = 0;
+		for (int edits = 0; edits <= maxEdits && foundNodes.size() < limit; edits++) {
+			visited += fuzzyCollect(ROOT, 0, letters, length, buffers, edits, foundNodes, limit, budget);
+		}
+		SearchCounter.add(visited);
+		return foundNodes;
+	}
+
+	/**
+	 * Step of the fuzzy search at node, whose path has depth characters. The rows of distances of every depth
+	 * are kept in the buffers, the one of node being the row of depth.
+	 *
+	 * @return the number of nodes visited
+	 */
+	private int fuzzyCollect(int node, int depth, char[] letters, int length, Buffers buffers, int maxEdits,
+			Set<String> foundNodes, int limit, SearchBudget budget) {
+		int[] row = buffers.rows[depth];
+		if (row[length] <= maxEdits) {
+			return collect(node, null, 0, foundNodes, limit, budget);
+		}
+		int visited = 1;
+		for (int child = firstChild[node]; child != NONE && foundNodes.size() < limit && budget.step();
+				child = nextSibling[child]) {
+			int[] next = buffers.row(depth + 1, length + 1);
+			// the row of depth is left in place when the rows grow
+			row = buffers.rows[depth];
+			next[0] = row[0] + 1;
+			int min = next[0];
+			for (int i = 1; i <= length; i++) {
+				int substitution = row[i - 1] + (letters[i - 1] == labels[child] ? 0 : 1);
+				next[i] = Math.min(substitution, Math.min(row[i], next[i - 1]) + 1);
+				min = Math.min(min, next[i]);
+			}
+			if (min <= maxEdits) {
+				visited += fuzzyCollect(child, depth + 1, letters, length, buffers, maxEdits, foundNodes, limit, budget);
+			}
+		}
+		return visited;
+	}
+
+	/**
+	 * Pushes on found the descendants of node labelled with letter which have no such ancestor below node.
+	 *
+	 * @return the number of nodes visited, the walk stops once the budget is exhausted
+	 */
+	private int findClosest(int node, char letter, IntStack found, IntStack stack, SearchBudget budget) {
+		int visited = 0;
+		stack.clear();
+		stack.push(node);
+		while (!stack.isEmpty() && budget.step()) {
+			for (int child = firstChild[stack.pop()]; child != NONE; child = nextSibling[child]) {
+				visited++;
+				if (labels[child] == letter) {
+					found.push(child);
+				} else {
+					stack.push(child);
+				}
+			}
+		}
+		return visited;
+	}
+
+	/**
+	 * Adds the values of the subtree rooted at node, in pre-order, until there are limit values. With a folded
+	 * key, only the values starting with its first prefixLength characters or containing it, ignoring case, are added.
+	 *
+	 * @param folded the folded key, null to add every value
+	 * @param budget stops the walk once exhausted
+	 * @return the number of nodes visited
+	 */
+	private int collect(int node, String folded, int prefixLength, Set<String> values, int limit,
+			SearchBudget budget) {
+		int visited = 0;
+		IntStack stack = buffers.get().stack;
+		stack.clear();
+		stack.push(node);
+		while (!stack.isEmpty() && values.size() < limit && budget.step()) {
+			int current = stack.pop();
+			visited++;
+			int key = this.values[current];
+			if (key != NONE && (folded == null || CaseFolding.startsWith(keys[key], folded, prefixLength)
+					|| CaseFolding.contains(keys[key], folded))) {
+				values.add(keys[key]);
+			}
+			if (current != node && nextSibling[current] != NONE) {
+				stack.push(nextSibling[current]);
+			}
+			if (firstChild[current] != NONE) {
+				stack.push(firstChild[current]);
+			}
+		}
+		return visited;
+	}
+
+	private int findChild(int parent, char letter) {
+		for (int child = firstChild[parent]; child != NONE && labels[child] <= letter; child = nextSibling[child]) {
+			if (labels[child] == letter) {
+				return child;
+			}
+		}
+		return NONE;
+	}
+
+	/**
+	 * Returns the child of parent labelled with letter, linking a new node in label order if there is none.
+	 */
+	private int addChild(int parent, char letter) {
+		int previous = NONE;
+		int child = firstChild[parent];
+		while (child != NONE && labels[child] < letter) {
+			previous = child;
+			child = nextSibling[child];
+		}
+		if (child != NONE && labels[child] == letter) {
+			return child;
+		}
+		int node = newNode(letter);
+		nextSibling[node] = child;
+		if (previous == NONE) {
+			firstChild[parent] = node;
+		} else {
+			nextSibling[previous] = node;
+		}
+		return node;
+	}
+
+	private int newNode(char letter) {
+		if (nodeCount == labels.length) {
+			int capacity = grow(labels.length);
+			labels = Arrays.copyOf(labels, capacity);
+			firstChild = Arrays.copyOf(firstChild, capacity);
+			nextSibling = Arrays.copyOf(nextSibling, capacity);
+			values = Arrays.copyOf(values, capacity);
+		}
+		labels[nodeCount] = letter;
+		firstChild[nodeCount] = NONE;
+		nextSibling[nodeCount] = NONE;
+		values[nodeCount] = NONE;
+		return nodeCount++;
+	}
+
+	private static void checkLimit(int limit) {
+		if (limit < 1) {
+			throw new IllegalArgumentException("Invalid limit " + limit);
+		}
+	}
+
+	private static int grow(int capacity) {
+		return capacity + Math.max(capacity >> 1, 16);
+	}
+
+	/**
+	 * Growable stack of node ids, used instead of a Deque of boxed Integers.
+	 */
+	private static final class IntStack {
+
+		private int[] elements = new int[16];
+		private int size;
+
+		void push(int element) {
+			if (size == elements.length) {
+				elements = Arrays.copyOf(elements, size << 1);
+			}
+			elements[size++] = element;
+		}
+
+		int pop() {
+			return elements[--size];
+		}
+
+		void clear() {
+			size = 0;
+		}
+
+		boolean isEmpty() {
+			return size == 0;
+		}
+
+		int[] toArray() {
+			return Arrays.copyOf(elements, size);
+		}
+	}
+
+}
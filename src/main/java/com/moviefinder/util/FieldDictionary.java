@@ -0,0 +1,199 @@
+package com.moviefinder.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Codes of the values of the low cardinality movie data fields: region, language, types, attributes and
+ * isOriginalTitle. These fields hold a few hundreds of distinct values over millions of rows, so every
+ * distinct value is kept once as a canonical String and identified by a code below {@link #MAX_CODES},
+ * which fits in a short. The code 0 stands for null.
+ *
+ * The loaders intern the fields while parsing: a value already known is returned straight from its bytes,
+ * without allocating a String, so the rows all share the same few hundred instances. The record store
+ * keeps the codes only and decodes them when a movie is returned.
+ *
+ * Lookups do not lock, new values are added under the lock of the dictionary.
+ */
+public final class FieldDictionary {
+
+	/**
+	 * Number of distinct codes, null included
+	 */
+	public static final int MAX_CODES = 1 << 16;
+
+	private static final int NULL_CODE = 0;
+	private static final int INITIAL_CAPACITY = 256;
+
+	private static final FieldDictionary instance = new FieldDictionary();
+
+	private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+	private volatile String[] values = new String[INITIAL_CAPACITY];
+	private volatile int size = 1;
+
+	/**
+	 * Open addressing table of the values by the hash of their UTF-8 bytes, a power of two at most half full.
+	 * An entry is never modified once in the table, so a lookup seeing it sees all of its fields.
+	 */
+	private volatile Entry[] entries = new Entry[INITIAL_CAPACITY * 2];
+
+	// Only once instance is kept per classloader
+	public static FieldDictionary getInstance() {
+		return instance;
+	}
+
+	//package private constructor, for the tests
+	FieldDictionary() {
+
+	}
+
+	/**
+	 * @return the number of codes in use, null included
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the code of the value, adding it if it is new.
+	 *
+	 * @throws IllegalStateException if there are already {@link #MAX_CODES} codes
+	 */
+	public int encode(String value) {
+		if (value == null) {
+			return NULL_CODE;
+		}
+		Integer code = codes.get(value);
+		return code != null ? code : add(value).code;
+	}
+
+	/**
+	 * @throws IllegalArgumentException if no value has this code
+	 */
+	public String decode(int code) {
+		if (code < 0 || code >= size) {
+			throw new IllegalArgumentException("Invalid code " + code);
+		}
+		return values[code];
+	}
+
+	/**
+	 * @return the canonical instance equal to the value
+	 */
+	public String intern(String value) {
+		return value == null ? null : values[encode(value)];
+	}
+
+	/**
+	 * Returns the canonical instance of the UTF-8 value held by buffer from position from to position to,
+	 * only creating a String the first time the value is met.
+	 */
+	public String intern(ByteBuffer buffer, int from, int to) {
+		int hash = hash(buffer, from, to);
+		Entry[] entries = this.entries;
+		for (int slot = hash & (entries.length - 1); entries[slot] != null; slot = (slot + 1) & (entries.length - 1)) {
+			Entry entry = entries[slot];
+			if (entry.hash == hash && entry.matches(buffer, from, to)) {
+				return entry.value;
+			}
+		}
+		byte[] bytes = new byte[to - from];
+		for (int i = from; i < to; i++) {
+			bytes[i - from] = buffer.get(i);
+		}
+		return add(new String(bytes, StandardCharsets.UTF_8)).value;
+	}
+
+	private synchronized Entry add(String value) {
+		Integer code = codes.get(value);
+		if (code != null) {
+			return find(value);
+		}
+		if (size == MAX_CODES) {
+			throw new IllegalStateException("Too many distinct field values, " + MAX_CODES);
+		}
+		String[] values = this.values;
+		if (size == values.length) {
+			values = Arrays.copyOf(values, size << 1);
+		}
+		values[size] = value;
+		this.values = values;
+
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		Entry entry = new Entry(bytes, hash(ByteBuffer.wrap(bytes), 0, bytes.length), value, size);
+		Entry[] entries = this.entries;
+		if ((size + 1) * 2 > entries.length) {
+			entries = new Entry[entries.length << 1];
+			for (Entry existing : this.entries) {
+				if (existing != null) {
+					put(entries, existing);
+				}
+			}
+		}
+		put(entries, entry);
+		this.entries = entries;
+
+		codes.put(value, size);
+		size++;
+		return entry;
+	}
+
+	private Entry find(String value) {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		int hash = hash(buffer, 0, bytes.length);
+		for (int slot = hash & (entries.length - 1);; slot = (slot + 1) & (entries.length - 1)) {
+			if (entries[slot].hash == hash && entries[slot].matches(buffer, 0, bytes.length)) {
+				return entries[slot];
+			}
+		}
+	}
+
+	private static void put(Entry[] entries, Entry entry) {
+		int slot = entry.hash & (entries.length - 1);
+		while (entries[slot] != null) {
+			slot = (slot + 1) & (entries.length - 1);
+		}
+		entries[slot] = entry;
+	}
+
+	private static int hash(ByteBuffer buffer, int from, int to) {
+		int hash = 1;
+		for (int i = from; i < to; i++) {
+			hash = 31 * hash + buffer.get(i);
+		}
+		return hash ^ (hash >>> 16);
+	}
+
+	private static final class Entry {
+
+		private final byte[] bytes;
+		private final int hash;
+		private final String value;
+		private final int code;
+
+		Entry(byte[] bytes, int hash, String value, int code) {
+			this.bytes = bytes;
+			this.hash = hash;
+			this.value = value;
+			this.code = code;
+		}
+
+		boolean matches(ByteBuffer buffer, int from, int to) {
+			if (to - from != bytes.length) {
+				return false;
+			}
+			for (int i = 0; i < bytes.length; i++) {
+				if (buffer.get(from + i) != bytes[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+	}
+
+}
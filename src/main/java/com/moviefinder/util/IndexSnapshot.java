@@ -0,0 +1,373 @@
+package com.moviefinder.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import com.moviefinder.model.MovieData;
+
+/**
+ * Binary image of a built index, a {@link CompactTrie}, a {@link TrigramIndex} and the {@link MovieRecordStore},
+ * so that a restart maps it back instead of parsing and indexing the data file again.
+ *
+ * The layout, big endian, is:
+ *	header   - magic, format version, size and modification time of the source data file, body length and
+ *	           CRC32 of the body
+ *	strings  - count, then the length and UTF-8 bytes of every distinct title
+ *	trie     - node count, labels, first children, next siblings, values, key count and string ids of the keys
+ *	trigrams - title count and string ids of the titles, gram count, grams of one to three characters, offsets, ids
+ *	records  - row count, then titleId, ordering, string id of the title, region, language, types, attributes
+ *	           and isOriginalTitle of every row
+ *
+ * A snapshot is read by memory mapping the file: the arrays of the trie and of the trigram index are
+ * copied in bulk from the mapping, no node object is rebuilt, while the strings and the rows are decoded.
+ * A snapshot with a wrong magic, version, length or checksum is rejected, as is a snapshot of a source
+ * file which has changed since it was written.
+ */
+public final class IndexSnapshot {
+
+	public static final int MAGIC = 0x4d464958;
+	public static final int VERSION = 4;
+
+	private static final int HEADER = 40;
+	private static final int WINDOW = 1 << 28;
+
+	private final CompactTrie trie;
+	private final TrigramIndex substringIndex;
+	private final MovieRecordStore records;
+
+	public IndexSnapshot(CompactTrie trie, TrigramIndex substringIndex, MovieRecordStore records) {
+		this.trie = trie;
+		this.substringIndex = substringIndex;
+		this.records = records;
+	}
+
+	public CompactTrie getTrie() {
+		return trie;
+	}
+
+	public TrigramIndex getSubstringIndex() {
+		return substringIndex;
+	}
+
+	public MovieRecordStore getRecords() {
+		return records;
+	}
+
+	/**
+	 * Writes the snapshot to a temporary file next to file, then moves it in place so that
+	 * readers never see a partial snapshot.
+	 *
+	 * @param source data file the index was built from, null if it was not built from a file
+	 */
+	public void write(Path file, Path source) throws IOException {
+		long[] stamp = stamp(source);
+		Map<String, Integer> ids = new HashMap<>();
+		List<String> strings = new ArrayList<>();
+		int[] keys = stringIds(trie.keys(), trie.size(), ids, strings);
+		int[] titles = stringIds(substringIndex.titles(), substringIndex.size(), ids, strings);
+		List<MovieData> rows = new ArrayList<>(records.size());
+		for (int row = 0; row < records.size(); row++) {
+			rows.add(records.get(row));
+		}
+		int[] recordTitles = new int[rows.size()];
+		for (int i = 0; i < recordTitles.length; i++) {
+			recordTitles[i] = stringId(rows.get(i).getTitle(), ids, strings);
+		}
+
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		CRC32 crc = new CRC32();
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			channel.position(HEADER);
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new CheckedOutputStream(Channels.newOutputStream(channel), crc), 1 << 16));
+			out.writeInt(strings.size());
+			for (String string : strings) {
+				writeString(out, string);
+			}
+
+			int nodeCount = trie.nodeCount();
+			out.writeInt(nodeCount);
+			for (int i = 0; i < nodeCount; i++) {
+				out.writeChar(trie.labels()[i]);
+			}
+			writeInts(out, trie.firstChildren(), nodeCount);
+			writeInts(out, trie.nextSiblings(), nodeCount);
+			writeInts(out, trie.values(), nodeCount);
+			out.writeInt(keys.length);
+			writeInts(out, keys, keys.length);
+
+			out.writeInt(titles.length);
+			writeInts(out, titles, titles.length);
+			long[] grams = substringIndex.grams();
+			out.writeInt(grams.length);
+			for (long gram : grams) {
+				out.writeLong(gram);
+			}
+			int[] offsets = substringIndex.offsets();
+			writeInts(out, offsets, offsets.length);
+			writeInts(out, substringIndex.ids(), offsets[grams.length]);
+
+			out.writeInt(rows.size());
+			for (int i = 0; i < recordTitles.length; i++) {
+				MovieData movieData = rows.get(i);
+				writeString(out, movieData.getTitleId());
+				out.writeInt(movieData.getOrdering());
+				out.writeInt(recordTitles[i]);
+				writeString(out, movieData.getRegion());
+				writeString(out, movieData.getLanguage());
+				writeString(out, movieData.getTypes());
+				writeString(out, movieData.getAttributes());
+				writeString(out, movieData.getIsOriginalTitle());
+			}
+			out.flush();
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER);
+			header.putInt(MAGIC).putInt(VERSION).putLong(stamp[0]).putLong(stamp[1]).putLong(channel.position() - HEADER)
+					.putLong(crc.getValue());
+			header.flip();
+			channel.write(header, 0);
+			channel.force(true);
+		}
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Maps and checks the snapshot, then restores the structures it holds.
+	 *
+	 * @param source data file the index must have been built from, null if it must not have been built from a file
+	 * @throws IOException if the file can not be read, is not a valid snapshot of the current version or is not
+	 *         a snapshot of the current content of source
+	 */
+	public static IndexSnapshot read(Path file, Path source) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < HEADER) {
+				throw new IOException("Truncated index snapshot " + file);
+			}
+			ByteBuffer header = channel.map(MapMode.READ_ONLY, 0, HEADER);
+			if (header.getInt() != MAGIC) {
+				throw new IOException("Not an index snapshot " + file);
+			}
+			int version = header.getInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported index snapshot version " + version + " in " + file);
+			}
+			long[] stamp = stamp(source);
+			if (header.getLong() != stamp[0] || header.getLong() != stamp[1]) {
+				throw new IOException("Stale index snapshot " + file + ", " + source + " has changed");
+			}
+			long length = header.getLong();
+			long checksum = header.getLong();
+			if (length != size - HEADER) {
+				throw new IOException("Truncated index snapshot " + file);
+			}
+			CRC32 crc = new CRC32();
+			for (long position = HEADER; position < size; position += WINDOW) {
+				crc.update(channel.map(MapMode.READ_ONLY, position, Math.min(WINDOW, size - position)));
+			}
+			if (crc.getValue() != checksum) {
+				throw new IOException("Corrupted index snapshot " + file);
+			}
+
+			MappedInput in = new MappedInput(channel, HEADER, size);
+			String[] strings = new String[in.readInt()];
+			for (int i = 0; i < strings.length; i++) {
+				strings[i] = in.readString();
+			}
+
+			int nodeCount = in.readInt();
+			char[] labels = in.readChars(nodeCount);
+			int[] firstChild = in.readInts(nodeCount);
+			int[] nextSibling = in.readInts(nodeCount);
+			int[] values = in.readInts(nodeCount);
+			String[] keys = strings(in.readInts(in.readInt()), strings);
+			CompactTrie trie = new CompactTrie(labels, firstChild, nextSibling, values, keys);
+
+			String[] titles = strings(in.readInts(in.readInt()), strings);
+			int gramCount = in.readInt();
+			long[] grams = in.readLongs(gramCount);
+			int[] offsets = in.readInts(gramCount + 1);
+			int[] ids = in.readInts(offsets[gramCount]);
+			TrigramIndex substringIndex = new TrigramIndex(titles, grams, offsets, ids);
+
+			int recordCount = in.readInt();
+			MovieRecordStore records = new MovieRecordStore();
+			FieldDictionary dictionary = FieldDictionary.getInstance();
+			for (int i = 0; i < recordCount; i++) {
+				records.add(MovieData.builder().titleId(in.readString()).ordering(in.readInt())
+						.title(strings[in.readInt()]).region(in.readField(dictionary)).language(in.readField(dictionary))
+						.types(in.readField(dictionary)).attributes(in.readField(dictionary))
+						.isOriginalTitle(in.readField(dictionary)).build());
+			}
+			return new IndexSnapshot(trie, substringIndex, records);
+		}
+	}
+
+	/**
+	 * @return the size and modification time in milliseconds of source, -1 for both without a source
+	 */
+	private static long[] stamp(Path source) throws IOException {
+		if (source == null) {
+			return new long[] { -1, -1 };
+		}
+		return new long[] { Files.size(source), Files.getLastModifiedTime(source).toMillis() };
+	}
+
+	private static int[] stringIds(String[] values, int count, Map<String, Integer> ids, List<String> strings) {
+		int[] stringIds = new int[count];
+		for (int i = 0; i < count; i++) {
+			stringIds[i] = stringId(values[i], ids, strings);
+		}
+		return stringIds;
+	}
+
+	private static int stringId(String value, Map<String, Integer> ids, List<String> strings) {
+		return ids.computeIfAbsent(value, string -> {
+			strings.add(string);
+			return strings.size() - 1;
+		});
+	}
+
+	private static String[] strings(int[] stringIds, String[] strings) {
+		String[] values = new String[stringIds.length];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = strings[stringIds[i]];
+		}
+		return values;
+	}
+
+	private static void writeInts(DataOutputStream out, int[] values, int count) throws IOException {
+		for (int i = 0; i < count; i++) {
+			out.writeInt(values[i]);
+		}
+	}
+
+	/**
+	 * Length then UTF-8 bytes, a length of -1 for null.
+	 */
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Sequential reads over a file mapped one window at a time, so that snapshots larger than
+	 * a single mapping can be read.
+	 */
+	private static final class MappedInput {
+
+		private final FileChannel channel;
+		private final long end;
+		private long windowStart;
+		private ByteBuffer window;
+
+		MappedInput(FileChannel channel, long start, long end) {
+			this.channel = channel;
+			this.windowStart = start;
+			this.end = end;
+		}
+
+		/**
+		 * Returns the current window, mapping the next one if it holds less than bytes.
+		 */
+		private ByteBuffer require(int bytes) throws IOException {
+			if (window == null || window.remaining() < bytes) {
+				long position = window == null ? windowStart : windowStart + window.position();
+				if (end - position < bytes) {
+					throw new EOFException("Truncated index snapshot");
+				}
+				windowStart = position;
+				window = channel.map(MapMode.READ_ONLY, position, Math.min(WINDOW, end - position));
+			}
+			return window;
+		}
+
+		int readInt() throws IOException {
+			return require(Integer.BYTES).getInt();
+		}
+
+		String readString() throws IOException {
+			int length = readInt();
+			if (length < 0) {
+				return null;
+			}
+			byte[] bytes = new byte[length];
+			require(length).get(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * Reads a string like readString, interned in the dictionary straight from the mapped bytes.
+		 */
+		String readField(FieldDictionary dictionary) throws IOException {
+			int length = readInt();
+			if (length < 0) {
+				return null;
+			}
+			ByteBuffer buffer = require(length);
+			int from = buffer.position();
+			buffer.position(from + length);
+			return dictionary.intern(buffer, from, from + length);
+		}
+
+		char[] readChars(int count) throws IOException {
+			char[] values = new char[count];
+			for (int done = 0; done < count;) {
+				ByteBuffer buffer = require(Character.BYTES);
+				int read = Math.min(count - done, buffer.remaining() / Character.BYTES);
+				buffer.asCharBuffer().get(values, done, read);
+				buffer.position(buffer.position() + read * Character.BYTES);
+				done += read;
+			}
+			return values;
+		}
+
+		int[] readInts(int count) throws IOException {
+			int[] values = new int[count];
+			for (int done = 0; done < count;) {
+				ByteBuffer buffer = require(Integer.BYTES);
+				int read = Math.min(count - done, buffer.remaining() / Integer.BYTES);
+				buffer.asIntBuffer().get(values, done, read);
+				buffer.position(buffer.position() + read * Integer.BYTES);
+				done += read;
+			}
+			return values;
+		}
+
+		long[] readLongs(int count) throws IOException {
+			long[] values = new long[count];
+			for (int done = 0; done < count;) {
+				ByteBuffer buffer = require(Long.BYTES);
+				int read = Math.min(count - done, buffer.remaining() / Long.BYTES);
+				buffer.asLongBuffer().get(values, done, read);
+				buffer.position(buffer.position() + read * Long.BYTES);
+				done += read;
+			}
+			return values;
+		}
+	}
+
+}
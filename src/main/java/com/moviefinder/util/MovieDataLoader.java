@@ -0,0 +1,261 @@
+package com.moviefinder.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+import com.moviefinder.model.MovieData;
+
+/**
+ * Reads the rows of a tab separated movie data file, the first line being the header:
+ * titleId, ordering, title, region, language, types, attributes, isOriginalTitle
+ *
+ * Rows are handed to a consumer in file order, always on the calling thread, so the consumer
+ * can feed structures which are not thread safe.
+ */
+public final class MovieDataLoader {
+
+	/**
+	 * Default size of the chunks a mapped file is split into
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 16 * 1024 * 1024;
+
+	private static final int FIELDS = 8;
+	private static final byte TAB = '\t';
+	private static final byte NEW_LINE = '\n';
+	private static final byte CARRIAGE_RETURN = '\r';
+
+	private MovieDataLoader() {
+	}
+
+	/**
+	 * Reads the rows one line at a time, splitting each line on tabs. The low cardinality fields
+	 * are replaced by their instance in the {@link FieldDictionary}.
+	 *
+	 * @return the number of rows read
+	 */
+	public static int read(BufferedReader reader, Consumer<MovieData> consumer) throws IOException {
+		FieldDictionary dictionary = FieldDictionary.getInstance();
+		String line;
+		int rows = 0;
+		/**
+		 * Looping the read block until all lines in the file are read.
+		 */
+		int i = 0;
+		while ((line = reader.readLine()) != null) {
+			/**
+			 * Splitting the content of tabbed separated line
+			 */
+			if (i > 0) {
+				String datavalue[] = line.split("\t");
+				String titleId = datavalue[0];
+				int ordering = Integer.valueOf(datavalue[1]);
+				String title = datavalue[2];
+				String region = dictionary.intern(datavalue[3]);
+				String language = dictionary.intern(datavalue[4]);
+				String types = dictionary.intern(datavalue[5]);
+				String attributes = dictionary.intern(datavalue[6]);
+				String isOriginalTitle = dictionary.intern(datavalue[7]);
+				consumer.accept(MovieData.builder().titleId(titleId).ordering(ordering).title(title).region(region)
+						.language(language).types(types).attributes(attributes).isOriginalTitle(isOriginalTitle).build());
+				rows++;
+			} else {
+				i++;
+			}
+		}
+		return rows;
+	}
+
+	/**
+	 * Reads a tab separated ratings file, the first line being the header: titleId, averageRating, numVotes,
+	 * the format of the IMDb title.ratings.tsv file. Lines without the three fields are skipped.
+	 *
+	 * @return the number of votes by titleId
+	 */
+	public static Map<String, Integer> readVotes(BufferedReader reader) throws IOException {
+		Map<String, Integer> votes = new HashMap<>();
+		String line = reader.readLine();
+		while ((line = reader.readLine()) != null) {
+			String[] fields = line.split("\t");
+			if (fields.length >= 3) {
+				votes.put(fields[0], Integer.valueOf(fields[2]));
+			}
+		}
+		return votes;
+	}
+
+	/**
+	 * Memory maps the file and splits it into line aligned chunks of about chunkSize bytes. The chunks
+	 * are parsed in parallel on the pool, straight from the mapped bytes, while the rows of the chunks
+	 * already parsed are handed to the consumer. Only a few chunks ahead of the consumer are parsed at
+	 * any time, so memory stays bounded whatever the size of the file. Lines with missing fields or an
+	 * ordering which is not a number are skipped.
+	 *
+	 * @return the number of rows read
+	 */
+	public static int read(Path file, ForkJoinPool pool, int chunkSize, Consumer<MovieData> consumer)
+			throws IOException {
+		return read(file, pool, chunkSize, consumer, skipped -> {
+		});
+	}
+
+	/**
+	 * Same as {@link #read(Path, ForkJoinPool, int, Consumer)}, the number of lines skipped in each chunk is
+	 * handed to skipped, on the calling thread.
+	 *
+	 * @return the number of rows read
+	 */
+	public static int read(Path file, ForkJoinPool pool, int chunkSize, Consumer<MovieData> consumer,
+			IntConsumer skipped) throws IOException {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("Invalid chunk size " + chunkSize);
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			// the header line is not data
+			long start = nextLine(channel, 0, size);
+			int rows = 0;
+			int window = 2 * pool.getParallelism();
+			Deque<ForkJoinTask<Chunk>> chunks = new ArrayDeque<>();
+			while (start < size || !chunks.isEmpty()) {
+				while (start < size && chunks.size() < window) {
+					long chunkStart = start;
+					long chunkEnd = nextLine(channel, Math.min(size, start + chunkSize), size);
+					chunks.add(pool.submit(() -> parse(channel.map(MapMode.READ_ONLY, chunkStart, chunkEnd - chunkStart))));
+					start = chunkEnd;
+				}
+				Chunk chunk = chunks.poll().join();
+				for (MovieData movieData : chunk.rows) {
+					consumer.accept(movieData);
+					rows++;
+				}
+				if (chunk.skipped > 0) {
+					skipped.accept(chunk.skipped);
+				}
+			}
+			return rows;
+		}
+	}
+
+	/**
+	 * Returns the position following the first new line found from position, or size if there is none.
+	 */
+	private static long nextLine(FileChannel channel, long position, long size) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(8192);
+		while (position < size) {
+			buffer.clear();
+			int read = channel.read(buffer, position);
+			if (read < 0) {
+				break;
+			}
+			for (int i = 0; i < read; i++) {
+				if (buffer.get(i) == NEW_LINE) {
+					return position + i + 1;
+				}
+			}
+			position += read;
+		}
+		return size;
+	}
+
+	/**
+	 * Parses the complete lines of a chunk, reading the fields from the bytes without building a line String.
+	 * The low cardinality fields are interned from their bytes in the {@link FieldDictionary}.
+	 */
+	private static Chunk parse(MappedByteBuffer chunk) {
+		FieldDictionary dictionary = FieldDictionary.getInstance();
+		Chunk parsed = new Chunk();
+		List<MovieData> rows = parsed.rows;
+		int[] tabs = new int[FIELDS - 1];
+		byte[] bytes = new byte[256];
+		int limit = chunk.limit();
+		int lineStart = 0;
+		while (lineStart < limit) {
+			int fields = 1;
+			int lineEnd = lineStart;
+			byte b;
+			while (lineEnd < limit && (b = chunk.get(lineEnd)) != NEW_LINE) {
+				if (b == TAB && fields < FIELDS) {
+					tabs[fields++ - 1] = lineEnd;
+				}
+				lineEnd++;
+			}
+			int next = lineEnd + 1;
+			if (lineEnd > lineStart && chunk.get(lineEnd - 1) == CARRIAGE_RETURN) {
+				lineEnd--;
+			}
+			int ordering = fields == FIELDS ? number(chunk, tabs[0] + 1, tabs[1]) : -1;
+			if (ordering < 0) {
+				// a blank line, as the last one of the file may be, is not a row
+				if (lineEnd > lineStart) {
+					parsed.skipped++;
+				}
+			} else {
+				if (bytes.length < lineEnd - lineStart) {
+					bytes = new byte[lineEnd - lineStart];
+				}
+				rows.add(MovieData.builder()
+						.titleId(string(chunk, lineStart, tabs[0], bytes))
+						.ordering(ordering)
+						.title(string(chunk, tabs[1] + 1, tabs[2], bytes))
+						.region(dictionary.intern(chunk, tabs[2] + 1, tabs[3]))
+						.language(dictionary.intern(chunk, tabs[3] + 1, tabs[4]))
+						.types(dictionary.intern(chunk, tabs[4] + 1, tabs[5]))
+						.attributes(dictionary.intern(chunk, tabs[5] + 1, tabs[6]))
+						.isOriginalTitle(dictionary.intern(chunk, tabs[6] + 1, lineEnd)).build());
+			}
+			lineStart = next;
+		}
+		return parsed;
+	}
+
+	private static String string(ByteBuffer chunk, int from, int to, byte[] bytes) {
+		for (int i = from; i < to; i++) {
+			bytes[i - from] = chunk.get(i);
+		}
+		return new String(bytes, 0, to - from, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return the decimal number between from and to, -1 if it is empty, not a number or overflows an int
+	 */
+	private static int number(ByteBuffer chunk, int from, int to) {
+		if (from == to || to - from > 9) {
+			return -1;
+		}
+		int value = 0;
+		for (int i = from; i < to; i++) {
+			int digit = chunk.get(i) - '0';
+			if (digit < 0 || digit > 9) {
+				return -1;
+			}
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+	/**
+	 * Rows parsed from a chunk and number of lines skipped
+	 */
+	private static final class Chunk {
+		final List<MovieData> rows = new ArrayList<>();
+		int skipped;
+	}
+
+}
@@ -0,0 +1,273 @@
+package com.moviefinder.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import com.moviefinder.model.MovieData;
+
+/**
+ * Every row of the movie data, all the alternate titles of a titleId included, stored column by column
+ * instead of one {@link MovieData} object per row:
+ *
+ *	titleIds   - the number of the titleId, tt0000156 being stored as 156
+ *	orderings  - the ordering of the row
+ *	titles     - the title of the row
+ *	regions, languages, types, attributes, originals - the {@link FieldDictionary} code of the value
+ *	previous   - the previous row of the same titleId, or -1
+ *
+ * The values of the dictionary encoded columns repeat a lot (a few hundreds of regions and languages),
+ * each distinct value is stored once and a row only costs a short per column. The rows of a titleId are
+ * chained from the last one added, which a small open addressing table finds by titleId.
+ *
+ * The row number is the id of the {@link MovieData} returned. Rows are never removed. A store is written
+ * by a single thread and only read once published with its index, so reads take no lock: an index searched
+ * while its rows are still added gets a {@link #copy()} of the rows added so far.
+ */
+public final class MovieRecordStore {
+
+	private static final int NONE = -1;
+	private static final int INITIAL_CAPACITY = 1024;
+	private static final String _titleIdPrefix = "tt";
+
+	private int[] titleIds = new int[INITIAL_CAPACITY];
+	private int[] orderings = new int[INITIAL_CAPACITY];
+	private String[] titles = new String[INITIAL_CAPACITY];
+	private short[] regions = new short[INITIAL_CAPACITY];
+	private short[] languages = new short[INITIAL_CAPACITY];
+	private short[] types = new short[INITIAL_CAPACITY];
+	private short[] attributes = new short[INITIAL_CAPACITY];
+	private short[] originals = new short[INITIAL_CAPACITY];
+	private int[] previous = new int[INITIAL_CAPACITY];
+	private int size;
+
+	/**
+	 * Characters of all the titles stored, for the memory estimate
+	 */
+	private long titleChars;
+
+	private final FieldDictionary dictionary = FieldDictionary.getInstance();
+
+	/**
+	 * Last row of every titleId: titleId numbers and rows interleaved, an empty slot holding -1 as row
+	 */
+	private int[] lastRows = emptyTable(INITIAL_CAPACITY);
+	private int titleIdCount;
+
+	/**
+	 * Appends a row, or replaces the row of the same titleId and ordering if there is one.
+	 *
+	 * @return the id of the row
+	 * @throws IllegalArgumentException if the titleId is not tt followed by digits
+	 */
+	public int add(MovieData movieData) {
+		int titleId = parseTitleId(movieData.getTitleId());
+		for (int row = lastRow(titleId); row != NONE; row = previous[row]) {
+			if (orderings[row] == movieData.getOrdering()) {
+				set(row, movieData);
+				return row;
+			}
+		}
+		if (size == titleIds.length) {
+			int capacity = size + Math.max(size >> 1, 16);
+			titleIds = Arrays.copyOf(titleIds, capacity);
+			orderings = Arrays.copyOf(orderings, capacity);
+			titles = Arrays.copyOf(titles, capacity);
+			regions = Arrays.copyOf(regions, capacity);
+			languages = Arrays.copyOf(languages, capacity);
+			types = Arrays.copyOf(types, capacity);
+			attributes = Arrays.copyOf(attributes, capacity);
+			originals = Arrays.copyOf(originals, capacity);
+			previous = Arrays.copyOf(previous, capacity);
+		}
+		int row = size++;
+		titleIds[row] = titleId;
+		set(row, movieData);
+		previous[row] = putLastRow(titleId, row);
+		return row;
+	}
+
+	private void set(int row, MovieData movieData) {
+		orderings[row] = movieData.getOrdering();
+		titleChars += length(movieData.getTitle()) - length(titles[row]);
+		titles[row] = movieData.getTitle();
+		regions[row] = (short) dictionary.encode(movieData.getRegion());
+		languages[row] = (short) dictionary.encode(movieData.getLanguage());
+		types[row] = (short) dictionary.encode(movieData.getTypes());
+		attributes[row] = (short) dictionary.encode(movieData.getAttributes());
+		originals[row] = (short) dictionary.encode(movieData.getIsOriginalTitle());
+	}
+
+	/**
+	 * @return an independent store holding the same rows under the same ids, which can be added to
+	 *         without affecting this one
+	 */
+	public MovieRecordStore copy() {
+		MovieRecordStore copy = new MovieRecordStore();
+		copy.titleIds = Arrays.copyOf(titleIds, titleIds.length);
+		copy.orderings = Arrays.copyOf(orderings, orderings.length);
+		copy.titles = Arrays.copyOf(titles, titles.length);
+		copy.regions = Arrays.copyOf(regions, regions.length);
+		copy.languages = Arrays.copyOf(languages, languages.length);
+		copy.types = Arrays.copyOf(types, types.length);
+		copy.attributes = Arrays.copyOf(attributes, attributes.length);
+		copy.originals = Arrays.copyOf(originals, originals.length);
+		copy.previous = Arrays.copyOf(previous, previous.length);
+		copy.size = size;
+		copy.titleChars = titleChars;
+		copy.lastRows = Arrays.copyOf(lastRows, lastRows.length);
+		copy.titleIdCount = titleIdCount;
+		return copy;
+	}
+
+	/**
+	 * @return the number of rows
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return an estimate of the bytes used by the columns, the titleId table and the titles,
+	 *         a String costing about 40 bytes plus two bytes per character
+	 */
+	public long memoryEstimate() {
+		return 26L * titleIds.length + 4L * lastRows.length + 40L * size + 2L * titleChars;
+	}
+
+	/**
+	 * Decodes a row.
+	 *
+	 * @throws IllegalArgumentException if there is no such row
+	 */
+	public MovieData get(int row) {
+		if (row < 0 || row >= size) {
+			throw new IllegalArgumentException("Invalid row " + row);
+		}
+		return MovieData.builder().id(row).titleId(formatTitleId(titleIds[row])).ordering(orderings[row])
+				.title(titles[row]).region(decode(regions[row])).language(decode(languages[row]))
+				.types(decode(types[row])).attributes(decode(attributes[row])).isOriginalTitle(decode(originals[row]))
+				.build();
+	}
+
+	private static int length(String title) {
+		return title == null ? 0 : title.length();
+	}
+
+	private String decode(short code) {
+		return dictionary.decode(code & 0xffff);
+	}
+
+	/**
+	 * Returns all the rows of a titleId, by ordering, or an empty list if there is none.
+	 */
+	public List<MovieData> getVariants(String titleId) {
+		List<MovieData> variants = new ArrayList<>();
+		if (Objects.isNull(titleId)) {
+			return variants;
+		}
+		int number;
+		try {
+			number = parseTitleId(titleId);
+		} catch (IllegalArgumentException e) {
+			return variants;
+		}
+		for (int row = lastRow(number); row != NONE; row = previous[row]) {
+			variants.add(get(row));
+		}
+		variants.sort((first, second) -> Integer.compare(first.getOrdering(), second.getOrdering()));
+		return variants;
+	}
+
+	/**
+	 * @return the number of distinct titleIds
+	 */
+	public int titleIdCount() {
+		return titleIdCount;
+	}
+
+	private int lastRow(int titleId) {
+		for (int slot = slot(titleId, lastRows); lastRows[slot + 1] != NONE; slot = nextSlot(slot, lastRows)) {
+			if (lastRows[slot] == titleId) {
+				return lastRows[slot + 1];
+			}
+		}
+		return NONE;
+	}
+
+	/**
+	 * Records row as the last one of titleId.
+	 *
+	 * @return the row it replaces, or -1
+	 */
+	private int putLastRow(int titleId, int row) {
+		int slot = slot(titleId, lastRows);
+		for (; lastRows[slot + 1] != NONE; slot = nextSlot(slot, lastRows)) {
+			if (lastRows[slot] == titleId) {
+				int replaced = lastRows[slot + 1];
+				lastRows[slot + 1] = row;
+				return replaced;
+			}
+		}
+		lastRows[slot] = titleId;
+		lastRows[slot + 1] = row;
+		// keeps the table at most half full
+		if (++titleIdCount * 4 > lastRows.length) {
+			int[] table = emptyTable(lastRows.length);
+			for (int i = 0; i < lastRows.length; i += 2) {
+				if (lastRows[i + 1] != NONE) {
+					int free = slot(lastRows[i], table);
+					while (table[free + 1] != NONE) {
+						free = nextSlot(free, table);
+					}
+					table[free] = lastRows[i];
+					table[free + 1] = lastRows[i + 1];
+				}
+			}
+			lastRows = table;
+		}
+		return NONE;
+	}
+
+	private static int[] emptyTable(int slots) {
+		int[] table = new int[slots * 2];
+		Arrays.fill(table, NONE);
+		return table;
+	}
+
+	private static int slot(int titleId, int[] table) {
+		return ((titleId * 0x9e3779b9) >>> 1) % (table.length >> 1) << 1;
+	}
+
+	private static int nextSlot(int slot, int[] table) {
+		slot += 2;
+		return slot == table.length ? 0 : slot;
+	}
+
+	static int parseTitleId(String titleId) {
+		if (Objects.isNull(titleId) || titleId.length() <= _titleIdPrefix.length() || titleId.length() > 11
+				|| !titleId.startsWith(_titleIdPrefix)) {
+			throw new IllegalArgumentException("Invalid titleId " + titleId);
+		}
+		int number = 0;
+		for (int i = _titleIdPrefix.length(); i < titleId.length(); i++) {
+			int digit = titleId.charAt(i) - '0';
+			if (digit < 0 || digit > 9) {
+				throw new IllegalArgumentException("Invalid titleId " + titleId);
+			}
+			number = number * 10 + digit;
+		}
+		return number;
+	}
+
+	static String formatTitleId(int titleId) {
+		String digits = Integer.toString(titleId);
+		StringBuilder builder = new StringBuilder(_titleIdPrefix);
+		for (int i = digits.length(); i < 7; i++) {
+			builder.append('0');
+		}
+		return builder.append(digits).toString();
+	}
+
+}
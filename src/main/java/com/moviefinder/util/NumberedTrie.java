@@ -0,0 +1,33 @@
+package com.moviefinder.util;
+
+import java.util.function.IntPredicate;
+
+/**
+ * A trie numbering its values in insertion order, from 0, so that its searches can pass the ids of
+ * the values instead of the strings. Inserting a value which only differs by case from a value of the
+ * trie replaces it and keeps its id.
+ */
+public interface NumberedTrie extends Trie<String> {
+
+	/**
+	 * @return the number of values, one more than the highest id
+	 */
+	public int size();
+
+	/**
+	 * @return the value of the given id
+	 * @throws IndexOutOfBoundsException if there is no such id
+	 */
+	public String value(int id);
+
+	/**
+	 * Same as {@link #prefixSearch(Object, int)}, the ids of the values passing the filter are offered to the
+	 * sink, in the order prefixSearch returns the values. The ids the sink declines, by returning false, and
+	 * the ones filtered out do not count towards limit.
+	 *
+	 * @return the number of ids the sink took
+	 * @throws IllegalArgumentException if limit is not positive
+	 */
+	public int prefixSearchIds(String prefix, int limit, IntPredicate filter, IntPredicate sink);
+
+}
@@ -0,0 +1,536 @@
+package com.moviefinder.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.moviefinder.model.MovieData;
+
+/**
+ * Every row of the movie data stored out of the heap instead of in a {@link MovieRecordStore}: every row is
+ * packed as bytes in pages of direct buffers, or of a memory mapped file, and only decoded into a
+ * {@link MovieData} when looked up. The heap only keeps two open addressing tables, at most half full, of
+ * 12 bytes per slot: the address of the movie data of every lower cased title, with the hash of the title,
+ * and the address of the last row of every titleId, with the number of the titleId.
+ *
+ * A record is a row, big endian:
+ *	key          - length and UTF-8 bytes of the title it is the movie data of, empty for another variant
+ *	previous     - long, address of the previous row of the same titleId, -1 for the first one
+ *	id, ordering - ints
+ *	titleId, title, region, language, types, attributes, isOriginalTitle - length, -1 for null, and UTF-8 bytes
+ *
+ * Records are appended and never moved. A row replacing the row of the same titleId and ordering, or a
+ * movie data replacing the one of the same title, appends a new record the slot then points to, leaving
+ * the previous one unused, so replacing costs the size of a record. As in {@link MovieRecordStore}, the id
+ * of a row is its number, kept by the row replacing it.
+ *
+ * Every index has its own store: {@link #copy()} shares the pages of the store, and takes over appending
+ * to them, without copying any record. The store copied is never put to anymore, the records appended
+ * after its own are unknown to its tables, so that a copy written while the index of the store is searched
+ * does not change what it finds. Lookups do not lock: they read the published table and the pages with
+ * absolute reads, which never move the position of a page. Puts are synchronized, they copy the record
+ * before setting the address of its slot, so a lookup finding the address finds the record.
+ */
+public final class OffHeapMovieDataCache implements Cache<String, MovieData>, Closeable {
+
+	static final int PAGE_SIZE = 1 << 24;
+
+	private static final int INITIAL_SLOTS = 1024;
+	private static final long NONE = -1;
+
+	/**
+	 * Number of strings of a record after the ints
+	 */
+	private static final int STRINGS = 7;
+
+	private final int pageSize;
+
+	/**
+	 * File the pages are mapped from, null for direct buffers
+	 */
+	private final FileChannel channel;
+
+	private volatile ByteBuffer[] pages = new ByteBuffer[0];
+
+	/**
+	 * View of the last page records are appended to, whose position the lookups never see
+	 */
+	private ByteBuffer last;
+
+	/**
+	 * Bytes used in the last page
+	 */
+	private int fill;
+
+	/**
+	 * Movie data by title, and last row by titleId number
+	 */
+	private volatile Table titles = new Table(INITIAL_SLOTS);
+	private volatile Table titleIds = new Table(INITIAL_SLOTS);
+	private int titleCount;
+	private int titleIdCount;
+	private int rowCount;
+
+	/**
+	 * Record being encoded by put
+	 */
+	private byte[] record = new byte[256];
+	private int length;
+
+	/**
+	 * Hash of the key and address of the record of every slot, the page number in the high int of the address
+	 * and the position in the page in the low one, -1 for an empty slot. The hash of a slot is written before
+	 * its address, an address is only replaced by the address of a newer record of the same key.
+	 */
+	private static final class Table {
+
+		final int[] hashes;
+		final AtomicLongArray addresses;
+
+		Table(int slots) {
+			hashes = new int[slots];
+			addresses = new AtomicLongArray(slots);
+			for (int slot = 0; slot < slots; slot++) {
+				addresses.lazySet(slot, NONE);
+			}
+		}
+
+		Table(Table table) {
+			hashes = table.hashes.clone();
+			addresses = new AtomicLongArray(table.hashes.length);
+			for (int slot = 0; slot < hashes.length; slot++) {
+				addresses.lazySet(slot, table.addresses.get(slot));
+			}
+		}
+	}
+
+	/**
+	 * Stores the records in direct buffers.
+	 */
+	public OffHeapMovieDataCache() {
+		this(PAGE_SIZE, null);
+	}
+
+	/**
+	 * Stores the records in file, memory mapped one page at a time as they fill up. A previous file is deleted
+	 * first rather than overwritten, the stores still mapping it keep reading their records.
+	 */
+	public OffHeapMovieDataCache(Path file) throws IOException {
+		this(PAGE_SIZE, open(file));
+	}
+
+	OffHeapMovieDataCache(int pageSize, FileChannel channel) {
+		if (pageSize < 64) {
+			throw new IllegalArgumentException("Invalid page size " + pageSize);
+		}
+		this.pageSize = pageSize;
+		this.channel = channel;
+	}
+
+	private static FileChannel open(Path file) throws IOException {
+		Files.deleteIfExists(file);
+		return FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+	}
+
+	/**
+	 * Adds the row, replacing the row of the same titleId and ordering if there is one, as the movie data of
+	 * the lower cased title key.
+	 *
+	 * @throws IllegalArgumentException if the record of the movie data does not fit in a page, or the titleId
+	 *         is not tt followed by digits
+	 */
+	@Override
+	public synchronized void put(String key, MovieData movieData) {
+		byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+		long address = append(keyBytes, movieData);
+		int hash = key.hashCode();
+		Table table = titles;
+		int slot = find(table, keyBytes, hash);
+		if (table.addresses.get(slot) == NONE) {
+			table.hashes[slot] = hash;
+			table.addresses.set(slot, address);
+			if (++titleCount * 2 > table.hashes.length) {
+				titles = grow(table);
+			}
+		} else {
+			table.addresses.set(slot, address);
+		}
+	}
+
+	/**
+	 * Adds the row of another variant of a title, replacing the row of the same titleId and ordering if there
+	 * is one, without changing the movie data of any title.
+	 *
+	 * @throws IllegalArgumentException if the record of the movie data does not fit in a page, or the titleId
+	 *         is not tt followed by digits
+	 */
+	public synchronized void add(MovieData movieData) {
+		append(new byte[0], movieData);
+	}
+
+	/**
+	 * Appends the record of the row and makes it the last row of its titleId.
+	 *
+	 * @return the address of the record
+	 */
+	private long append(byte[] keyBytes, MovieData movieData) {
+		int titleId = MovieRecordStore.parseTitleId(movieData.getTitleId());
+		Table table = titleIds;
+		int slot = findTitleId(table, titleId);
+		long previous = table.addresses.get(slot);
+		int id = -1;
+		for (long row = previous; row != NONE && id < 0; row = previousRow(row)) {
+			if (ordering(row) == movieData.getOrdering()) {
+				id = id(row);
+			}
+		}
+		if (id < 0) {
+			id = rowCount++;
+		}
+		encode(keyBytes, previous, id, movieData);
+		long address = append();
+		if (previous == NONE) {
+			table.hashes[slot] = titleId;
+			table.addresses.set(slot, address);
+			if (++titleIdCount * 2 > table.hashes.length) {
+				titleIds = grow(table);
+			}
+		} else {
+			table.addresses.set(slot, address);
+		}
+		return address;
+	}
+
+	/**
+	 * Returns a store holding the same rows, which takes over appending to the pages of this one. This store
+	 * must not be put to anymore, its lookups are not affected by the puts of the copy.
+	 */
+	public synchronized OffHeapMovieDataCache copy() {
+		OffHeapMovieDataCache copy = new OffHeapMovieDataCache(pageSize, channel);
+		copy.pages = pages;
+		copy.last = last == null ? null : last.duplicate();
+		copy.fill = fill;
+		copy.titles = new Table(titles);
+		copy.titleIds = new Table(titleIds);
+		copy.titleCount = titleCount;
+		copy.titleIdCount = titleIdCount;
+		copy.rowCount = rowCount;
+		return copy;
+	}
+
+	/**
+	 * Closes the file the pages are mapped from, if any: the records stay readable but no page can be added,
+	 * by this store or its copies.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (channel != null) {
+			channel.close();
+		}
+	}
+
+	/**
+	 * @return the movie data of the key decoded from its record, null if there is none
+	 */
+	@Override
+	public MovieData get(String key) {
+		if (Objects.isNull(key)) {
+			return null;
+		}
+		Table table = titles;
+		long address = table.addresses.get(find(table, key.getBytes(StandardCharsets.UTF_8), key.hashCode()));
+		return address == NONE ? null : decode(address);
+	}
+
+	@Override
+	public boolean contains(String key) {
+		if (Objects.isNull(key)) {
+			return false;
+		}
+		Table table = titles;
+		return table.addresses.get(find(table, key.getBytes(StandardCharsets.UTF_8), key.hashCode())) != NONE;
+	}
+
+	/**
+	 * Returns all the rows of a titleId, by ordering, or an empty list if there is none.
+	 */
+	public List<MovieData> getVariants(String titleId) {
+		List<MovieData> variants = new ArrayList<>();
+		int number;
+		try {
+			number = MovieRecordStore.parseTitleId(titleId);
+		} catch (IllegalArgumentException e) {
+			return variants;
+		}
+		Table table = titleIds;
+		// the rows replaced come after the rows replacing them, which have their id
+		int[] ids = new int[8];
+		int count = 0;
+		for (long row = table.addresses.get(findTitleId(table, number)); row != NONE; row = previousRow(row)) {
+			int id = id(row);
+			boolean replaced = false;
+			for (int i = 0; i < count && !replaced; i++) {
+				replaced = ids[i] == id;
+			}
+			if (!replaced) {
+				if (count == ids.length) {
+					ids = Arrays.copyOf(ids, count << 1);
+				}
+				ids[count++] = id;
+				variants.add(decode(row));
+			}
+		}
+		variants.sort((first, second) -> Integer.compare(first.getOrdering(), second.getOrdering()));
+		return variants;
+	}
+
+	/**
+	 * @return the number of titles having movie data
+	 */
+	public synchronized int size() {
+		return titleCount;
+	}
+
+	/**
+	 * @return the number of rows, those replaced not included
+	 */
+	public synchronized int rowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * @return the number of distinct titleIds
+	 */
+	public synchronized int titleIdCount() {
+		return titleIdCount;
+	}
+
+	/**
+	 * @return the bytes of the records stored out of the heap, the unused ones included
+	 */
+	public synchronized long storedBytes() {
+		return pages.length == 0 ? 0 : (long) (pages.length - 1) * pageSize + fill;
+	}
+
+	/**
+	 * @return an estimate of the bytes used in the heap by the tables
+	 */
+	public synchronized long memoryEstimate() {
+		return 12L * (titles.hashes.length + titleIds.hashes.length) + 8L * pages.length;
+	}
+
+	/**
+	 * @return the slot of the key, or the empty slot where it would go
+	 */
+	private int find(Table table, byte[] keyBytes, int hash) {
+		int slots = table.hashes.length;
+		int slot = slot(hash, slots);
+		for (long address; (address = table.addresses.get(slot)) != NONE; slot = slot + 1 == slots ? 0 : slot + 1) {
+			if (table.hashes[slot] == hash && keyEquals(address, keyBytes)) {
+				break;
+			}
+		}
+		return slot;
+	}
+
+	/**
+	 * @return the slot of the titleId number, or the empty slot where it would go
+	 */
+	private static int findTitleId(Table table, int titleId) {
+		int slots = table.hashes.length;
+		int slot = slot(titleId, slots);
+		while (table.addresses.get(slot) != NONE && table.hashes[slot] != titleId) {
+			slot = slot + 1 == slots ? 0 : slot + 1;
+		}
+		return slot;
+	}
+
+	private boolean keyEquals(long address, byte[] keyBytes) {
+		ByteBuffer page = pages[(int) (address >>> 32)];
+		int position = (int) address;
+		if (page.getShort(position) != keyBytes.length) {
+			return false;
+		}
+		for (int i = 0; i < keyBytes.length; i++) {
+			if (page.get(position + 2 + i) != keyBytes[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return a table of twice the slots holding the slots of table, which is not modified
+	 */
+	private static Table grow(Table table) {
+		Table grown = new Table(table.hashes.length << 1);
+		int slots = grown.hashes.length;
+		for (int i = 0; i < table.hashes.length; i++) {
+			long address = table.addresses.get(i);
+			if (address != NONE) {
+				int slot = slot(table.hashes[i], slots);
+				while (grown.addresses.get(slot) != NONE) {
+					slot = slot + 1 == slots ? 0 : slot + 1;
+				}
+				grown.hashes[slot] = table.hashes[i];
+				grown.addresses.lazySet(slot, address);
+			}
+		}
+		return grown;
+	}
+
+	private static int slot(int hash, int slots) {
+		return ((hash * 0x9e3779b9) >>> 1) % slots;
+	}
+
+	/**
+	 * Copies the encoded record at the end of the last page, or of a new page if it does not fit.
+	 *
+	 * @return the address of the record
+	 */
+	private long append() {
+		if (length > pageSize) {
+			throw new IllegalArgumentException("Invalid movie data, " + length + " bytes do not fit in a page");
+		}
+		if (last == null || fill + length > pageSize) {
+			ByteBuffer page = newPage();
+			ByteBuffer[] pages = Arrays.copyOf(this.pages, this.pages.length + 1);
+			pages[pages.length - 1] = page;
+			this.pages = pages;
+			last = page.duplicate();
+			fill = 0;
+		}
+		long address = (long) (pages.length - 1) << 32 | fill;
+		last.position(fill);
+		last.put(record, 0, length);
+		fill += length;
+		return address;
+	}
+
+	private ByteBuffer newPage() {
+		if (channel == null) {
+			return ByteBuffer.allocateDirect(pageSize);
+		}
+		try {
+			return channel.map(MapMode.READ_WRITE, (long) pages.length * pageSize, pageSize);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void encode(byte[] keyBytes, long previous, int id, MovieData movieData) {
+		length = 0;
+		writeBytes(keyBytes);
+		writeInt((int) (previous >>> 32));
+		writeInt((int) previous);
+		writeInt(id);
+		writeInt(movieData.getOrdering());
+		writeString(movieData.getTitleId());
+		writeString(movieData.getTitle());
+		writeString(movieData.getRegion());
+		writeString(movieData.getLanguage());
+		writeString(movieData.getTypes());
+		writeString(movieData.getAttributes());
+		writeString(movieData.getIsOriginalTitle());
+	}
+
+	private void writeString(String value) {
+		if (value == null) {
+			ensure(2);
+			writeShort(-1);
+		} else {
+			writeBytes(value.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	private void writeBytes(byte[] bytes) {
+		if (bytes.length > Short.MAX_VALUE) {
+			throw new IllegalArgumentException("Invalid movie data, a value of " + bytes.length + " bytes");
+		}
+		ensure(2 + bytes.length);
+		writeShort(bytes.length);
+		System.arraycopy(bytes, 0, record, length, bytes.length);
+		length += bytes.length;
+	}
+
+	private void writeShort(int value) {
+		record[length++] = (byte) (value >>> 8);
+		record[length++] = (byte) value;
+	}
+
+	private void writeInt(int value) {
+		ensure(4);
+		writeShort(value >>> 16);
+		writeShort(value);
+	}
+
+	private void ensure(int bytes) {
+		if (length + bytes > record.length) {
+			record = Arrays.copyOf(record, Math.max(record.length << 1, length + bytes));
+		}
+	}
+
+	/**
+	 * @return the position of the previous address in the record at address, right after the key
+	 */
+	private int fields(ByteBuffer page, long address) {
+		int position = (int) address;
+		return position + 2 + page.getShort(position);
+	}
+
+	private long previousRow(long address) {
+		ByteBuffer page = pages[(int) (address >>> 32)];
+		return page.getLong(fields(page, address));
+	}
+
+	private int id(long address) {
+		ByteBuffer page = pages[(int) (address >>> 32)];
+		return page.getInt(fields(page, address) + 8);
+	}
+
+	private int ordering(long address) {
+		ByteBuffer page = pages[(int) (address >>> 32)];
+		return page.getInt(fields(page, address) + 12);
+	}
+
+	private MovieData decode(long address) {
+		ByteBuffer page = pages[(int) (address >>> 32)];
+		int position = fields(page, address) + 8;
+		int id = page.getInt(position);
+		int ordering = page.getInt(position + 4);
+		position += 8;
+		String[] values = new String[STRINGS];
+		for (int i = 0; i < STRINGS; i++) {
+			short length = page.getShort(position);
+			position += 2;
+			if (length >= 0) {
+				values[i] = readString(page, position, length);
+				position += length;
+			}
+		}
+		return MovieData.builder().id(id).ordering(ordering).titleId(values[0]).title(values[1]).region(values[2])
+				.language(values[3]).types(values[4]).attributes(values[5]).isOriginalTitle(values[6]).build();
+	}
+
+	private static String readString(ByteBuffer page, int position, int length) {
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[i] = page.get(position + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+}
@@ -0,0 +1,220 @@
+package com.moviefinder.util;
+
+import java.util.function.Supplier;
+
+/**
+ * Budget of the searches of the current thread: a number of steps, trie nodes or index entries visited,
+ * and a deadline. A request starts it before searching, and the traversals of the tries and indexes take
+ * a step for every node or entry they visit, stopping as soon as the budget is exhausted with the results
+ * found so far. The request is then truncated, until the next start.
+ *
+ * The traversals get the budget of the thread once and take steps on it, which costs a decrement. The
+ * remaining steps and the clock are only read every {@value #CHECK} steps, so a search may overrun its
+ * deadline by that many steps. Without a budget started, the searches are not bounded.
+ *
+ * A search running parts of its work on other threads gives each part a {@link Share} of the budget of
+ * the calling thread, the same deadline and an even part of the steps left, {@link #run(Share, Supplier)}
+ * on the thread of the part, then {@link #join(Share)} on the calling thread, which takes the steps the part
+ * took from its budget and is truncated if the part was.
+ */
+public final class SearchBudget {
+
+	/**
+	 * Steps taken between two reads of the clock
+	 */
+	static final int CHECK = 1024;
+
+	private static final ThreadLocal<SearchBudget> budgets = ThreadLocal.withInitial(SearchBudget::new);
+
+	/**
+	 * Steps left once the countdown reaches 0, Long.MAX_VALUE when the steps are not bounded
+	 */
+	private long steps = Long.MAX_VALUE;
+
+	/**
+	 * Time in nanoseconds when the budget is exhausted, meaningless if not timed
+	 */
+	private long deadline;
+	private boolean timed;
+
+	/**
+	 * Steps left before the next check
+	 */
+	private int countdown;
+	private boolean exhausted;
+	private boolean truncated;
+
+	private SearchBudget() {
+	}
+
+	/**
+	 * @return the budget of the current thread, to take steps on while searching
+	 */
+	public static SearchBudget current() {
+		return budgets.get();
+	}
+
+	/**
+	 * Starts a budget for the searches of the current thread, which are no longer truncated.
+	 *
+	 * @param maxSteps nodes or entries the searches may visit, 0 for no bound
+	 * @param maxMillis milliseconds the searches may take from now, 0 for no bound
+	 * @throws IllegalArgumentException if a bound is negative
+	 */
+	public static void start(long maxSteps, long maxMillis) {
+		if (maxSteps < 0 || maxMillis < 0) {
+			throw new IllegalArgumentException("Invalid search budget of " + maxSteps + " steps and " + maxMillis + " ms");
+		}
+		SearchBudget budget = budgets.get();
+		budget.steps = maxSteps == 0 ? Long.MAX_VALUE : maxSteps;
+		budget.timed = maxMillis > 0;
+		budget.deadline = System.nanoTime() + maxMillis * 1_000_000;
+		budget.countdown = 0;
+		budget.exhausted = false;
+		budget.truncated = false;
+	}
+
+	/**
+	 * Removes the bounds of the budget of the current thread, the searches since the start stay truncated
+	 * if they exhausted it.
+	 *
+	 * @return whether the searches since the start were truncated
+	 */
+	public static boolean stop() {
+		SearchBudget budget = budgets.get();
+		budget.steps = Long.MAX_VALUE;
+		budget.timed = false;
+		budget.countdown = 0;
+		budget.exhausted = false;
+		return budget.truncated;
+	}
+
+	/**
+	 * @return whether the searches of the current thread since the last start exhausted their budget
+	 */
+	public static boolean isTruncated() {
+		return budgets.get().truncated;
+	}
+
+	/**
+	 * Part of the budget of a thread, for a search running on another thread. The steps it took and whether
+	 * it was truncated are written by {@link SearchBudget#run(Share, Supplier)}, and read by the thread it
+	 * was shared from once it has joined the search.
+	 */
+	public static final class Share {
+
+		private final long steps;
+		private final long deadline;
+		private final boolean timed;
+		private final boolean exhausted;
+
+		private long taken;
+		private boolean truncated;
+
+		private Share(long steps, long deadline, boolean timed, boolean exhausted) {
+			this.steps = steps;
+			this.deadline = deadline;
+			this.timed = timed;
+			this.exhausted = exhausted;
+		}
+	}
+
+	/**
+	 * Shares the budget of the current thread with one of parts searches run on other threads: the same
+	 * deadline and the steps left divided by parts.
+	 *
+	 * @throws IllegalArgumentException if parts is not positive
+	 */
+	public static Share share(int parts) {
+		if (parts <= 0) {
+			throw new IllegalArgumentException("Invalid number of parts " + parts);
+		}
+		SearchBudget budget = budgets.get();
+		long remaining = budget.remaining();
+		return new Share(remaining == Long.MAX_VALUE ? remaining : remaining / parts, budget.deadline, budget.timed,
+				budget.exhausted);
+	}
+
+	/**
+	 * Runs the search with the share as the budget of the current thread, which may be the thread it was
+	 * shared from, and gives the thread its own budget back afterwards.
+	 *
+	 * @return the result of the search
+	 */
+	public static <T> T run(Share share, Supplier<T> search) {
+		SearchBudget budget = budgets.get();
+		long steps = budget.steps;
+		long deadline = budget.deadline;
+		boolean timed = budget.timed;
+		int countdown = budget.countdown;
+		boolean exhausted = budget.exhausted;
+		boolean truncated = budget.truncated;
+		budget.steps = share.steps;
+		budget.deadline = share.deadline;
+		budget.timed = share.timed;
+		budget.countdown = 0;
+		budget.exhausted = share.exhausted;
+		budget.truncated = false;
+		try {
+			return search.get();
+		} finally {
+			share.taken = share.steps == Long.MAX_VALUE ? 0 : share.steps - budget.remaining();
+			share.truncated = budget.truncated;
+			budget.steps = steps;
+			budget.deadline = deadline;
+			budget.timed = timed;
+			budget.countdown = countdown;
+			budget.exhausted = exhausted;
+			budget.truncated = truncated;
+		}
+	}
+
+	/**
+	 * Takes the steps the search of the share took from the budget of the current thread, which the share
+	 * was taken from, and truncates its searches if that search was. To call once the search has run.
+	 */
+	public static void join(Share share) {
+		SearchBudget budget = budgets.get();
+		if (budget.steps != Long.MAX_VALUE) {
+			budget.steps = Math.max(0, budget.remaining() - share.taken);
+			budget.countdown = 0;
+		}
+		budget.truncated |= share.truncated;
+	}
+
+	/**
+	 * @return the steps left, those of the countdown included, Long.MAX_VALUE if they are not bounded
+	 */
+	private long remaining() {
+		return steps == Long.MAX_VALUE ? steps : steps + Math.max(countdown, 0);
+	}
+
+	/**
+	 * Takes a step of the budget.
+	 *
+	 * @return false if the budget is exhausted and the search must stop
+	 */
+	public boolean step() {
+		return --countdown >= 0 || refill();
+	}
+
+	/**
+	 * Takes the step the countdown ran out at from the next {@value #CHECK} steps, unless no step is left
+	 * or the deadline has passed.
+	 */
+	private boolean refill() {
+		if (exhausted || steps <= 0 || (timed && System.nanoTime() - deadline > 0)) {
+			exhausted = true;
+			truncated = true;
+			countdown = -1;
+			return false;
+		}
+		int next = (int) Math.min(CHECK, steps);
+		if (steps != Long.MAX_VALUE) {
+			steps -= next;
+		}
+		countdown = next - 1;
+		return true;
+	}
+
+}
@@ -0,0 +1,39 @@
+package com.moviefinder.util;
+
+/**
+ * Number of trie nodes visited by the searches of the current thread, reported by the metrics of the
+ * suggestions. A search counts its nodes in a local variable and adds them once when it returns, so
+ * counting costs a thread local lookup per search.
+ */
+public final class SearchCounter {
+
+	private static final ThreadLocal<long[]> visited = ThreadLocal.withInitial(() -> new long[1]);
+
+	private SearchCounter() {
+	}
+
+	/**
+	 * Adds nodes to the count of the current thread.
+	 */
+	public static void add(long nodes) {
+		visited.get()[0] += nodes;
+	}
+
+	/**
+	 * @return the nodes visited by the current thread since the previous reset, without resetting
+	 */
+	public static long get() {
+		return visited.get()[0];
+	}
+
+	/**
+	 * @return the nodes visited by the current thread since the previous reset
+	 */
+	public static long reset() {
+		long[] count = visited.get();
+		long nodes = count[0];
+		count[0] = 0;
+		return nodes;
+	}
+
+}
@@ -0,0 +1,430 @@
+package com.moviefinder.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * Trie split into shards, each a {@link CompactTrie} holding the values whose first lower cased character
+ * hashes to it. A prefix search only walks the shard of the first character of the prefix, the same way a
+ * single trie would. The searches which may match values of any first character, the search inside the
+ * values and the fuzzy search, run on all the shards at once on a fork join pool, and their results are
+ * merged in the order of the shards, the fuzzy ones closest first. The suggestions search inside the titles
+ * with a {@link TrigramIndex} rather than this trie: {@link #searchInside(TrigramIndex, String, int, IntPredicate,
+ * IntPredicate)} checks its candidates on the pool as well, in as many parts as shards.
+ *
+ * The values are numbered in insertion order across the shards, like the titles of the substring index, so
+ * that the suggestions pass the ids of the values from the prefix search to the next searches. Every value
+ * costs its shard and its id in the shard, and the shards the id of each of their values.
+ *
+ * {@link #insertAll(List)} builds the shards in parallel, one task per shard. Leading characters are not
+ * evenly spread (many titles start with "the"), so the largest shard bounds the build time.
+ *
+ * Like the other tries, it can be searched from any number of threads once built.
+ */
+public final class ShardedTrie implements NumberedTrie {
+
+	private final CompactTrie[] shards;
+	private final ForkJoinPool pool;
+
+	/**
+	 * Shard and id in the shard of every value, by id
+	 */
+	private int[] shardOf = new int[0];
+	private int[] localOf = new int[0];
+
+	/**
+	 * Id of every value of every shard, by id in the shard
+	 */
+	private final int[][] ids;
+	private int size;
+
+	/**
+	 * Shards searched on the common pool.
+	 *
+	 * @param shardCount number of shards, 0 for as many as processors
+	 */
+	public ShardedTrie(int shardCount) {
+		this(shardCount, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param shardCount number of shards, 0 for as many as processors
+	 * @param pool runs the builds and searches of the shards
+	 * @throws IllegalArgumentException if shardCount is negative
+	 */
+	public ShardedTrie(int shardCount, ForkJoinPool pool) {
+		if (shardCount < 0) {
+			throw new IllegalArgumentException("Invalid shard count " + shardCount);
+		}
+		this.shards = new CompactTrie[shardCount > 0 ? shardCount : Runtime.getRuntime().availableProcessors()];
+		this.pool = pool;
+		this.ids = new int[shards.length][];
+		for (int i = 0; i < shards.length; i++) {
+			shards[i] = new CompactTrie();
+			ids[i] = new int[0];
+		}
+	}
+
+	/**
+	 * @return the number of shards
+	 */
+	public int shardCount() {
+		return shards.length;
+	}
+
+	/**
+	 * @return the number of values stored
+	 */
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public String value(int id) {
+		if (id < 0 || id >= size) {
+			throw new IndexOutOfBoundsException("Invalid id " + id);
+		}
+		return shards[shardOf[id]].value(localOf[id]);
+	}
+
+	/**
+	 * Numbers the value of the shard of the given id in the shard, the next one
+	 */
+	private void number(int shard, int local) {
+		if (size == shardOf.length) {
+			shardOf = Arrays.copyOf(shardOf, Math.max(16, size << 1));
+			localOf = Arrays.copyOf(localOf, shardOf.length);
+		}
+		if (local == ids[shard].length) {
+			ids[shard] = Arrays.copyOf(ids[shard], Math.max(16, local << 1));
+		}
+		shardOf[size] = shard;
+		localOf[size] = local;
+		ids[shard][local] = size++;
+	}
+
+	private CompactTrie shard(String value) {
+		return shards[shardIndex(value)];
+	}
+
+	private int shardIndex(String value) {
+		int letter = Character.toLowerCase(value.charAt(0));
+		return ((letter * 0x9e3779b9) >>> 1) % shards.length;
+	}
+
+	/**
+	 * Splits the values by shard and inserts every part in its shard in parallel, then numbers the new values
+	 * in the order of the list. A value only differing by case from a value of its shard keeps its id.
+	 */
+	@Override
+	public void insertAll(List<String> values) {
+		List<List<String>> parts = new ArrayList<>(shards.length);
+		// next id in every shard, the first value of the shard not numbered yet
+		int[] next = new int[shards.length];
+		for (int i = 0; i < shards.length; i++) {
+			parts.add(new ArrayList<>());
+			next[i] = shards[i].size();
+		}
+		for (String value : values) {
+			checkValue(value);
+			parts.get(shardIndex(value)).add(value);
+		}
+		List<ForkJoinTask<?>> builds = new ArrayList<>(shards.length);
+		for (int i = 0; i < shards.length; i++) {
+			CompactTrie shard = shards[i];
+			List<String> part = parts.get(i);
+			builds.add(pool.submit(() -> shard.insertAll(part)));
+		}
+		for (ForkJoinTask<?> build : builds) {
+			build.join();
+		}
+		// a shard numbers its new values in the order of its part, a value replacing another one is not new
+		for (String value : values) {
+			int shard = shardIndex(value);
+			if (next[shard] < shards[shard].size()
+					&& CaseFolding.fold(shards[shard].value(next[shard])).equals(CaseFolding.fold(value))) {
+				number(shard, next[shard]++);
+			}
+		}
+	}
+
+	/**
+	 * Ranks the values of every shard in parallel, see {@link CompactTrie#rank(ToIntFunction, int, int)}. A prefix
+	 * search reads a single shard so it returns the values in rank order, except the one of the empty prefix which
+	 * returns the values of the shards one after the other.
+	 */
+	public void rank(ToIntFunction<String> score, int count, int depth) {
+		List<ForkJoinTask<?>> ranks = new ArrayList<>(shards.length);
+		for (CompactTrie shard : shards) {
+			ranks.add(pool.submit(() -> shard.rank(score, count, depth)));
+		}
+		for (ForkJoinTask<?> rank : ranks) {
+			rank.join();
+		}
+	}
+
+	@Override
+	public void insert(String value) {
+		checkValue(value);
+		int shard = shardIndex(value);
+		int local = shards[shard].size();
+		shards[shard].insert(value);
+		if (shards[shard].size() > local) {
+			number(shard, local);
+		}
+	}
+
+	private static void checkValue(String value) {
+		if (Objects.isNull(value) || value.isEmpty()) {
+			throw new IllegalArgumentException("Invalid value");
+		}
+	}
+
+	@Override
+	public Set<String> prefixSearch(String prefix) {
+		return prefixSearch(prefix, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Searches the shard of the first character of the prefix, or every shard in turn for an empty prefix.
+	 */
+	@Override
+	public Set<String> prefixSearch(String prefix, int limit) {
+		checkLimit(limit);
+		if (Objects.isNull(prefix)) {
+			return new LinkedHashSet<>();
+		}
+		if (!prefix.isEmpty()) {
+			return shard(prefix).prefixSearch(prefix, limit);
+		}
+		Set<String> values = new LinkedHashSet<>();
+		for (int i = 0; i < shards.length && values.size() < limit; i++) {
+			values.addAll(shards[i].prefixSearch(prefix, limit - values.size()));
+		}
+		return values;
+	}
+
+	@Override
+	public int prefixSearch(String prefix, int limit, Consumer<String> consumer) {
+		checkLimit(limit);
+		if (Objects.isNull(prefix)) {
+			return 0;
+		}
+		if (!prefix.isEmpty()) {
+			return shard(prefix).prefixSearch(prefix, limit, consumer);
+		}
+		int count = 0;
+		for (int i = 0; i < shards.length && count < limit; i++) {
+			count += shards[i].prefixSearch(prefix, limit - count, consumer);
+		}
+		return count;
+	}
+
+	/**
+	 * Same as {@link #prefixSearch(String, int, Consumer)}, passing the ids of the values.
+	 */
+	@Override
+	public int prefixSearchIds(String prefix, int limit, IntPredicate filter, IntPredicate sink) {
+		checkLimit(limit);
+		if (Objects.isNull(prefix)) {
+			return 0;
+		}
+		if (!prefix.isEmpty()) {
+			int[] ids = this.ids[shardIndex(prefix)];
+			return shard(prefix).prefixSearchIds(prefix, limit, local -> filter.test(ids[local]),
+					local -> sink.test(ids[local]));
+		}
+		int count = 0;
+		for (int i = 0; i < shards.length && count < limit; i++) {
+			int[] ids = this.ids[i];
+			count += shards[i].prefixSearchIds(prefix, limit - count, local -> filter.test(ids[local]),
+					local -> sink.test(ids[local]));
+		}
+		return count;
+	}
+
+	/**
+	 * Searches the titles of the substring index containing the key, its candidates being checked in as many
+	 * parts as shards at once on the pool of the shards, see
+	 * {@link TrigramIndex#searchIds(String, int, IntPredicate, IntPredicate, ForkJoinPool, int)}.
+	 *
+	 * @return the number of ids the sink took
+	 */
+	public int searchInside(TrigramIndex substringIndex, String key, int limit, IntPredicate filter,
+			IntPredicate sink) {
+		return substringIndex.searchIds(key, limit, filter, sink, pool, shards.length);
+	}
+
+	@Override
+	public Set<String> search(String key) {
+		return search(key, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Same matches as {@link CompactTrie#search(String, int)}, which only depend on each value, searched on all
+	 * the shards in parallel. The values of the first shards come first.
+	 */
+	@Override
+	public Set<String> search(String key, int limit) {
+		checkLimit(limit);
+		if (Objects.isNull(key) || key.isEmpty()) {
+			return new LinkedHashSet<>();
+		}
+		Set<String> values = new LinkedHashSet<>();
+		for (Set<String> found : scatter(shard -> shard.search(key, limit))) {
+			addAll(values, found, limit);
+		}
+		return values;
+	}
+
+	/**
+	 * Searches all the shards in parallel, as the closest value may start with any character, and keeps the
+	 * limit closest of their values: the values of every shard are ordered by their distance to the key, and
+	 * the merged values are ordered the same way by computing it.
+	 */
+	@Override
+	public Set<String> fuzzySearch(String key, int maxEdits, int limit) {
+		checkLimit(limit);
+		if (maxEdits < 0) {
+			throw new IllegalArgumentException("Invalid edit distance " + maxEdits);
+		}
+		if (Objects.isNull(key) || key.isEmpty()) {
+			return new LinkedHashSet<>();
+		}
+		List<String> merged = new ArrayList<>();
+		for (Set<String> found : scatter(shard -> shard.fuzzySearch(key, maxEdits, limit))) {
+			merged.addAll(found);
+		}
+		char[] letters = key.toLowerCase().toCharArray();
+		// stable, the values of a shard at the same distance keep their order
+		merged.sort(Comparator.comparingInt(value -> prefixDistance(letters, value)));
+		Set<String> values = new LinkedHashSet<>();
+		addAll(values, merged, limit);
+		return values;
+	}
+
+	/**
+	 * Runs the search on every shard, the first one on the calling thread and the others on the pool.
+	 * The nodes visited on the pool are added to the {@link SearchCounter} of the calling thread. A task
+	 * leaves the counter of the thread it runs on as it found it, which may be the calling thread when it
+	 * joins a task not started yet, so the nodes are counted once whatever thread ran them.
+	 *
+	 * Every shard searches with a {@link SearchBudget.Share} of the budget of the calling thread, which
+	 * takes the steps of all of them and is truncated if one of them was.
+	 *
+	 * @return the results of the shards, in shard order
+	 */
+	private List<Set<String>> scatter(Function<CompactTrie, Set<String>> search) {
+		long[] visited = new long[shards.length];
+		SearchBudget.Share[] shares = new SearchBudget.Share[shards.length];
+		for (int i = 0; i < shards.length; i++) {
+			shares[i] = SearchBudget.share(shards.length);
+		}
+		List<ForkJoinTask<Set<String>>> tasks = new ArrayList<>(shards.length);
+		for (int i = 1; i < shards.length; i++) {
+			CompactTrie shard = shards[i];
+			int index = i;
+			tasks.add(pool.submit(() -> {
+				long before = SearchCounter.get();
+				Set<String> found = SearchBudget.run(shares[index], () -> search.apply(shard));
+				visited[index] = SearchCounter.get() - before;
+				SearchCounter.add(-visited[index]);
+				return found;
+			}));
+		}
+		List<Set<String>> results = new ArrayList<>(shards.length);
+		results.add(SearchBudget.run(shares[0], () -> search.apply(shards[0])));
+		for (ForkJoinTask<Set<String>> task : tasks) {
+			results.add(task.join());
+		}
+		long total = 0;
+		for (long count : visited) {
+			total += count;
+		}
+		SearchCounter.add(total);
+		for (SearchBudget.Share share : shares) {
+			SearchBudget.join(share);
+		}
+		return results;
+	}
+
+	/**
+	 * Smallest number of edits turning the letters into a prefix of the lower cased value.
+	 */
+	static int prefixDistance(char[] letters, String value) {
+		int[] row = new int[letters.length + 1];
+		for (int i = 0; i < row.length; i++) {
+			row[i] = i;
+		}
+		int best = row[letters.length];
+		for (int j = 0; j < value.length(); j++) {
+			char letter = Character.toLowerCase(value.charAt(j));
+			int diagonal = row[0];
+			row[0] = j + 1;
+			for (int i = 1; i < row.length; i++) {
+				int above = row[i];
+				row[i] = Math.min(diagonal + (letters[i - 1] == letter ? 0 : 1), Math.min(row[i], row[i - 1]) + 1);
+				diagonal = above;
+			}
+			best = Math.min(best, row[letters.length]);
+		}
+		return best;
+	}
+
+	private static void addAll(Set<String> values, Iterable<String> found, int limit) {
+		for (String value : found) {
+			if (values.size() >= limit) {
+				break;
+			}
+			values.add(value);
+		}
+	}
+
+	@Override
+	public void clear() {
+		for (int i = 0; i < shards.length; i++) {
+			shards[i].clear();
+			ids[i] = new int[0];
+		}
+		shardOf = new int[0];
+		localOf = new int[0];
+		size = 0;
+	}
+
+	@Override
+	public int nodeCount() {
+		int nodeCount = 0;
+		for (CompactTrie shard : shards) {
+			nodeCount += shard.nodeCount();
+		}
+		return nodeCount;
+	}
+
+	@Override
+	public long memoryEstimate() {
+		long bytes = 8L * shardOf.length;
+		for (int i = 0; i < shards.length; i++) {
+			bytes += shards[i].memoryEstimate() + 4L * ids[i].length;
+		}
+		return bytes;
+	}
+
+	private static void checkLimit(int limit) {
+		if (limit < 1) {
+			throw new IllegalArgumentException("Invalid limit " + limit);
+		}
+	}
+
+}
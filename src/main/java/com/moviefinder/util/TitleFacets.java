@@ -0,0 +1,214 @@
+package com.moviefinder.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.IntPredicate;
+
+import com.moviefinder.model.MovieData;
+import com.moviefinder.model.SuggestionFilter;
+
+/**
+ * Facets of the titles: for every region, language and isOriginalTitle value, the bitset of the ids of
+ * the titles having a row with that value, the id of a title being its position in the list the search
+ * structures are built from, as in {@link TrigramIndex}. A title of several rows is in the bitsets of the
+ * values of all of them. Values are folded, "\N" is a value like any other.
+ *
+ * A filter of several values passes the titles having all of them on a single row: a title with a US row in
+ * English and a FR row in French passes US and English, not FR and English. The facets keep a bitset per
+ * combination of the three values found on a row as well, a filter of several values tests the ids against
+ * the few combinations holding them.
+ *
+ * A filter tests the ids against the bitsets of the values asked, while the structures search, so the
+ * titles filtered out are skipped before being verified or collected and never cost more than a few bit
+ * reads. A bitset costs a bit per title up to the highest id holding the value.
+ *
+ * The facets are written by a single thread while the index is built, and only read once it is published.
+ */
+public final class TitleFacets {
+
+	private final Map<String, BitSet> regions;
+	private final Map<String, BitSet> languages;
+	private final Map<String, BitSet> originals;
+
+	/**
+	 * Bitsets of the combinations of the folded region, language and isOriginalTitle of the rows, a value
+	 * not set being null
+	 */
+	private final Map<List<String>, BitSet> rows;
+
+	public TitleFacets() {
+		this(new HashMap<>(), new HashMap<>(), new HashMap<>(), new HashMap<>());
+	}
+
+	private TitleFacets(Map<String, BitSet> regions, Map<String, BitSet> languages, Map<String, BitSet> originals,
+			Map<List<String>, BitSet> rows) {
+		this.regions = regions;
+		this.languages = languages;
+		this.originals = originals;
+		this.rows = rows;
+	}
+
+	/**
+	 * Adds the values of a row of the title of the given id.
+	 */
+	public void add(int id, MovieData movieData) {
+		if (id < 0) {
+			throw new IllegalArgumentException("Invalid id " + id);
+		}
+		set(regions, movieData.getRegion(), id);
+		set(languages, movieData.getLanguage(), id);
+		set(originals, movieData.getIsOriginalTitle(), id);
+		rows.computeIfAbsent(Arrays.asList(fold(movieData.getRegion()), fold(movieData.getLanguage()),
+				fold(movieData.getIsOriginalTitle())), row -> new BitSet()).set(id);
+	}
+
+	private static String fold(String value) {
+		return Objects.isNull(value) ? null : CaseFolding.fold(value);
+	}
+
+	private static void set(Map<String, BitSet> facet, String value, int id) {
+		if (Objects.nonNull(value)) {
+			facet.computeIfAbsent(CaseFolding.fold(value), folded -> new BitSet()).set(id);
+		}
+	}
+
+	/**
+	 * Returns the test of the title ids passing the filter: having a row with all the values set. A value
+	 * no title has lets no id pass.
+	 *
+	 * @return the test, null if the filter is empty and every id passes
+	 */
+	public IntPredicate filter(SuggestionFilter filter) {
+		if (Objects.isNull(filter) || filter.isEmpty()) {
+			return null;
+		}
+		BitSet region = bits(regions, filter.getRegion());
+		BitSet language = bits(languages, filter.getLanguage());
+		BitSet original = bits(originals, filter.getIsOriginalTitle());
+		if ((region == null ? 0 : 1) + (language == null ? 0 : 1) + (original == null ? 0 : 1) == 1) {
+			BitSet bits = region != null ? region : language != null ? language : original;
+			return bits::get;
+		}
+		List<String> values = Arrays.asList(value(filter.getRegion()), value(filter.getLanguage()),
+				value(filter.getIsOriginalTitle()));
+		List<BitSet> matching = new ArrayList<>();
+		rows.forEach((row, bits) -> {
+			if (matches(row, values)) {
+				matching.add(bits);
+			}
+		});
+		BitSet[] combinations = matching.toArray(new BitSet[0]);
+		return id -> {
+			for (BitSet bits : combinations) {
+				if (bits.get(id)) {
+					return true;
+				}
+			}
+			return false;
+		};
+	}
+
+	/**
+	 * @return the folded value, null if it is not set
+	 */
+	private static String value(String value) {
+		return Objects.isNull(value) || value.isEmpty() ? null : CaseFolding.fold(value);
+	}
+
+	/**
+	 * @return whether the combination of a row holds every value set
+	 */
+	private static boolean matches(List<String> row, List<String> values) {
+		for (int i = 0; i < values.size(); i++) {
+			if (values.get(i) != null && !values.get(i).equals(row.get(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the bitset of the value, null if the value is not set
+	 */
+	private static BitSet bits(Map<String, BitSet> facet, String value) {
+		if (Objects.isNull(value) || value.isEmpty()) {
+			return null;
+		}
+		return facet.getOrDefault(CaseFolding.fold(value), new BitSet(0));
+	}
+
+	/**
+	 * @return the number of distinct values of the three facets
+	 */
+	public int valueCount() {
+		return regions.size() + languages.size() + originals.size();
+	}
+
+	/**
+	 * @return the number of distinct combinations of the three values found on a row
+	 */
+	public int rowCount() {
+		return rows.size();
+	}
+
+	/**
+	 * Returns new facets holding the titles of these ones followed by the titles of other, whose ids are
+	 * shifted by offset. Neither is modified.
+	 */
+	public TitleFacets merged(TitleFacets other, int offset) {
+		TitleFacets merged = new TitleFacets(copy(regions), copy(languages), copy(originals), copy(rows));
+		merge(merged.regions, other.regions, offset);
+		merge(merged.languages, other.languages, offset);
+		merge(merged.originals, other.originals, offset);
+		merge(merged.rows, other.rows, offset);
+		return merged;
+	}
+
+	/**
+	 * @return independent facets holding the same titles, which can be added to without affecting these ones
+	 */
+	public TitleFacets copy() {
+		return merged(new TitleFacets(), 0);
+	}
+
+	private static <K> Map<K, BitSet> copy(Map<K, BitSet> facet) {
+		Map<K, BitSet> copy = new HashMap<>();
+		facet.forEach((value, bits) -> copy.put(value, (BitSet) bits.clone()));
+		return copy;
+	}
+
+	private static <K> void merge(Map<K, BitSet> target, Map<K, BitSet> source, int offset) {
+		source.forEach((value, bits) -> {
+			BitSet merged = target.computeIfAbsent(value, folded -> new BitSet());
+			for (int id = bits.nextSetBit(0); id >= 0; id = bits.nextSetBit(id + 1)) {
+				merged.set(id + offset);
+			}
+		});
+	}
+
+	/**
+	 * @return an estimate of the bytes used by the bitsets and their values
+	 */
+	public long memoryEstimate() {
+		long bytes = memoryEstimate(regions) + memoryEstimate(languages) + memoryEstimate(originals);
+		for (BitSet bits : rows.values()) {
+			// the values of a combination are those of the facets
+			bytes += 150 + bits.size() / 8;
+		}
+		return bytes;
+	}
+
+	private static long memoryEstimate(Map<String, BitSet> facet) {
+		long bytes = 0;
+		for (Map.Entry<String, BitSet> entry : facet.entrySet()) {
+			bytes += 100 + 2L * entry.getKey().length() + entry.getValue().size() / 8;
+		}
+		return bytes;
+	}
+
+}
@@ -2,6 +2,7 @@ package com.moviefinder.util;
 
 import java.util.List;
 import java.util.Set;
+import java.util.function.Consumer;
 
 import com.moviefinder.exception.KeyAlreadyPresentException;
 
@@ -45,6 +46,28 @@ public interface Trie<T> {
      */
     public Set<T> prefixSearch(T prefix);
     
+    /**
+     * Search for the keys that start with given prefix, stopping as soon as limit of them are found.
+     * 
+     * @param prefix The prefix for which keys need to be search
+     * @param limit The maximum number of keys to return
+     * @return At most limit values those key start with the given prefix
+     * @throws IllegalArgumentException if limit is not positive
+     */
+    public Set<T> prefixSearch(T prefix, int limit);
+    
+    /**
+     * Same as {@link #prefixSearch(Object, int)}, every key is passed to the consumer as soon as
+     * it is found, nothing is collected.
+     * 
+     * @param prefix The prefix for which keys need to be search
+     * @param limit The maximum number of keys to pass to the consumer
+     * @param consumer Receives the keys, in the order prefixSearch returns them
+     * @return The number of keys passed to the consumer
+     * @throws IllegalArgumentException if limit is not positive
+     */
+    public int prefixSearch(T prefix, int limit, Consumer<T> consumer);
+    
     
     /**
      * Search for all the keys that start or contains with given key. 
@@ -54,9 +77,42 @@ public interface Trie<T> {
      */
     public Set<T> search(T key);
     
+    /**
+     * Search for the keys that start or contains with given key, stopping the traversal as soon
+     * as limit of them are found.
+     * 
+     * @param key The key for which keys need to be search
+     * @param limit The maximum number of keys to return
+     * @return At most limit values those key start with or contain the given key
+     * @throws IllegalArgumentException if limit is not positive
+     */
+    public Set<T> search(T key, int limit);
+    
+    /**
+     * Typo tolerant search for the keys whose beginning can be turned into the given key with
+     * at most maxEdits single character insertions, deletions or substitutions.
+     * 
+     * @param key The key for which keys need to be search
+     * @param maxEdits The maximum edit distance, usually 1 or 2
+     * @param limit The maximum number of keys to return
+     * @return At most limit values, the closest ones first
+     * @throws IllegalArgumentException if maxEdits is negative or limit is not positive
+     */
+    public Set<T> fuzzySearch(T key, int maxEdits, int limit);
+    
     /**
      * Clears the trie.
      */
     public void clear();
 
+    /**
+     * @return the number of nodes, root included
+     */
+    public int nodeCount();
+
+    /**
+     * @return an estimate of the bytes used by the nodes, the values themselves not included
+     */
+    public long memoryEstimate();
+
 }
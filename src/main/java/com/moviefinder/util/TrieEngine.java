@@ -0,0 +1,51 @@
+package com.moviefinder.util;
+
+/**
+ * The {@link Trie} implementations the movie titles can be indexed with,
+ * chosen with the moviefinder.trie.engine property.
+ */
+public enum TrieEngine {
+
+	/**
+	 * {@link TrieImpl}, a node object with a HashMap of children per character
+	 */
+	HASHMAP {
+		@Override
+		public Trie<String> create() {
+			return new TrieImpl();
+		}
+	},
+
+	/**
+	 * {@link CompactTrie}, the nodes are laid out in flat primitive arrays
+	 */
+	COMPACT {
+		@Override
+		public Trie<String> create() {
+			return new CompactTrie();
+		}
+	},
+
+	/**
+	 * {@link ShardedTrie}, compact tries built and searched in parallel, as many as processors
+	 */
+	SHARDED {
+		@Override
+		public Trie<String> create() {
+			return new ShardedTrie(0);
+		}
+	};
+
+	/**
+	 * @return a new empty trie of this engine
+	 */
+	public abstract Trie<String> create();
+
+	/**
+	 * Resolves the engine from its configured name, case insensitive.
+	 */
+	public static TrieEngine of(String name) {
+		return valueOf(name.trim().toUpperCase());
+	}
+
+}
@@ -3,6 +3,7 @@ package com.moviefinder.util;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Deque;
 import java.util.Formatter;
 import java.util.HashMap;
@@ -13,30 +14,54 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
 
 /**
  * Trie implementation of String. For searching a String from the bunch of strings stored in 
  * trie tree.
+ * Searches keep their state local to the call and never modify the trie, so once it is built and
+ * published any number of threads can search it without locking. Inserts must not run concurrently
+ * with searches.
+ * Complete strings are numbered in insertion order and kept once in an array, a node ending one only holding
+ * its id (see {@link NumberedTrie}). They are folded as they are matched (see {@link CaseFolding}), and the
+ * searches walk the arrays of children of the nodes with lists reused by the thread, so that they allocate
+ * little besides their result.
  * @author pankaj.chaswal
  *
  */
-public final class TrieImpl implements Trie<String>{
+public final class TrieImpl implements NumberedTrie {
 
 	/**
 	 * Empty root node
 	 */
 	private TrieNode<String> root = new TrieNode<String>(null, null);
+
+	/**
+	 * Rough size of a node: the node itself, its HashMap of children with the default table, its array
+	 * of children, and its entry in the map and the array of its parent.
+	 */
+	private static final int NODE_BYTES = 216;
+
+	private static final int NONE = -1;
+
+	private int nodeCount = 1;
+
+	/**
+	 * Complete strings by id
+	 */
+	private String[] keys = new String[16];
+	private int keyCount;
+
+	@SuppressWarnings("rawtypes")
+	private static final TrieNode[] NO_CHILDREN = new TrieNode[0];
 	
-	private static TrieImpl instance = new TrieImpl();
+	private static volatile TrieImpl instance = new TrieImpl();
 	
-	//private constructor
-	private TrieImpl() {
+	//package private constructor, other instances are created through TrieEngine
+	TrieImpl() {
 		
 	}
-	/**
-	 * Set of nodes which represents the matching node found during a key search
-	 */
-	private Set<TrieNode<String>> nodesFound = new LinkedHashSet<>();
 	
 	// Only once instance is kept per classloader
 	public static TrieImpl getInstance() {
@@ -67,15 +92,88 @@ public final class TrieImpl implements Trie<String>{
 	}
 
 	
+	/**
+	 * Empties this trie. The shared instance is left in place, readers holding it keep a valid trie.
+	 */
 	@Override
 	public void clear() {
-		instance = null;
-		instance = new TrieImpl();
+		root = new TrieNode<String>(null, null);
+		nodeCount = 1;
+		keys = new String[16];
+		keyCount = 0;
+	}
+
+	@Override
+	public int size() {
+		return keyCount;
+	}
+
+	@Override
+	public String value(int id) {
+		if (id < 0 || id >= keyCount) {
+			throw new IndexOutOfBoundsException("Invalid id " + id);
+		}
+		return keys[id];
+	}
+
+	@Override
+	public int nodeCount() {
+		return nodeCount;
+	}
+
+	/**
+	 * Nodes are objects holding a HashMap each, about {@value #NODE_BYTES} bytes per node, plus the array
+	 * of the complete strings.
+	 */
+	@Override
+	public long memoryEstimate() {
+		return (long) NODE_BYTES * nodeCount + 4L * keys.length;
+	}
+
+	/**
+	 * Work lists of the searches of a thread, reused from one search to the next, and cleared after
+	 * every search so that they do not hold the nodes of a trie which is not searched anymore.
+	 */
+	private static final class Buffers {
+
+		private List<TrieNode<String>> nodesFound = new ArrayList<>();
+		private List<TrieNode<String>> currentNodes = new ArrayList<>();
+		private final Deque<TrieNode<String>> stack = new ArrayDeque<>();
+		private char[] letters = new char[64];
+		private int[][] rows = new int[64][];
+
+		/**
+		 * @return the row of the fuzzy search at depth, of at least width distances
+		 */
+		int[] row(int depth, int width) {
+			if (depth == rows.length) {
+				rows = Arrays.copyOf(rows, depth << 1);
+			}
+			if (rows[depth] == null || rows[depth].length < width) {
+				rows[depth] = new int[Math.max(width, 64)];
+			}
+			return rows[depth];
+		}
+
+		void swapNodes() {
+			List<TrieNode<String>> swapped = currentNodes;
+			currentNodes = nodesFound;
+			nodesFound = swapped;
+			nodesFound.clear();
+		}
+
+		void clear() {
+			nodesFound.clear();
+			currentNodes.clear();
+			stack.clear();
+		}
 	}
 
+	private static final ThreadLocal<Buffers> buffers = ThreadLocal.withInitial(Buffers::new);
+
 	/**
      * Generates a list of all words in the corpus that begin with the given
-     * prefix.
+     * prefix, ignoring case. The words are returned as they were inserted.
      * 
      * @param prefix
      *            the prefix to autocomplete
@@ -84,18 +182,68 @@ public final class TrieImpl implements Trie<String>{
      */
 	@Override
 	public Set<String> prefixSearch(String prefix) {
+		return prefixSearch(prefix, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Same as {@link #prefixSearch(String)}, the iteration stops once limit words are found.
+	 */
+	@Override
+	public Set<String> prefixSearch(String prefix, int limit) {
+		checkLimit(limit);
 		Set<String> suggestions = new LinkedHashSet<String>();
         TrieNode<String> node = findNode(prefix);
         if (node == null) {
             return suggestions;
         }
-        Iterator<String> iterator = new TrieIterator(node, prefix);
-        while (iterator.hasNext()) {
+        TrieIterator iterator = new TrieIterator(node);
+        while (iterator.hasNext() && suggestions.size() < limit) {
             suggestions.add(iterator.next());
         }
+        SearchCounter.add(prefix.length() + iterator.visited);
         return suggestions;
 	}
 
+	/**
+	 * Same as {@link #prefixSearch(String, int)}, the words are passed to the consumer as the
+	 * {@link TrieIterator} reaches them.
+	 */
+	@Override
+	public int prefixSearch(String prefix, int limit, Consumer<String> consumer) {
+		checkLimit(limit);
+		TrieNode<String> node = findNode(prefix);
+		if (node == null) {
+			return 0;
+		}
+		int count = 0;
+		TrieIterator iterator = new TrieIterator(node);
+		while (iterator.hasNext() && count < limit) {
+			consumer.accept(iterator.next());
+			count++;
+		}
+		SearchCounter.add(prefix.length() + iterator.visited);
+		return count;
+	}
+
+	@Override
+	public int prefixSearchIds(String prefix, int limit, IntPredicate filter, IntPredicate sink) {
+		checkLimit(limit);
+		TrieNode<String> node = findNode(prefix);
+		if (node == null) {
+			return 0;
+		}
+		int count = 0;
+		TrieIterator iterator = new TrieIterator(node);
+		while (iterator.hasNext() && count < limit) {
+			int id = iterator.nextId();
+			if (filter.test(id) && sink.test(id)) {
+				count++;
+			}
+		}
+		SearchCounter.add(prefix.length() + iterator.visited);
+		return count;
+	}
+
 	/**
 	 * It first checks if the String is already present in the trie. If it is present
 	 * it throws {@link KeyAlreadyPresentException} else
@@ -134,39 +282,56 @@ public final class TrieImpl implements Trie<String>{
 	private void insert(String key, String value) {
 		TrieNode<String> currentNode = root;
 		for (int i = 0; i < key.length(); ++i) {
+			// boxed once, from the cache of Character for the ASCII letters
 			Character letter = Character.toLowerCase(key.charAt(i));
-			if (currentNode.childs.get(letter) == null) {
-				currentNode.key = value.substring(0, i);
-				if(letter.equals(' ')) {
+			TrieNode<String> child = currentNode.childs.get(letter);
+			if (child == null) {
+				if(letter == ' ') {
 					currentNode.wordEnds = true;
 				}
-				currentNode.childs.put(letter, new TrieNode<String>(letter, currentNode));
+				child = new TrieNode<String>(letter, currentNode);
+				currentNode.addChild(child);
+				nodeCount++;
 			}
 
-			currentNode = currentNode.childs.get(letter);
+			currentNode = child;
+		}
+		if (currentNode.sentenceEnds) {
+			keys[currentNode.value] = value;
+			return;
+		}
+		if (keyCount == keys.length) {
+			keys = Arrays.copyOf(keys, keyCount << 1);
 		}
 		currentNode.sentenceEnds = true;
-		currentNode.key = value;
+		currentNode.value = keyCount;
+		keys[keyCount++] = value;
 	}
 
 	/**
-	 * A recursive method to iterate the trie.
+	 * A recursive method to iterate the trie. Records in nodesFound the closest descendants
+	 * of node holding the character.
 	 * @param character
 	 * @param node
+	 * @param nodesFound
+	 * @param budget stops the walk once exhausted
+	 * @return the number of nodes visited
 	 */
-	private void checkNode(Character character, TrieNode<String> node, String key) {
-		List<TrieNode<String>> children = new ArrayList<>();
-		children.addAll(node.childs.values());
-		TrieNode<String> presentNode = (TrieNode<String>)node.childs.get(character);
-		if (presentNode != null) {
-			if(Objects.nonNull(presentNode.key)){
-				nodesFound.add(presentNode);
-				children.remove(presentNode);
+	private int checkNode(char character, TrieNode<String> node, List<TrieNode<String>> nodesFound,
+			SearchBudget budget) {
+		int visited = 0;
+		for (TrieNode<String> child : node.children) {
+			if (!budget.step()) {
+				break;
+			}
+			visited++;
+			if (child.character == character) {
+				nodesFound.add(child);
+			} else {
+				visited += checkNode(character, child, nodesFound, budget);
 			}
 		}
-		for (TrieNode<String> child : children) {
-			checkNode(character, child, key);
-		}
+		return visited;
 	}
 
 	/**
@@ -177,51 +342,174 @@ public final class TrieImpl implements Trie<String>{
 	 * 
 	 */
 	public Set<String> search(String key) {
+		return search(key, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Same as {@link #search(String)}, the leaves below the matching nodes are visited one at a
+	 * time and the traversal stops as soon as limit of them match, so the cost of collecting the
+	 * results depends on limit rather than on the size of the matching subtrees. A short key walks
+	 * most of the trie for every character, the walk stops once the {@link SearchBudget} of the thread
+	 * is exhausted and the strings found so far are returned.
+	 */
+	@Override
+	public Set<String> search(String key, int limit) {
+		checkLimit(limit);
 		Set<String> foundNodes = new LinkedHashSet<>();
 		if(Objects.isNull(key) || key.isEmpty()) {
-			foundNodes.add(root.key);
+			// the value of the root, which never ends a string
+			foundNodes.add(null);
 			return foundNodes;
 		}
-		nodesFound.clear();
-		nodesFound.add(root);
+		/*
+		 * Nodes matching the characters read so far, in lists of the thread so that concurrent
+		 * searches do not share any state. The matches of one character never contain each other,
+		 * so there is no duplicate to remove.
+		 */
+		Buffers buffers = TrieImpl.buffers.get();
+		buffers.nodesFound.add(root);
+		SearchBudget budget = SearchBudget.current();
 		int length = key.length();
-		//Keep track of the nodes to be iterated over
-		List<TrieNode<String>> currentNodes = new ArrayList<>();
+		int visited = 0;
 
 		for (int i = 0; i < length; i++) {
-			currentNodes.clear();
-			currentNodes.addAll(nodesFound);
-			nodesFound.clear();
-			for (TrieNode<String> node : currentNodes) {
-				checkNode(Character.toLowerCase(key.charAt(i)), node, key);
+			//Keep track of the nodes to be iterated over
+			buffers.swapNodes();
+			char letter = Character.toLowerCase(key.charAt(i));
+			for (int j = 0; j < buffers.currentNodes.size(); j++) {
+				visited += checkNode(letter, buffers.currentNodes.get(j), buffers.nodesFound, budget);
 			}
 		}
 		/*
-		 * Iterate over the matching nodes and record the leaf value, which is the complete string
+		 * Iterate over the matching nodes and record the leaf value, which is the complete string,
+		 * if its folded form starts with the key less its last two characters or contains the key
 		 */
-		for (TrieNode<String> node : nodesFound) {
-			for (TrieNode<String> leaf : node.getChildrens()) {
-				String keySubstring = null;
-				if(key.length()>2) {
-					keySubstring = key.substring(0, key.length()-2);
-				}else {
-					keySubstring = key;
-				}
-				if(leaf.key.toLowerCase().startsWith(keySubstring.toLowerCase())) {
-					foundNodes.add((String) leaf.key);
-				}else if(leaf.key.toLowerCase().contains(key.toLowerCase())) {
-					foundNodes.add((String) leaf.key);
-				}
-			}
+		String folded = CaseFolding.fold(key);
+		int prefixLength = key.length() > 2 ? key.length() - 2 : key.length();
+		List<TrieNode<String>> nodesFound = buffers.nodesFound;
+		for (int j = 0; j < nodesFound.size() && foundNodes.size() < limit; j++) {
+			visited += collectLeaves(nodesFound.get(j), folded, prefixLength, foundNodes, limit, budget);
 		}
+		buffers.clear();
+		SearchCounter.add(visited);
 		return foundNodes;
 	}
+
+	/**
+	 * Returns the complete strings whose beginning is at most maxEdits insertions, deletions or
+	 * substitutions away from the key, ignoring case. The trie is walked depth first while keeping
+	 * the Levenshtein distances between the key prefixes and the path of the current node, which
+	 * is the state of a Levenshtein automaton of the key. A branch is left as soon as none of the
+	 * distances is within maxEdits, and every string below a node within maxEdits of the whole key
+	 * matches. The strings needing fewer edits are returned first.
+	 */
+	@Override
+	public Set<String> fuzzySearch(String key, int maxEdits, int limit) {
+		checkLimit(limit);
+		if (maxEdits < 0) {
+			throw new IllegalArgumentException("Invalid edit distance " + maxEdits);
+		}
+		Set<String> foundNodes = new LinkedHashSet<>();
+		if(Objects.isNull(key) || key.isEmpty()) {
+			return foundNodes;
+		}
+		Buffers buffers = TrieImpl.buffers.get();
+		int length = key.length();
+		if (buffers.letters.length < length) {
+			buffers.letters = new char[length];
+		}
+		char[] letters = buffers.letters;
+		int[] row = buffers.row(0, length + 1);
+		row[0] = 0;
+		for (int i = 0; i < length; i++) {
+			letters[i] = Character.toLowerCase(key.charAt(i));
+			row[i + 1] = i + 1;
+		}
+		SearchBudget budget = SearchBudget.current();
+		int visited = 0;
+		for (int edits = 0; edits <= maxEdits && foundNodes.size() < limit; edits++) {
+			visited += fuzzyCheckNode(root, 0, letters, length, buffers, edits, foundNodes, limit, budget);
+		}
+		buffers.clear();
+		SearchCounter.add(visited);
+		return foundNodes;
+	}
+
+	/**
+	 * Step of {@link #fuzzySearch(String, int, int)}, the row of depth in the buffers holds the distances
+	 * between the prefixes of the key and the path from the root to node, which has depth characters.
+	 *
+	 * @return the number of nodes visited
+	 */
+	private int fuzzyCheckNode(TrieNode<String> node, int depth, char[] letters, int length, Buffers buffers,
+			int maxEdits, Set<String> foundNodes, int limit, SearchBudget budget) {
+		int[] row = buffers.rows[depth];
+		if (row[length] <= maxEdits) {
+			return collectLeaves(node, null, 0, foundNodes, limit, budget);
+		}
+		int visited = 1;
+		for (TrieNode<String> child : node.children) {
+			if (foundNodes.size() >= limit || !budget.step()) {
+				break;
+			}
+			int[] next = buffers.row(depth + 1, length + 1);
+			// the row of depth is left in place when the rows grow
+			row = buffers.rows[depth];
+			next[0] = row[0] + 1;
+			int min = next[0];
+			for (int i = 1; i <= length; i++) {
+				int substitution = row[i - 1] + (letters[i - 1] == child.character ? 0 : 1);
+				next[i] = Math.min(substitution, Math.min(row[i], next[i - 1]) + 1);
+				min = Math.min(min, next[i]);
+			}
+			if (min <= maxEdits) {
+				visited += fuzzyCheckNode(child, depth + 1, letters, length, buffers, maxEdits, foundNodes, limit, budget);
+			}
+		}
+		return visited;
+	}
+
+	/**
+	 * Walks the subtree of node depth first and records the complete strings, until limit strings are
+	 * found. With a folded key, only the strings whose folded form starts with its first prefixLength
+	 * characters or contains it are recorded.
+	 *
+	 * @param folded the folded key, null to record every string
+	 * @param budget stops the walk once exhausted
+	 * @return the number of nodes visited
+	 */
+	private int collectLeaves(TrieNode<String> node, String folded, int prefixLength, Set<String> foundNodes,
+			int limit, SearchBudget budget) {
+		int visited = 0;
+		Deque<TrieNode<String>> stack = buffers.get().stack;
+		stack.clear();
+		stack.push(node);
+		while (!stack.isEmpty() && foundNodes.size() < limit && budget.step()) {
+			TrieNode<String> leaf = stack.pop();
+			visited++;
+			if (leaf.sentenceEnds && (folded == null || CaseFolding.startsWith(keys[leaf.value], folded, prefixLength)
+					|| CaseFolding.contains(keys[leaf.value], folded))) {
+				foundNodes.add(keys[leaf.value]);
+			}
+			for (TrieNode<String> child : leaf.children) {
+				stack.push(child);
+			}
+		}
+		stack.clear();
+		return visited;
+	}
+
+	private static void checkLimit(int limit) {
+		if (limit < 1) {
+			throw new IllegalArgumentException("Invalid limit " + limit);
+		}
+	}
 	
 	protected TrieNode<String> findNode(String key) {
         TrieNode<String> node = root;
         int len = key.length();
         for (int i = 0; i < len; i++) {
-            Character c = key.charAt(i);
+            Character c = Character.toLowerCase(key.charAt(i));
             node = node.childs.get(c);
             if (node == null) {
                 return null;
@@ -285,10 +573,19 @@ public final class TrieImpl implements Trie<String>{
 		 * reference to next node as the value.The 
 		 */
 		protected Map<Character, TrieNode<T>> childs = new HashMap<>();
+
+		/**
+		 * The values of childs, in the order of the map, walked by the searches without an iterator
+		 */
+		protected TrieNode<T>[] children = noChildren();
 		protected int id;
 		protected boolean wordEnds;
 		protected boolean sentenceEnds;
-		protected String key;
+
+		/**
+		 * Id of the complete string the node ends, -1 for the other nodes
+		 */
+		protected int value = NONE;
 		protected Character character;
 		protected TrieNode<T> parent;
 
@@ -300,6 +597,17 @@ public final class TrieImpl implements Trie<String>{
 			this.parent = parent;
 		}
 
+		@SuppressWarnings("unchecked")
+		private TrieNode<T>[] noChildren() {
+			return (TrieNode<T>[]) NO_CHILDREN;
+		}
+
+		@SuppressWarnings("unchecked")
+		void addChild(TrieNode<T> child) {
+			childs.put(child.character, child);
+			children = childs.values().toArray((TrieNode<T>[]) new TrieNode<?>[childs.size()]);
+		}
+
 		public List<TrieNode<T>> getChildrens() {
 			List<TrieNode<T>> tmpList = new ArrayList<>();
 			if (sentenceEnds) {
@@ -326,56 +634,69 @@ public final class TrieImpl implements Trie<String>{
 	}
 	
 	
-	 /* Pre-order iterator */
-    protected static final class TrieIterator implements Iterator<String> {
+	 /* Pre-order iterator over the complete strings, as they were inserted, or over their ids */
+    protected final class TrieIterator implements Iterator<String> {
 
-        private String next;
-        private Deque<Iterator<Entry<Character, TrieNode<String>>>> q = new ArrayDeque<>();
-        private StringBuilder sb = new StringBuilder();
+        private int next = NONE;
+        /**
+         * Nodes visited so far
+         */
+        private int visited;
+        /**
+         * Path from the start node to the current one, with the position of the next child to visit of every node
+         */
+        private TrieNode<?>[] path = new TrieNode<?>[16];
+        private int[] positions = new int[16];
+        private int depth;
+        /**
+         * Ends the iteration once exhausted
+         */
+        private final SearchBudget budget = SearchBudget.current();
 
-        public TrieIterator(TrieNode<String> node, String prefix) {
-            sb.append(prefix);
-            q.push(node.childs.entrySet().iterator());
+        public TrieIterator(TrieNode<String> node) {
+            path[0] = node;
             if (node.sentenceEnds) {
-                next = prefix;
+                next = node.value;
             } else {
                 findNext();
             }
         }
 
         private void findNext() {
-            next = null;
-            Iterator<Entry<Character, TrieNode<String>>> iterator = q.peek();
-            while (iterator != null) {
-                while (iterator.hasNext()) {
-                    Entry<Character, TrieNode<String>> e = iterator.next();
-                    char key = e.getKey();
-                    sb.append(key);
-                    TrieNode<String> node = e.getValue();
-                    iterator = node.childs.entrySet().iterator();
-                    q.push(iterator);
-                    if (node.sentenceEnds) {
-                        next = sb.toString();
-                        return;
-                    }
+            next = NONE;
+            while (depth >= 0 && budget.step()) {
+                TrieNode<?> parent = path[depth];
+                if (positions[depth] == parent.children.length) {
+                    depth--;
+                    continue;
+                }
+                TrieNode<?> node = parent.children[positions[depth]++];
+                visited++;
+                if (++depth == path.length) {
+                    path = Arrays.copyOf(path, depth << 1);
+                    positions = Arrays.copyOf(positions, depth << 1);
                 }
-                q.pop();
-                int len = sb.length();
-                if (len > 0) {
-                    sb.deleteCharAt(sb.length() - 1);
+                path[depth] = node;
+                positions[depth] = 0;
+                if (node.sentenceEnds) {
+                    next = node.value;
+                    return;
                 }
-                iterator = q.peek();
             }
         }
 
         @Override
         public boolean hasNext() {
-            return next != null;
+            return next != NONE;
         }
 
         @Override
         public String next() {
-            String ret = next;
+            return keys[nextId()];
+        }
+
+        public int nextId() {
+            int ret = next;
             findNext();
             return ret;
         }
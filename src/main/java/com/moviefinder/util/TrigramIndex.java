@@ -0,0 +1,359 @@
+package com.moviefinder.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+/**
+ * Substring index over a fixed list of titles. Every title is identified by its position in the list,
+ * and every three consecutive lower cased characters (trigram) of a title point to it through a
+ * sorted array of title ids (postings).
+ *
+ * A key of three characters or more can only be contained in the titles present in the postings of
+ * all its trigrams, so a search walks the shortest postings and looks up the others, then checks the
+ * few remaining candidates, instead of visiting every title. Every single character and pair of
+ * characters of a title points to it as well, so the postings of a shorter key are exactly the titles
+ * containing it and are read without any check. They cost about as many ids again as the trigrams.
+ *
+ * The index is immutable once built and can be searched from any number of threads.
+ */
+public final class TrigramIndex {
+
+	private static final int GRAM = 3;
+
+	/**
+	 * Fewest candidates checked in parts on a pool, fewer are checked faster than the parts are handed over
+	 */
+	static final int PARALLEL_CANDIDATES = 1 << 12;
+
+	private final String[] titles;
+
+	/**
+	 * Sorted trigrams, each packed in a long. The postings of the trigram at position i are
+	 * ids[offsets[i]] to ids[offsets[i + 1] - 1], all the postings sharing a single array.
+	 */
+	private final long[] grams;
+	private final int[] offsets;
+	private final int[] ids;
+
+	public TrigramIndex(List<String> titles) {
+		this.titles = titles.toArray(new String[titles.size()]);
+		Map<Long, IntList> builder = new HashMap<>();
+		for (int id = 0; id < this.titles.length; id++) {
+			String title = CaseFolding.fold(this.titles[id]);
+			for (int i = 0; i < title.length(); i++) {
+				for (int length = 1; length <= GRAM && i + length <= title.length(); length++) {
+					IntList postings = builder.computeIfAbsent(gram(title, i, length), gram -> new IntList());
+					if (postings.size == 0 || postings.elements[postings.size - 1] != id) {
+						postings.add(id);
+					}
+				}
+			}
+		}
+		List<Entry<Long, IntList>> entries = new ArrayList<>(builder.entrySet());
+		entries.sort(Entry.comparingByKey());
+		grams = new long[entries.size()];
+		offsets = new int[entries.size() + 1];
+		for (int i = 0; i < grams.length; i++) {
+			grams[i] = entries.get(i).getKey();
+			offsets[i + 1] = offsets[i] + entries.get(i).getValue().size;
+		}
+		ids = new int[offsets[grams.length]];
+		for (int i = 0; i < grams.length; i++) {
+			IntList postings = entries.get(i).getValue();
+			System.arraycopy(postings.elements, 0, ids, offsets[i], postings.size);
+		}
+	}
+
+	/**
+	 * Index restored from its arrays, see {@link IndexSnapshot}.
+	 */
+	TrigramIndex(String[] titles, long[] grams, int[] offsets, int[] ids) {
+		this.titles = titles;
+		this.grams = grams;
+		this.offsets = offsets;
+		this.ids = ids;
+	}
+
+	/**
+	 * @return the number of titles indexed
+	 */
+	public int size() {
+		return titles.length;
+	}
+
+	/**
+	 * @return an estimate of the bytes used by the trigrams and postings, the titles themselves not included
+	 */
+	public long memoryEstimate() {
+		return 8L * grams.length + 4L * (offsets.length + ids.length + titles.length);
+	}
+
+	/**
+	 * @return the title of the given id, its position in the list
+	 * @throws ArrayIndexOutOfBoundsException if there is no such id
+	 */
+	public String title(int id) {
+		return titles[id];
+	}
+
+	/**
+	 * @return the titles indexed, in the order of their ids
+	 */
+	public List<String> getTitles() {
+		return Collections.unmodifiableList(Arrays.asList(titles));
+	}
+
+	/*
+	 * Internal arrays, written by IndexSnapshot
+	 */
+
+	String[] titles() {
+		return titles;
+	}
+
+	long[] grams() {
+		return grams;
+	}
+
+	int[] offsets() {
+		return offsets;
+	}
+
+	int[] ids() {
+		return ids;
+	}
+
+	/**
+	 * Returns the titles containing the key, ignoring case, in the order they were indexed.
+	 * The search stops as soon as limit titles are found.
+	 *
+	 * @throws IllegalArgumentException if limit is not positive
+	 */
+	public Set<String> search(String key, int limit) {
+		Set<String> matches = new LinkedHashSet<>();
+		search(key, limit, matches::add);
+		return matches;
+	}
+
+	/**
+	 * Same as {@link #search(String, int)}, every title containing the key is offered to the sink as soon
+	 * as it is found. The titles the sink declines, by returning false, do not count towards limit.
+	 *
+	 * @return the number of titles the sink took
+	 * @throws IllegalArgumentException if limit is not positive
+	 */
+	public int search(String key, int limit, Predicate<String> sink) {
+		return searchIds(key, limit, id -> true, id -> sink.test(titles[id]));
+	}
+
+	/**
+	 * Same as {@link #search(String, int, Predicate)} among the titles whose id passes the filter, the ids
+	 * being offered to the sink instead of the titles, see {@link #title(int)}. The ids are tested before the
+	 * titles are verified. Every title scanned or candidate checked takes a step of the {@link SearchBudget}
+	 * of the thread, the search stops once it is exhausted.
+	 *
+	 * @return the number of ids the sink took
+	 * @throws IllegalArgumentException if limit is not positive
+	 */
+	public int searchIds(String key, int limit, IntPredicate filter, IntPredicate sink) {
+		return searchIds(key, limit, filter, sink, null, 1);
+	}
+
+	/**
+	 * Same as {@link #searchIds(String, int, IntPredicate, IntPredicate)}, the candidates of a key of three
+	 * characters or more being checked in parts at once on the pool once there are enough of them, each part
+	 * with its share of the {@link SearchBudget}. The ids found are offered to the sink in increasing order
+	 * on the calling thread, but the filter is tested on the threads of the pool: a sink declining some ids
+	 * can leave the limit unreached, they are better filtered.
+	 *
+	 * @param pool pool of the parts but the first one, which runs on the calling thread, null to search in one part
+	 * @return the number of ids the sink took
+	 * @throws IllegalArgumentException if limit or parts is not positive
+	 */
+	public int searchIds(String key, int limit, IntPredicate filter, IntPredicate sink, ForkJoinPool pool,
+			int parts) {
+		if (limit < 1) {
+			throw new IllegalArgumentException("Invalid limit " + limit);
+		}
+		if (parts < 1) {
+			throw new IllegalArgumentException("Invalid number of parts " + parts);
+		}
+		if (Objects.isNull(key) || key.isEmpty()) {
+			return 0;
+		}
+		int count = 0;
+		SearchBudget budget = SearchBudget.current();
+		String folded = CaseFolding.fold(key);
+		if (folded.length() < GRAM) {
+			int position = Arrays.binarySearch(grams, gram(folded, 0, folded.length()));
+			if (position < 0) {
+				return 0;
+			}
+			for (int i = offsets[position]; i < offsets[position + 1] && count < limit && budget.step(); i++) {
+				if (filter.test(ids[i]) && sink.test(ids[i])) {
+					count++;
+				}
+			}
+			return count;
+		}
+
+		// positions of the postings of every trigram of the key, the shortest first
+		int[] lists = new int[folded.length() - GRAM + 1];
+		for (int i = 0; i < lists.length; i++) {
+			int position = Arrays.binarySearch(grams, gram(folded, i, GRAM));
+			if (position < 0) {
+				return 0;
+			}
+			int j = i;
+			for (; j > 0 && length(lists[j - 1]) > length(position); j--) {
+				lists[j] = lists[j - 1];
+			}
+			lists[j] = position;
+		}
+		int from = offsets[lists[0]];
+		int to = offsets[lists[0] + 1];
+		if (pool == null || parts == 1 || to - from < PARALLEL_CANDIDATES) {
+			return scan(lists, folded, from, to, limit, filter, sink);
+		}
+
+		// the parts collect up to limit ids each, offered to the sink in the order of the parts once all have run
+		int size = (to - from + parts - 1) / parts;
+		IntList[] found = new IntList[parts];
+		SearchBudget.Share[] shares = new SearchBudget.Share[parts];
+		List<ForkJoinTask<?>> tasks = new ArrayList<>(parts - 1);
+		for (int i = 0; i < parts; i++) {
+			found[i] = new IntList();
+			shares[i] = SearchBudget.share(parts);
+		}
+		for (int i = 1; i < parts; i++) {
+			int part = i;
+			int start = Math.min(from + part * size, to);
+			tasks.add(pool.submit(() -> SearchBudget.run(shares[part],
+					() -> scan(lists, folded, start, Math.min(start + size, to), limit, filter, found[part]))));
+		}
+		SearchBudget.run(shares[0], () -> scan(lists, folded, from, Math.min(from + size, to), limit, filter, found[0]));
+		for (ForkJoinTask<?> task : tasks) {
+			task.join();
+		}
+		for (SearchBudget.Share share : shares) {
+			SearchBudget.join(share);
+		}
+		for (int i = 0; i < parts && count < limit; i++) {
+			for (int j = 0; j < found[i].size && count < limit; j++) {
+				if (sink.test(found[i].elements[j])) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Checks the candidates of the shortest postings from position from to position to, offering the titles
+	 * containing the key to the sink, up to limit.
+	 */
+	private int scan(int[] lists, String folded, int from, int to, int limit, IntPredicate filter, IntPredicate sink) {
+		SearchBudget budget = SearchBudget.current();
+		int count = 0;
+		// Lowest position in every other postings which may still hold the next candidate
+		int[] cursors = new int[lists.length];
+		for (int i = 1; i < lists.length; i++) {
+			cursors[i] = offsets[lists[i]];
+		}
+		for (int i = from; i < to && budget.step(); i++) {
+			int candidate = ids[i];
+			if (filter.test(candidate) && contains(lists, cursors, candidate) && CaseFolding.contains(titles[candidate], folded)
+					&& sink.test(candidate) && ++count >= limit) {
+				break;
+			}
+		}
+		return count;
+	}
+
+	private int length(int gram) {
+		return offsets[gram + 1] - offsets[gram];
+	}
+
+	/**
+	 * Checks that id is in all the postings but the first one, advancing the cursors past the smaller ids.
+	 * Candidates come in increasing order, so each postings is read forward only once.
+	 */
+	private boolean contains(int[] lists, int[] cursors, int id) {
+		for (int i = 1; i < lists.length; i++) {
+			int end = offsets[lists[i] + 1];
+			int position = advance(cursors[i], end, id);
+			cursors[i] = position;
+			if (position == end || ids[position] != id) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Galloping search: returns the first position from start, before end, holding an id not lower than id.
+	 */
+	private int advance(int start, int end, int id) {
+		int step = 1;
+		int low = start;
+		int high = start;
+		while (high < end && ids[high] < id) {
+			low = high + 1;
+			high += step;
+			step <<= 1;
+		}
+		high = Math.min(high, end);
+		int position = Arrays.binarySearch(ids, low, high, id);
+		return position >= 0 ? position : -position - 1;
+	}
+
+	/**
+	 * Packs the length characters from start, a trigram in the low 48 bits, a shorter gram with its length above.
+	 */
+	private static long gram(String folded, int start, int length) {
+		if (length == GRAM) {
+			return ((long) folded.charAt(start) << 32) | ((long) folded.charAt(start + 1) << 16) | folded.charAt(start + 2);
+		}
+		long gram = (long) length << 48;
+		for (int i = 0; i < length; i++) {
+			gram |= (long) folded.charAt(start + i) << (16 * (length - 1 - i));
+		}
+		return gram;
+	}
+
+	/**
+	 * Growable list of ids used while building the postings, and collecting the ids found by a part of a search.
+	 */
+	private static final class IntList implements IntPredicate {
+
+		private int[] elements = new int[4];
+		private int size;
+
+		void add(int element) {
+			if (size == elements.length) {
+				elements = Arrays.copyOf(elements, size << 1);
+			}
+			elements[size++] = element;
+		}
+
+		@Override
+		public boolean test(int element) {
+			add(element);
+			return true;
+		}
+
+	}
+
+}
@@ -0,0 +1,343 @@
+package com.moviefinder.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+/**
+ * Word index over a fixed list of titles, for the keys made of several words typed in any order. The titles
+ * are split into folded words, runs of letters and digits, and every distinct word points to the sorted ids
+ * of the titles holding it (postings), the id of a title being its position in the list as in {@link TrigramIndex}.
+ *
+ * A key matches the titles holding all its words, the last one being the beginning of a word unless the key
+ * ends with a separator: "hotel badly" and "badly hot" both find "A Badly Managed Hotel". The postings of the
+ * complete words are intersected by walking the shortest one and moving forward in the others with skip
+ * pointers, one every {@link #SKIP} entries, jumped over while they hold a lower id than the candidate. The
+ * candidates left are checked for a word starting with the last word of the key. A key of a single word
+ * being typed has no complete word, its titles are merged from the postings of all the words it starts.
+ *
+ * The index is immutable once built and can be searched from any number of threads.
+ */
+public final class WordIndex {
+
+	/**
+	 * Entries of a postings between two skip pointers
+	 */
+	static final int SKIP = 64;
+
+	private final String[] titles;
+
+	/**
+	 * Sorted words. The postings of the word at position i are ids[offsets[i]] to ids[offsets[i + 1] - 1],
+	 * all the postings sharing a single array, in which the skip pointers are implicit.
+	 */
+	private final String[] words;
+	private final int[] offsets;
+	private final int[] ids;
+
+	public WordIndex(List<String> titles) {
+		this.titles = titles.toArray(new String[titles.size()]);
+		Map<String, IntList> builder = new HashMap<>();
+		for (int id = 0; id < this.titles.length; id++) {
+			String title = CaseFolding.fold(this.titles[id]);
+			for (int start = wordStart(title, 0); start < title.length(); start = wordStart(title, start)) {
+				int end = wordEnd(title, start);
+				IntList postings = builder.computeIfAbsent(title.substring(start, end), word -> new IntList());
+				if (postings.size == 0 || postings.elements[postings.size - 1] != id) {
+					postings.add(id);
+				}
+				start = end;
+			}
+		}
+		List<Entry<String, IntList>> entries = new ArrayList<>(builder.entrySet());
+		entries.sort(Entry.comparingByKey());
+		words = new String[entries.size()];
+		offsets = new int[entries.size() + 1];
+		for (int i = 0; i < words.length; i++) {
+			words[i] = entries.get(i).getKey();
+			offsets[i + 1] = offsets[i] + entries.get(i).getValue().size;
+		}
+		ids = new int[offsets[words.length]];
+		for (int i = 0; i < words.length; i++) {
+			IntList postings = entries.get(i).getValue();
+			System.arraycopy(postings.elements, 0, ids, offsets[i], postings.size);
+		}
+	}
+
+	/**
+	 * @return the number of titles indexed
+	 */
+	public int size() {
+		return titles.length;
+	}
+
+	/**
+	 * @return the number of distinct words
+	 */
+	public int wordCount() {
+		return words.length;
+	}
+
+	/**
+	 * @return an estimate of the bytes used by the words and postings, the titles themselves not included
+	 */
+	public long memoryEstimate() {
+		long bytes = 4L * (words.length + offsets.length + ids.length + titles.length);
+		for (String word : words) {
+			bytes += 40 + 2L * word.length();
+		}
+		return bytes;
+	}
+
+	/**
+	 * @return the folded words of the value, in order
+	 */
+	public static String[] words(String value) {
+		List<String> words = new ArrayList<>();
+		for (int start = wordStart(value, 0); start < value.length(); start = wordStart(value, start)) {
+			int end = wordEnd(value, start);
+			words.add(CaseFolding.fold(value.substring(start, end)));
+			start = end;
+		}
+		return words.toArray(new String[words.size()]);
+	}
+
+	/**
+	 * @return the number of words of the value
+	 */
+	public static int countWords(String value) {
+		int count = 0;
+		for (int start = wordStart(value, 0); start < value.length(); start = wordStart(value, wordEnd(value, start))) {
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * @return whether the last word of the key is being typed, the key not ending with a separator
+	 */
+	public static boolean endsInWord(String key) {
+		return !key.isEmpty() && Character.isLetterOrDigit(key.charAt(key.length() - 1));
+	}
+
+	/**
+	 * Whether the title holds all the folded words, the last one as the beginning of a word if lastIsPrefix,
+	 * the way a key matches in {@link #search(String, int)}. Nothing is allocated.
+	 */
+	public static boolean containsWords(String title, String[] words, boolean lastIsPrefix) {
+		for (int i = 0; i < words.length; i++) {
+			if (!hasWord(title, words[i], lastIsPrefix && i == words.length - 1)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean hasWord(String title, String word, boolean prefix) {
+		for (int start = wordStart(title, 0); start < title.length(); start = wordStart(title, start)) {
+			int end = wordEnd(title, start);
+			if ((prefix ? end - start >= word.length() : end - start == word.length())
+					&& CaseFolding.matchesAt(title, start, word)) {
+				return true;
+			}
+			start = end;
+		}
+		return false;
+	}
+
+	private static int wordStart(String value, int from) {
+		while (from < value.length() && !Character.isLetterOrDigit(value.charAt(from))) {
+			from++;
+		}
+		return from;
+	}
+
+	private static int wordEnd(String value, int from) {
+		while (from < value.length() && Character.isLetterOrDigit(value.charAt(from))) {
+			from++;
+		}
+		return from;
+	}
+
+	/**
+	 * Returns the titles holding all the words of the key, the last one as the beginning of a word, in the
+	 * order they were indexed. The search stops as soon as limit titles are found.
+	 *
+	 * @throws IllegalArgumentException if limit is not positive
+	 */
+	public Set<String> search(String key, int limit) {
+		Set<String> matches = new LinkedHashSet<>();
+		search(key, limit, matches::add);
+		return matches;
+	}
+
+	/**
+	 * Same as {@link #search(String, int)}, every title matching the key is offered to the sink as soon
+	 * as it is found. The titles the sink declines, by returning false, do not count towards limit.
+	 *
+	 * @return the number of titles the sink took
+	 * @throws IllegalArgumentException if limit is not positive
+	 */
+	public int search(String key, int limit, Predicate<String> sink) {
+		return searchIds(key, limit, id -> true, id -> sink.test(titles[id]));
+	}
+
+	/**
+	 * Same as {@link #search(String, int, Predicate)} among the titles whose id passes the filter, the ids of
+	 * the titles, their positions in the list, being offered to the sink instead of the titles. The ids are
+	 * tested before the postings are advanced. Every candidate takes a step of the {@link SearchBudget} of the
+	 * thread, the search stops once it is exhausted.
+	 *
+	 * @return the number of ids the sink took
+	 * @throws IllegalArgumentException if limit is not positive
+	 */
+	public int searchIds(String key, int limit, IntPredicate filter, IntPredicate sink) {
+		if (limit < 1) {
+			throw new IllegalArgumentException("Invalid limit " + limit);
+		}
+		if (Objects.isNull(key)) {
+			return 0;
+		}
+		String[] query = words(key);
+		if (query.length == 0) {
+			return 0;
+		}
+		boolean prefix = endsInWord(key);
+		String last = query[query.length - 1];
+		int complete = prefix ? query.length - 1 : query.length;
+		if (complete == 0) {
+			return searchPrefix(last, limit, filter, sink);
+		}
+		if (prefix && !hasPrefix(last)) {
+			return 0;
+		}
+
+		// positions of the postings of every complete word, the shortest first
+		int[] lists = new int[complete];
+		for (int i = 0; i < complete; i++) {
+			int position = Arrays.binarySearch(words, query[i]);
+			if (position < 0) {
+				return 0;
+			}
+			int j = i;
+			for (; j > 0 && length(lists[j - 1]) > length(position); j--) {
+				lists[j] = lists[j - 1];
+			}
+			lists[j] = position;
+		}
+
+		// lowest position in every other postings which may still hold the next candidate
+		int[] cursors = new int[complete];
+		for (int i = 1; i < complete; i++) {
+			cursors[i] = offsets[lists[i]];
+		}
+		int count = 0;
+		SearchBudget budget = SearchBudget.current();
+		for (int i = offsets[lists[0]]; i < offsets[lists[0] + 1] && budget.step(); i++) {
+			int candidate = ids[i];
+			if (filter.test(candidate) && contains(lists, cursors, candidate) && (!prefix || hasWord(titles[candidate], last, true))
+					&& sink.test(candidate) && ++count >= limit) {
+				break;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Offers the titles holding a word starting with prefix, merging the postings of all those words in id order.
+	 * Every title found costs a pass over the cursors of the words, as many as the words starting with prefix.
+	 */
+	private int searchPrefix(String prefix, int limit, IntPredicate filter, IntPredicate sink) {
+		int low = Arrays.binarySearch(words, prefix);
+		low = low >= 0 ? low : -low - 1;
+		int high = low;
+		while (high < words.length && words[high].startsWith(prefix)) {
+			high++;
+		}
+		int[] cursors = new int[high - low];
+		for (int i = 0; i < cursors.length; i++) {
+			cursors[i] = offsets[low + i];
+		}
+		int count = 0;
+		SearchBudget budget = SearchBudget.current();
+		while (count < limit && budget.step()) {
+			int next = Integer.MAX_VALUE;
+			for (int i = 0; i < cursors.length; i++) {
+				if (cursors[i] < offsets[low + i + 1]) {
+					next = Math.min(next, ids[cursors[i]]);
+				}
+			}
+			if (next == Integer.MAX_VALUE) {
+				break;
+			}
+			for (int i = 0; i < cursors.length; i++) {
+				if (cursors[i] < offsets[low + i + 1] && ids[cursors[i]] == next) {
+					cursors[i]++;
+				}
+			}
+			if (filter.test(next) && sink.test(next)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private boolean hasPrefix(String prefix) {
+		int position = Arrays.binarySearch(words, prefix);
+		position = position >= 0 ? position : -position - 1;
+		return position < words.length && words[position].startsWith(prefix);
+	}
+
+	private int length(int word) {
+		return offsets[word + 1] - offsets[word];
+	}
+
+	/**
+	 * Checks that id is in all the postings but the first one. Candidates come in increasing order, so every
+	 * cursor only moves forward: to the next skip pointer while it holds an id not above id, then one entry
+	 * at a time.
+	 */
+	private boolean contains(int[] lists, int[] cursors, int id) {
+		for (int i = 1; i < lists.length; i++) {
+			int end = offsets[lists[i] + 1];
+			int position = cursors[i];
+			while (position + SKIP < end && ids[position + SKIP] <= id) {
+				position += SKIP;
+			}
+			while (position < end && ids[position] < id) {
+				position++;
+			}
+			cursors[i] = position;
+			if (position == end || ids[position] != id) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Growable list of ids used while building the postings.
+	 */
+	private static final class IntList {
+
+		private int[] elements = new int[4];
+		private int size;
+
+		void add(int element) {
+			if (size == elements.length) {
+				elements = Arrays.copyOf(elements, size << 1);
+			}
+			elements[size++] = element;
+		}
+
+	}
+
+}
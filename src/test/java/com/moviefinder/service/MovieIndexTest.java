@@ -0,0 +1,357 @@
+package com.moviefinder.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import com.moviefinder.model.MovieData;
+import com.moviefinder.model.SuggestionFilter;
+import com.moviefinder.util.CompactTrie;
+import com.moviefinder.util.MovieRecordStore;
+import com.moviefinder.util.OffHeapMovieDataCache;
+import com.moviefinder.util.ShardedTrie;
+import com.moviefinder.util.TitleFacets;
+import com.moviefinder.util.Trie;
+import com.moviefinder.util.TrieEngine;
+import com.moviefinder.util.TrigramIndex;
+
+public class MovieIndexTest {
+
+	private static MovieIndex index(List<String> titles) {
+		CompactTrie trie = new CompactTrie();
+		trie.insertAll(titles);
+		return new MovieIndex(trie, new TrigramIndex(titles), new MovieRecordStore());
+	}
+
+	@Test
+	public void testDeltaIsSearched() {
+		MovieIndex base = index(Arrays.asList("The Matrix", "Matrix Reloaded", "Heat"));
+		MovieIndex updated = base.withDelta(Arrays.asList("Matrix Resurrections", "The Heat"));
+
+		assertEquals(new LinkedHashSet<>(Arrays.asList("Matrix Reloaded", "Matrix Resurrections", "The Matrix")),
+				updated.search("matrix", 10));
+		assertEquals(new LinkedHashSet<>(Arrays.asList("Heat", "The Heat")), updated.search("heat", 10));
+		assertEquals(new LinkedHashSet<>(Arrays.asList("Matrix Reloaded", "Matrix Resurrections")),
+				updated.fuzzySearch("matrx", 1, 10));
+		assertEquals(Collections.singleton("Matrix Reloaded"), updated.search("matrix", 1));
+
+		// the previous index is unchanged
+		assertEquals(new LinkedHashSet<>(Arrays.asList("Matrix Reloaded", "The Matrix")), base.search("matrix", 10));
+	}
+
+	@Test
+	public void testDeltasAccumulate() {
+		MovieIndex index = index(Arrays.asList("Heat")).withDelta(Arrays.asList("Alien")).withDelta(Arrays.asList("Aliens"));
+		assertEquals(Arrays.asList("Alien", "Aliens"), index.getDeltaTitles());
+		assertEquals(new LinkedHashSet<>(Arrays.asList("Alien", "Aliens")), index.search("alien", 10));
+	}
+
+	@Test
+	public void testWordsInAnyOrderComeLast() {
+		MovieIndex index = index(Arrays.asList("Hotel Badly Run", "A Badly Run Hotel", "Heat"))
+				.withDelta(Arrays.asList("Run, Hotel, Run"));
+		assertEquals(new LinkedHashSet<>(Arrays.asList("A Badly Run Hotel", "Hotel Badly Run", "Run, Hotel, Run")),
+				index.search("run hot", 10));
+		List<String> streamed = new ArrayList<>();
+		assertEquals(3, index.stream("run hot", 10, streamed::add));
+		assertEquals(new ArrayList<>(index.search("run hot", 10)), streamed);
+		// a single word is only searched as a substring
+		assertTrue(index.search("tel", 10).containsAll(Arrays.asList("Hotel Badly Run", "A Badly Run Hotel")));
+		assertTrue(index.search("otel run", 10).isEmpty());
+	}
+
+	@Test
+	public void testFilteredSearch() {
+		List<String> titles = Arrays.asList("The Matrix", "Matrix Reloaded", "Heat", "Not the Matrix");
+		TitleFacets facets = new TitleFacets();
+		facets.add(0, MovieData.builder().region("US").language("en").isOriginalTitle("1").build());
+		facets.add(1, MovieData.builder().region("FR").language("fr").isOriginalTitle("0").build());
+		facets.add(1, MovieData.builder().region("US").language("en").isOriginalTitle("0").build());
+		facets.add(3, MovieData.builder().region("US").language("\\N").isOriginalTitle("0").build());
+		for (TrieEngine engine : TrieEngine.values()) {
+			Trie<String> trie = engine == TrieEngine.SHARDED ? new ShardedTrie(2) : engine.create();
+			trie.insertAll(titles);
+			TitleFacets deltaFacets = new TitleFacets();
+			deltaFacets.add(0, MovieData.builder().region("us").language("en").isOriginalTitle("1").build());
+			MovieIndex index = new MovieIndex(trie, new TrigramIndex(titles), new MovieRecordStore(), facets)
+					.withDelta(Arrays.asList("Matrix Resurrections", "The Matrix 4"), deltaFacets);
+
+			SuggestionFilter us = SuggestionFilter.builder().region("us").build();
+			assertEquals(engine.name(), new LinkedHashSet<>(Arrays.asList("Matrix Reloaded", "Matrix Resurrections",
+					"The Matrix", "Not the Matrix")), index.search("matrix", 10, us));
+			assertEquals(new LinkedHashSet<>(Arrays.asList("Matrix Reloaded", "Matrix Resurrections", "The Matrix")),
+					index.search("matrix", 10, SuggestionFilter.builder().region("US").language("EN").build()));
+			assertEquals(Collections.singleton("Matrix Reloaded"),
+					index.search("matrix", 10, SuggestionFilter.builder().region("FR").isOriginalTitle("0").build()));
+			assertTrue(index.search("matrix", 10, SuggestionFilter.builder().region("XX").build()).isEmpty());
+			assertEquals(Collections.singleton("Matrix Reloaded"), index.search("matrix", 1, us));
+			assertEquals(index.search("matrix", 10), index.search("matrix", 10, SuggestionFilter.builder().build()));
+		}
+	}
+
+	/**
+	 * A delta holding titles which only differ by case is not numbered like its substring index, its titles
+	 * starting with the key are found in the substring index.
+	 */
+	@Test
+	public void testFilteredDeltaOfTitlesDifferingByCase() {
+		List<String> delta = Arrays.asList("Alien", "ALIEN", "Aliens", "Alien Nation");
+		TitleFacets deltaFacets = new TitleFacets();
+		for (int id = 0; id < delta.size(); id++) {
+			deltaFacets.add(id, MovieData.builder().region(id == 1 ? "FR" : "US").build());
+		}
+		MovieIndex index = index(Arrays.asList("Heat")).withDelta(delta, deltaFacets);
+		assertEquals(new LinkedHashSet<>(Arrays.asList("Alien", "Aliens", "Alien Nation")),
+				index.search("alien", 10, SuggestionFilter.builder().region("US").build()));
+		assertEquals(Collections.singleton("Aliens"),
+				index.search("aliens", 10, SuggestionFilter.builder().region("US").build()));
+		assertEquals(Collections.singleton("Alien Nation"),
+				index.search("alien n", 10, SuggestionFilter.builder().region("US").build()));
+		assertEquals(Collections.singleton("ALIEN"),
+				index.search("alien", 10, SuggestionFilter.builder().region("FR").build()));
+	}
+
+	@Test
+	public void testMerged() {
+		MovieIndex base = index(Arrays.asList("The Matrix", "Heat"));
+		MovieIndex merged = base.withDelta(Arrays.asList("Matrix Reloaded")).merged();
+
+		assertTrue(merged.getDeltaTitles().isEmpty());
+		assertEquals(Arrays.asList("The Matrix", "Heat", "Matrix Reloaded"), merged.getSubstringIndex().getTitles());
+		assertEquals(new LinkedHashSet<>(Arrays.asList("Matrix Reloaded", "The Matrix")), merged.search("matrix", 10));
+		// the base trie is copied, not modified
+		assertTrue(base.getTrie().prefixSearch("matrix").isEmpty());
+	}
+
+	@Test
+	public void testSearchFromWalkedNode() {
+		MovieIndex index = index(Arrays.asList("The Matrix", "Matrix Reloaded", "Heat", "The Heat"))
+				.withDelta(Arrays.asList("The Thing"));
+		String key = "the h";
+		int node = CompactTrie.ROOT;
+		for (int i = 1; i <= key.length(); i++) {
+			node = index.walk(node, key.substring(0, i), i - 1);
+			assertEquals(index.search(key.substring(0, i), 10), index.search(key.substring(0, i), 10, node));
+		}
+		assertEquals(CompactTrie.NONE, index.walk(node, "the hx", key.length()));
+		assertEquals(Collections.singleton("The Heat"), index.search("the h", 10, node));
+	}
+
+	@Test(expected=UnsupportedOperationException.class)
+	public void testWalkNeedsCompactTrie() {
+		MovieIndex.empty().walk(CompactTrie.ROOT, "the", 0);
+	}
+
+	@Test
+	public void testStreamMatchesSearch() {
+		MovieIndex index = index(Arrays.asList("The Matrix", "Matrix Reloaded", "Heat", "Matrix"))
+				.withDelta(Arrays.asList("Matrix Resurrections", "Not the Matrix"));
+		for (String key : Arrays.asList("matrix", "the", "heat", "ma", "x", "", "nothing")) {
+			List<String> streamed = new ArrayList<>();
+			int count = index.stream(key, 10, streamed::add);
+			assertEquals(streamed.size(), count);
+			assertEquals(new ArrayList<>(index.search(key, 10)), streamed);
+		}
+		List<String> streamed = new ArrayList<>();
+		assertEquals(3, index.stream("matrix", 3, streamed::add));
+		assertEquals(new ArrayList<>(index.search("matrix", 3)), streamed);
+	}
+
+	@Test
+	public void testIdSearchMatchesStream() {
+		List<String> titles = new ArrayList<>();
+		List<String> delta = new ArrayList<>();
+		for (int i = 0; i < 40; i++) {
+			titles.add((i % 3 == 0 ? "Matrix " : "The Matrix ") + i);
+			delta.add(i % 2 == 0 ? "Matrix Delta " + i : "Delta Matrix " + i);
+		}
+		for (TrieEngine engine : TrieEngine.values()) {
+			Trie<String> trie = engine == TrieEngine.SHARDED ? new ShardedTrie(2) : engine.create();
+			trie.insertAll(titles);
+			MovieIndex index = new MovieIndex(trie, new TrigramIndex(titles), new MovieRecordStore()).withDelta(delta);
+			for (int limit : new int[] { 1, 16, 17, 50, 100 }) {
+				List<String> streamed = new ArrayList<>();
+				index.stream("matrix", limit, streamed::add);
+				assertEquals(engine + " " + limit, new LinkedHashSet<>(streamed), index.search("matrix", limit));
+				assertEquals(Math.min(limit, 80), index.search("matrix", limit).size());
+			}
+		}
+	}
+
+	@Test
+	public void testSearchWithoutIdsFillsTheLimit() {
+		List<String> titles = Arrays.asList("Matrix", "Matrix Reloaded", "The Matrix", "Not the Matrix", "Heat");
+		Trie<String> trie = new ShardedTrie(2);
+		trie.insertAll(titles);
+		MovieIndex index = new MovieIndex(trie, new TrigramIndex(titles), new MovieRecordStore())
+				.withDelta(Arrays.asList("Matrix Resurrections"));
+		for (int limit = 1; limit <= 6; limit++) {
+			assertEquals(Math.min(limit, 5), index.search("matrix", limit).size());
+			assertEquals(index.search("matrix", 6).stream().limit(limit).collect(Collectors.toList()),
+					new ArrayList<>(index.search("matrix", limit)));
+		}
+	}
+
+	@Test
+	public void testMovieDataAreReadFromTheRecords() {
+		MovieRecordStore records = new MovieRecordStore();
+		Map<String, Integer> titleRows = new HashMap<>();
+		titleRows.put("heat", records.add(MovieData.builder().titleId("tt0113277").ordering(1).title("Heat").build()));
+		List<String> titles = Arrays.asList("Heat");
+		MovieIndex base = new MovieIndex(new CompactTrie(), new TrigramIndex(titles), records, new TitleFacets(),
+				titleRows);
+		assertEquals("tt0113277", base.getMovieData("heat").getTitleId());
+		assertTrue(base.hasMovieData("heat"));
+		assertEquals(null, base.getMovieData("alien"));
+
+		MovieRecordStore deltaRecords = records.copy();
+		Map<String, Integer> deltaRows = new HashMap<>();
+		deltaRows.put("alien", deltaRecords.add(MovieData.builder().titleId("tt0078748").ordering(1).title("Alien").build()));
+		deltaRows.put("heat", deltaRecords.add(MovieData.builder().titleId("tt0113277").ordering(2).title("Heat").build()));
+		MovieIndex updated = base.withDelta(Arrays.asList("Alien"), new TitleFacets(), deltaRecords, deltaRows);
+		assertEquals("tt0078748", updated.getMovieData("alien").getTitleId());
+		assertEquals(2, updated.getMovieData("heat").getOrdering());
+		assertEquals(1, updated.merged().getMovieData("alien").getId());
+		// the previous index still reads its own rows
+		assertEquals(1, base.getMovieData("heat").getOrdering());
+		assertFalse(base.hasMovieData("alien"));
+	}
+
+	/**
+	 * Every index reads its own off heap store, a delta putting its rows to a copy of it.
+	 */
+	@Test
+	public void testMovieDataAreReadOffHeap() {
+		OffHeapMovieDataCache movieData = new OffHeapMovieDataCache();
+		movieData.put("heat", MovieData.builder().titleId("tt0113277").ordering(1).title("Heat").region("US").build());
+		movieData.add(MovieData.builder().titleId("tt0113277").ordering(2).title("Heat").region("FR").build());
+		List<String> titles = Arrays.asList("Heat");
+		CompactTrie trie = new CompactTrie();
+		trie.insertAll(titles);
+		MovieIndex base = new MovieIndex(trie, new TrigramIndex(titles), new TitleFacets(), movieData);
+		assertEquals("US", base.getMovieData("heat").getRegion());
+		assertEquals(2, base.getVariants("tt0113277").size());
+		assertEquals(0, base.getRecords().size());
+
+		OffHeapMovieDataCache deltaMovieData = base.getOffHeapMovieData().copy();
+		deltaMovieData.put("alien", MovieData.builder().titleId("tt0078748").ordering(1).title("Alien").build());
+		deltaMovieData.put("heat", MovieData.builder().titleId("tt0113277").ordering(3).title("Heat").region("DE").build());
+		MovieIndex updated = base.withDelta(Arrays.asList("Alien"), new TitleFacets(), deltaMovieData);
+		assertEquals("tt0078748", updated.getMovieData("alien").getTitleId());
+		assertEquals("DE", updated.getMovieData("heat").getRegion());
+		assertEquals(3, updated.getVariants("tt0113277").size());
+		assertEquals(Arrays.asList("Alien"), new ArrayList<>(updated.search("ali", 10)));
+		assertTrue(updated.merged().hasMovieData("alien"));
+		// the previous index still reads its own rows
+		assertEquals("US", base.getMovieData("heat").getRegion());
+		assertFalse(base.hasMovieData("alien"));
+		assertEquals(2, base.getVariants("tt0113277").size());
+	}
+
+	@Test
+	public void testIdListSkipsDuplicates() {
+		MovieIndex.IdList ids = new MovieIndex.IdList(100);
+		for (int i = 0; i < 100; i++) {
+			assertEquals(i % 2 == 0 || i < 50, ids.add(i < 50 ? i * 7 : (i - 50) * 7 + (i % 2 == 0 ? 3 : 0)));
+		}
+		assertEquals(75, ids.size);
+		assertTrue(ids.contains(49 * 7));
+		assertFalse(ids.contains(1));
+		assertEquals(0, ids.ids[0]);
+		assertEquals(3, ids.ids[50]);
+	}
+
+	/**
+	 * Beyond 65536 slots the table is addressed by more bits of the hash.
+	 */
+	@Test
+	public void testLargeIdList() {
+		MovieIndex.IdList ids = new MovieIndex.IdList(200000);
+		for (int i = 0; i < 200000; i++) {
+			assertTrue(ids.add(i * 3));
+		}
+		for (int i = 0; i < 200000; i++) {
+			assertFalse(ids.add(i * 3));
+			assertFalse(ids.contains(i * 3 + 1));
+		}
+		assertEquals(200000, ids.size);
+	}
+
+	@Test
+	public void testPartialIndexSearchesPrefixes() {
+		CompactTrie trie = new CompactTrie();
+		trie.insertAll(Arrays.asList("The Matrix", "Matrix Reloaded"));
+		MovieIndex partial = MovieIndex.partial(trie, new MovieRecordStore());
+
+		assertTrue(partial.isPartial());
+		assertEquals(2, partial.size());
+		assertEquals(Collections.singleton("Matrix Reloaded"), partial.search("matrix", 10));
+		assertTrue(partial.withDelta(Arrays.asList("Heat")).isPartial());
+		assertFalse(index(Arrays.asList("Heat")).isPartial());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testPartialIndexCanNotBeMerged() {
+		MovieIndex.partial(new CompactTrie(), new MovieRecordStore()).withDelta(Arrays.asList("Heat")).merged();
+	}
+
+	/**
+	 * Bytes allocated per search by both engines once warmed up, a delta included, which are little more
+	 * than the set returned, measured with the allocation counter of the thread on the JVMs having one.
+	 */
+	@Test
+	public void testSearchAllocation() throws IOException {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean
+				&& ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported());
+		com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+		List<String> titles = new ArrayList<>(new LinkedHashSet<>(loadTitles()));
+		List<String> keys = Arrays.asList("the", "idy", "l'a", "cin", "le d", "danse", "tour", "cheese");
+		for (TrieEngine engine : Arrays.asList(TrieEngine.HASHMAP, TrieEngine.COMPACT)) {
+			Trie<String> trie = engine.create();
+			trie.insertAll(titles);
+			MovieIndex index = new MovieIndex(trie, new TrigramIndex(titles), new MovieRecordStore())
+					.withDelta(Arrays.asList("The Cheese Tour", "La Danse d'Idylle"));
+			for (int round = 0; round < 2; round++) {
+				long start = allocations.getThreadAllocatedBytes(Thread.currentThread().getId());
+				for (int i = 0; i < 3000; i++) {
+					index.search(keys.get(i % keys.size()), 10);
+				}
+				long perSearch = (allocations.getThreadAllocatedBytes(Thread.currentThread().getId()) - start) / 3000;
+				if (round == 1) {
+					assertTrue(engine + " allocates " + perSearch + " bytes per search", perSearch < 2048);
+				}
+			}
+		}
+	}
+
+	private static List<String> loadTitles() throws IOException {
+		List<String> titles = new ArrayList<>();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+				MovieIndexTest.class.getResourceAsStream("/assets/data/moviedata.tsv"), StandardCharsets.UTF_8))) {
+			String line = reader.readLine();
+			while ((line = reader.readLine()) != null) {
+				titles.add(line.split("\t")[2]);
+			}
+		}
+		return titles;
+	}
+}
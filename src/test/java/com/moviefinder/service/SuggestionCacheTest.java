@@ -0,0 +1,181 @@
+package com.moviefinder.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.moviefinder.model.SuggestionWrapper;
+import com.moviefinder.util.CompactTrie;
+import com.moviefinder.util.MovieRecordStore;
+import com.moviefinder.util.SearchBudget;
+import com.moviefinder.util.TrigramIndex;
+
+public class SuggestionCacheTest {
+
+	private List<String> titles;
+	private MovieIndex index;
+
+	@Before
+	public void createIndex() throws IOException {
+		titles = new ArrayList<>();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+				getClass().getResourceAsStream("/assets/data/moviedata.tsv"), StandardCharsets.UTF_8))) {
+			String line = reader.readLine();
+			while ((line = reader.readLine()) != null) {
+				titles.add(line.split("\t")[2]);
+			}
+		}
+		index = index(titles);
+	}
+
+	private static MovieIndex index(List<String> titles) {
+		CompactTrie trie = new CompactTrie();
+		trie.insertAll(titles);
+		List<String> distinct = new ArrayList<>(new LinkedHashSet<>(titles));
+		return new MovieIndex(trie, new TrigramIndex(distinct), new MovieRecordStore());
+	}
+
+	@Test
+	public void testNarrowedSuggestionsMatchSearch() {
+		SuggestionCache cache = new SuggestionCache(100);
+		for (String key : Arrays.asList("a", "l", "le", "le ", "le c", "le ch", "the", "the g", "ho", "hot", "hote", "l", "l t", "l the", "l the ", "de", "de l", "de la")) {
+			for (int limit : Arrays.asList(5, 1000)) {
+				assertEquals(key + " " + limit, new HashSet<>(index.search(key, limit)).size(),
+						cache.get(key, limit, index).size());
+				if (index.search(key, limit).size() < limit) {
+					assertEquals(key, new HashSet<>(index.search(key, limit)), new HashSet<>(cache.get(key, limit, index)));
+				}
+			}
+		}
+		Map<String, Number> stats = cache.getStats();
+		assertTrue(stats.get("narrowedHits").longValue() > 0);
+		assertTrue(stats.get("hits").longValue() > 0);
+	}
+
+	@Test
+	public void testHitsAndMisses() {
+		SuggestionCache cache = new SuggestionCache(100);
+		cache.get("Hotel", 10, index);
+		cache.get("hotel", 10, index);
+		cache.get("hotel", 5, index);
+		cache.get("hotel ", 10, index);
+		Map<String, Number> stats = cache.getStats();
+		assertEquals(1L, stats.get("misses"));
+		assertEquals(2L, stats.get("hits"));
+		assertEquals(1L, stats.get("narrowedHits"));
+		assertEquals(0.75, stats.get("hitRate"));
+	}
+
+	/**
+	 * A prefix ending in a separator does not match the titles holding the words of the key in another order.
+	 */
+	@Test
+	public void testWordsAreNotNarrowedFromAPrefixOfFewerWords() {
+		MovieIndex hotels = index(Arrays.asList("Hotel Babylon", "The Hotel New Hampshire", "A Badly Managed Hotel",
+				"Badlands Hotel Road"));
+		SuggestionCache cache = new SuggestionCache(100);
+		assertEquals(new HashSet<>(Arrays.asList("Hotel Babylon", "The Hotel New Hampshire", "Badlands Hotel Road")),
+				cache.get("hotel ", 10, hotels));
+		assertEquals(hotels.search("hotel b", 10), cache.get("hotel b", 10, hotels));
+		assertTrue(cache.get("hotel b", 10, hotels).contains("A Badly Managed Hotel"));
+		assertEquals(0L, cache.getStats().get("narrowedHits"));
+		// a prefix of as many words ending in a word matches all of them
+		assertEquals(hotels.search("hotel ba", 10), cache.get("hotel ba", 10, hotels));
+		assertEquals(hotels.search("hotel bad", 10), cache.get("hotel bad", 10, hotels));
+		assertEquals(2L, cache.getStats().get("narrowedHits"));
+		assertEquals(2L, cache.getStats().get("misses"));
+	}
+
+	@Test
+	public void testEntriesOfAnotherIndexAreIgnored() {
+		SuggestionCache cache = new SuggestionCache(100);
+		assertTrue(cache.get("zorro", 10, index).isEmpty());
+		MovieIndex updated = index.withDelta(Arrays.asList("Zorro"));
+		assertEquals(1, cache.get("zorro", 10, updated).size());
+		assertTrue(cache.get("zorro r", 10, updated).isEmpty());
+		assertEquals(2L, cache.getStats().get("misses"));
+		assertEquals(1L, cache.getStats().get("narrowedHits"));
+	}
+
+	@Test
+	public void testTruncatedSuggestionsAreNotCached() {
+		SuggestionCache cache = new SuggestionCache(100);
+		SearchBudget.start(10, 0);
+		try {
+			cache.get("e", 1000, index);
+			assertTrue(SearchBudget.isTruncated());
+		} finally {
+			SearchBudget.stop();
+		}
+		SearchBudget.start(0, 0);
+		assertEquals(index.search("e", 1000), cache.get("e", 1000, index));
+		assertEquals(2L, cache.getStats().get("misses"));
+		assertEquals(0L, cache.getStats().get("hits"));
+		SearchBudget.stop();
+	}
+
+	/**
+	 * The response of a search exhausting its budget, built like the one of /suggestion, is flagged as
+	 * truncated, and the next search of the key is searched again rather than answered the truncated titles.
+	 */
+	@Test
+	public void testTruncatedResponse() {
+		SuggestionCache cache = new SuggestionCache(100);
+		SearchBudget.start(10, 0);
+		SuggestionWrapper truncated = SuggestionWrapper.builder().suggestions(cache.get("e", 1000, index))
+				.truncated(SearchBudget.isTruncated()).build();
+		SearchBudget.stop();
+		assertTrue(truncated.isTruncated());
+		assertTrue(truncated.getSuggestions().size() < index.search("e", 1000).size());
+
+		SearchBudget.start(1000000, 0);
+		SuggestionWrapper complete = SuggestionWrapper.builder().suggestions(cache.get("e", 1000, index))
+				.truncated(SearchBudget.isTruncated()).build();
+		SearchBudget.stop();
+		assertFalse(complete.isTruncated());
+		assertEquals(index.search("e", 1000), complete.getSuggestions());
+		assertEquals(1, cache.getStats().get("size"));
+		assertEquals(0L, cache.getStats().get("hits"));
+	}
+
+	@Test
+	public void testCapacityIsBounded() {
+		SuggestionCache cache = new SuggestionCache(10);
+		for (int i = 0; i < 3; i++) {
+			cache.get("hotel", 10, index);
+		}
+		for (String title : titles.subList(0, 100)) {
+			cache.get(title, 10, index);
+		}
+		Map<String, Number> stats = cache.getStats();
+		assertEquals(10, stats.get("size"));
+		assertTrue(stats.get("evictions").longValue() > 0);
+	}
+
+	@Test
+	public void testDisabled() {
+		SuggestionCache cache = new SuggestionCache(0);
+		assertEquals(index.search("hotel", 10), cache.get("hotel", 10, index));
+		assertEquals(0, cache.getStats().get("size"));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvalidLimit() {
+		new SuggestionCache(10).get("hotel", 0, index);
+	}
+
+}
@@ -0,0 +1,52 @@
+package com.moviefinder.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.moviefinder.util.CompactTrie;
+import com.moviefinder.util.MovieRecordStore;
+import com.moviefinder.util.TrigramIndex;
+
+public class SuggestionCursorTest {
+
+	private static MovieIndex index() {
+		CompactTrie trie = new CompactTrie();
+		trie.insertAll(Arrays.asList("The Matrix", "The Heat"));
+		return new MovieIndex(trie, new TrigramIndex(Arrays.asList("The Matrix", "The Heat")), new MovieRecordStore());
+	}
+
+	@Test
+	public void testRoundTrip() {
+		MovieIndex index = index();
+		SuggestionCursor cursor = SuggestionCursor.decode(new SuggestionCursor(index.getGeneration(), "the", 3).encode());
+		assertEquals(3, cursor.getLength());
+		assertEquals(3, cursor.getNode());
+		assertTrue(cursor.resumes(index, "the"));
+		assertTrue(cursor.resumes(index, "the m"));
+		assertTrue(cursor.resumes(index.withDelta(Arrays.asList("Heat")), "the m"));
+	}
+
+	@Test
+	public void testOnlyResumesExtensionsOnSameBase() {
+		MovieIndex index = index();
+		SuggestionCursor cursor = new SuggestionCursor(index.getGeneration(), "the", 3);
+		assertFalse(cursor.resumes(index, "th"));
+		assertFalse(cursor.resumes(index, "tha m"));
+		assertFalse(cursor.resumes(index(), "the m"));
+	}
+
+	@Test
+	public void testInvalidTokens() {
+		assertNull(SuggestionCursor.decode(null));
+		assertNull(SuggestionCursor.decode(""));
+		assertNull(SuggestionCursor.decode("not a token"));
+		assertNull(SuggestionCursor.decode("MS4yLjM"));
+	}
+
+}
@@ -0,0 +1,39 @@
+package com.moviefinder.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class CaseFoldingTest {
+
+	@Test
+	public void testFold() {
+		String folded = "idylle interrompue";
+		assertSame(folded, CaseFolding.fold(folded));
+		assertEquals(folded, CaseFolding.fold("Idylle Interrompue"));
+		assertEquals("élan vital", CaseFolding.fold("ÉLAN VITAL"));
+		assertEquals("", CaseFolding.fold(""));
+	}
+
+	@Test
+	public void testStartsWith() {
+		assertTrue(CaseFolding.startsWith("Idylle Interrompue", "idylle i"));
+		assertTrue(CaseFolding.startsWith("Idylle", ""));
+		assertFalse(CaseFolding.startsWith("Idylle", "idyllic"));
+		assertFalse(CaseFolding.startsWith("Idy", "idylle"));
+		assertTrue(CaseFolding.startsWith("Idylle", "idxx", 2));
+	}
+
+	@Test
+	public void testContains() {
+		assertTrue(CaseFolding.contains("Idylle Interrompue", "interr"));
+		assertTrue(CaseFolding.contains("Idylle Interrompue", "ue"));
+		assertTrue(CaseFolding.contains("Idylle", ""));
+		assertFalse(CaseFolding.contains("Idylle Interrompue", "intact"));
+		assertFalse(CaseFolding.contains("Idy", "idylle"));
+	}
+
+}
@@ -0,0 +1,318 @@
+package com.moviefinder.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntPredicate;
+import java.util.function.ToIntFunction;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Iterables;
+
+public class CompactTrieTest {
+
+	CompactTrie trie;
+
+	@Before
+	public void createTree() {
+		trie = new CompactTrie();
+	}
+
+	@Test
+	public void testSearchWhenSomeOverlapExists() {
+		trie.insert("abcd");
+		trie.insert("abce");
+
+		assertEquals(1, trie.search("abe").size());
+		assertEquals(1, trie.search("abd").size());
+
+		assertTrue(trie.search("abe").stream().anyMatch(e -> e.equals("abce")));
+		assertFalse(trie.search("abe").stream().anyMatch(e -> e.equals("abcd")));
+	}
+
+	@Test
+	public void testSearchFullOverlapExists() {
+		trie.insert("abcd");
+		trie.insert("abce");
+
+		assertEquals("abcd", Iterables.getOnlyElement(trie.search("abcd")));
+		assertEquals("abce", Iterables.getOnlyElement(trie.search("abce")));
+	}
+
+	@Test
+	public void testFuzzySearch() throws IOException {
+		CompactTrie trie = new CompactTrie();
+		trie.insertAll(CompactTrieTest.loadTitles());
+		assertTrue(trie.search("Idyle interompue").isEmpty());
+		assertTrue(trie.fuzzySearch("Idyle interompue", 1, 10).isEmpty());
+		assertEquals("Idylle interrompue", Iterables.getOnlyElement(trie.fuzzySearch("Idyle interompue", 2, 10)));
+		assertTrue(trie.fuzzySearch("idylle interrompu", 0, 10).contains("Idylle interrompue"));
+		assertEquals("Idylle", trie.fuzzySearch("idyle", 1, 10).iterator().next());
+		assertEquals(2, trie.fuzzySearch("idyle", 1, 2).size());
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testInsertNullValue() {
+		trie.insert(null);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testInsertEmptyValue() {
+		trie.insert("");
+	}
+
+	@Test
+	public void testFindAllMatch() {
+		trie.insertAll(Arrays.asList("Raj", "Raje", "Raja", "Rajdeep", "Rajasthan", "Rajhans"));
+		assertEquals(6, trie.search("aj").size());
+		assertEquals(0, trie.search("xo").size());
+		assertEquals(2, trie.search("an").size());
+	}
+
+	@Test
+	public void testSearchStopsAtLimit() {
+		trie.insertAll(Arrays.asList("Raj", "Raje", "Raja", "Rajdeep", "Rajasthan", "Rajhans"));
+		assertEquals(3, trie.search("aj", 3).size());
+		assertTrue(trie.search("aj").containsAll(trie.search("aj", 3)));
+		assertEquals(2, trie.search("an", 3).size());
+		assertEquals(Arrays.asList("Raj", "Raja"), new ArrayList<>(trie.prefixSearch("raj", 2)));
+	}
+
+	@Test
+	public void testPrefixSearchKeepsOriginalCase() {
+		trie.insertAll(Arrays.asList("Raj", "Raje", "Rajasthan", "Idylle"));
+		assertEquals(new HashSet<>(Arrays.asList("Raj", "Raje", "Rajasthan")), trie.prefixSearch("raj"));
+		assertEquals(new HashSet<>(Arrays.asList("Rajasthan")), trie.prefixSearch("RAJA"));
+		assertEquals(0, trie.prefixSearch("Rajx").size());
+	}
+
+	@Test
+	public void testSearchMatchesScan() throws IOException {
+		List<String> titles = loadTitles();
+		trie.insertAll(titles);
+		for (String key : Arrays.asList("a", "id", "idy", "Idylle interrompue", "hotel", "LE C", "the", "ax", "zzz")) {
+			assertEquals(key, scan(titles, key), trie.search(key));
+		}
+	}
+
+	/**
+	 * Memory estimated for both engines on the same titles: the sample data set repeated with numbered variants.
+	 */
+	@Test
+	public void testMemoryAgainstTrieImpl() throws IOException {
+		List<String> titles = new ArrayList<>();
+		for (String title : loadTitles()) {
+			for (int i = 0; i < 50; i++) {
+				titles.add(title + " " + i);
+			}
+		}
+		Trie<String> hashMapTrie = TrieEngine.HASHMAP.create();
+		hashMapTrie.insertAll(titles);
+		Trie<String> compactTrie = TrieEngine.COMPACT.create();
+		compactTrie.insertAll(titles);
+
+		assertEquals(titles.stream().map(String::toLowerCase).distinct().count(), ((CompactTrie) compactTrie).size());
+		assertTrue("compact trie should use less than a quarter of the memory",
+				compactTrie.memoryEstimate() * 4 < hashMapTrie.memoryEstimate());
+	}
+
+	/**
+	 * The titles holding the characters of the key in order, and either starting with the key less
+	 * its last two characters or containing it.
+	 */
+	static Set<String> scan(List<String> titles, String key) {
+		String lowerKey = key.toLowerCase();
+		String keySubstring = (key.length() > 2 ? key.substring(0, key.length() - 2) : key).toLowerCase();
+		Set<String> matches = new HashSet<>();
+		for (String title : titles) {
+			String lowerTitle = title.toLowerCase();
+			int matched = 0;
+			for (int i = 0; i < lowerTitle.length() && matched < lowerKey.length(); i++) {
+				if (lowerTitle.charAt(i) == lowerKey.charAt(matched)) {
+					matched++;
+				}
+			}
+			if (matched == lowerKey.length()
+					&& (lowerTitle.startsWith(keySubstring) || lowerTitle.contains(lowerKey))) {
+				matches.add(title);
+			}
+		}
+		return matches;
+	}
+
+	static List<String> loadTitles() throws IOException {
+		List<String> titles = new ArrayList<>();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+				CompactTrieTest.class.getResourceAsStream("/assets/data/moviedata.tsv"), StandardCharsets.UTF_8))) {
+			String line = reader.readLine();
+			while ((line = reader.readLine()) != null) {
+				titles.add(line.split("\t")[2]);
+			}
+		}
+		return titles;
+	}
+
+	@Test
+	public void testNodesVisited() {
+		trie.insertAll(Arrays.asList("abcd", "abce", "xyz"));
+		assertEquals(9, trie.nodeCount());
+		assertTrue(trie.memoryEstimate() > 0);
+
+		SearchCounter.reset();
+		trie.prefixSearch("abc", 10);
+		// a, b and c walked, then c, d and e collected
+		assertEquals(6, SearchCounter.reset());
+		trie.prefixSearch("q", 10);
+		assertEquals(1, SearchCounter.reset());
+		trie.search("abe", 10);
+		assertTrue(SearchCounter.reset() > 0);
+		assertEquals(0, SearchCounter.reset());
+	}
+
+	@Test
+	public void testPrefixSearchConsumer() throws IOException {
+		trie.insertAll(loadTitles());
+		for (String prefix : Arrays.asList("", "the", "l", "zz")) {
+			List<String> found = new ArrayList<>();
+			int count = trie.prefixSearch(prefix, 25, found::add);
+			assertEquals(found.size(), count);
+			assertEquals(new ArrayList<>(trie.prefixSearch(prefix, 25)), found);
+		}
+	}
+
+	@Test
+	public void testRankedPrefixSearch() {
+		trie.insertAll(Arrays.asList("abc", "abd", "abe", "abf", "b"));
+		Map<String, Integer> scores = new HashMap<>();
+		scores.put("abc", 1);
+		scores.put("abd", 3);
+		scores.put("abe", 3);
+		scores.put("abf", 5);
+		scores.put("b", 4);
+		trie.rank(scores::get, 2, 1);
+		assertTrue(trie.isRanked());
+
+		// completions stored at the root and at a
+		assertEquals(Arrays.asList("abf", "b"), new ArrayList<>(trie.prefixSearch("", 2)));
+		assertEquals(Arrays.asList("abf", "abd"), new ArrayList<>(trie.prefixSearch("a", 2)));
+		// more than stored, and below the stored depth, are sorted
+		assertEquals(Arrays.asList("abf", "abd", "abe", "abc"), new ArrayList<>(trie.prefixSearch("a", 10)));
+		assertEquals(Arrays.asList("abf", "abd", "abe"), new ArrayList<>(trie.prefixSearch("ab", 3)));
+		assertEquals(Arrays.asList("b"), new ArrayList<>(trie.prefixSearch("b", 10)));
+
+		List<String> found = new ArrayList<>();
+		assertEquals(3, trie.prefixSearch("AB", 3, found::add));
+		assertEquals(Arrays.asList("abf", "abd", "abe"), found);
+		assertEquals(new ArrayList<>(trie.prefixSearch("ab", 2)),
+				new ArrayList<>(trie.prefixSearch(trie.walk(CompactTrie.ROOT, "ab", 0), 2)));
+
+		trie.insert("aba");
+		assertFalse(trie.isRanked());
+		assertEquals("aba", trie.prefixSearch("a", 1).iterator().next());
+	}
+
+	@Test
+	public void testRankedPrefixSearchMatchesSort() throws IOException {
+		trie.insertAll(loadTitles());
+		ToIntFunction<String> score = title -> title.length() % 7;
+		List<String> unranked = new ArrayList<>(trie.prefixSearch(""));
+		long unrankedBytes = trie.memoryEstimate();
+		trie.rank(score, 5, 3);
+		// a rank per value, the completions only for the nodes of at most 3 characters
+		assertTrue(trie.memoryEstimate() - unrankedBytes < 4L * trie.size() + trie.nodeCount());
+		for (String prefix : Arrays.asList("", "t", "the", "the a", "l'", "zz")) {
+			for (int limit : new int[] { 1, 5, 8 }) {
+				List<String> expected = new ArrayList<>();
+				for (String title : unranked) {
+					if (title.toLowerCase().startsWith(prefix)) {
+						expected.add(title);
+					}
+				}
+				expected.sort(Comparator.comparingInt(score).reversed());
+				expected = expected.subList(0, Math.min(limit, expected.size()));
+				assertEquals(expected, new ArrayList<>(trie.prefixSearch(prefix, limit)));
+			}
+		}
+		assertTrue(trie.memoryEstimate() > trie.copy().memoryEstimate());
+		assertFalse(trie.copy().isRanked());
+	}
+
+	/**
+	 * Ranking runs while an index is built, the budget a search left on the thread does not truncate it.
+	 */
+	@Test
+	public void testRankIgnoresTheBudget() throws IOException {
+		trie.insertAll(loadTitles());
+		CompactTrie unbounded = trie.copy();
+		unbounded.rank(String::length, 5, 3);
+		SearchBudget.start(1, 0);
+		trie.prefixSearch("t", 1000);
+		assertTrue(SearchBudget.isTruncated());
+		trie.rank(String::length, 5, 3);
+		SearchBudget.stop();
+		SearchBudget.start(0, 0);
+		for (String prefix : Arrays.asList("", "t", "the", "l'")) {
+			assertEquals(new ArrayList<>(unbounded.prefixSearch(prefix, 100)), new ArrayList<>(trie.prefixSearch(prefix, 100)));
+		}
+		assertFalse(SearchBudget.stop());
+	}
+
+	@Test
+	public void testRankedPrefixSearchSkipsSubtree() {
+		trie.insertAll(Arrays.asList("abcd", "abce", "xyz"));
+		trie.rank(value -> 0, 10, 2);
+		SearchCounter.reset();
+		trie.prefixSearch("ab", 10);
+		// only a and b walked
+		assertEquals(2, SearchCounter.reset());
+	}
+
+	@Test
+	public void testFilteredPrefixSearch() throws IOException {
+		trie.insertAll(loadTitles());
+		List<String> keys = Arrays.asList(trie.keys()).subList(0, trie.size());
+		IntPredicate filter = key -> key % 3 == 0;
+		for (boolean ranked : new boolean[] { false, true }) {
+			if (ranked) {
+				trie.rank(String::length, 5, 3);
+			}
+			for (String prefix : Arrays.asList("", "t", "the", "l'", "zz")) {
+				List<String> expected = new ArrayList<>();
+				for (String title : trie.prefixSearch(prefix)) {
+					if (filter.test(keys.indexOf(title))) {
+						expected.add(title);
+					}
+				}
+				for (int limit : new int[] { 1, 5, 8, 1000 }) {
+					List<String> filtered = new ArrayList<>();
+					int node = trie.walk(CompactTrie.ROOT, prefix, 0);
+					assertEquals(Math.min(limit, expected.size()),
+							trie.prefixSearchIds(node, limit, filter, id -> filtered.add(trie.value(id))));
+					assertEquals(prefix + " " + limit, expected.subList(0, Math.min(limit, expected.size())), filtered);
+				}
+			}
+		}
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testRankInvalidCount() {
+		trie.insert("abc");
+		trie.rank(value -> 0, 0, 2);
+	}
+
+}
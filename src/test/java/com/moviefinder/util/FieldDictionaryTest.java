@@ -0,0 +1,105 @@
+package com.moviefinder.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class FieldDictionaryTest {
+
+	private static ByteBuffer buffer(String value) {
+		return ByteBuffer.wrap(("\t" + value + "\t").getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testEncodeDecode() {
+		FieldDictionary dictionary = new FieldDictionary();
+		assertEquals(0, dictionary.encode(null));
+		assertNull(dictionary.decode(0));
+		int code = dictionary.encode("FR");
+		assertEquals(code, dictionary.encode(new String("FR")));
+		assertEquals("FR", dictionary.decode(code));
+		assertEquals(code + 1, dictionary.encode("\\N"));
+		assertEquals(3, dictionary.size());
+	}
+
+	@Test
+	public void testInternReturnsCanonicalInstance() {
+		FieldDictionary dictionary = new FieldDictionary();
+		String region = dictionary.intern(new String("Île"));
+		assertSame(region, dictionary.intern(new String("Île")));
+		ByteBuffer buffer = buffer("Île");
+		assertSame(region, dictionary.intern(buffer, 1, buffer.limit() - 1));
+
+		buffer = buffer("\\N");
+		String empty = dictionary.intern(buffer, 1, buffer.limit() - 1);
+		assertEquals("\\N", empty);
+		assertSame(empty, dictionary.intern("\\N"));
+		assertEquals(dictionary.encode("\\N"), dictionary.encode(empty));
+		assertNull(dictionary.intern((String) null));
+	}
+
+	@Test
+	public void testManyValues() {
+		FieldDictionary dictionary = new FieldDictionary();
+		for (int i = 1; i < 5000; i++) {
+			ByteBuffer buffer = buffer("value" + i);
+			assertEquals("value" + i, dictionary.intern(buffer, 1, buffer.limit() - 1));
+		}
+		for (int i = 1; i < 5000; i++) {
+			assertEquals(i, dictionary.encode("value" + i));
+		}
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testDecodeInvalidCode() {
+		new FieldDictionary().decode(1);
+	}
+
+	@Test(expected=IllegalStateException.class)
+	public void testTooManyValues() {
+		FieldDictionary dictionary = new FieldDictionary();
+		for (int i = 0; i < FieldDictionary.MAX_CODES; i++) {
+			dictionary.encode(Integer.toString(i));
+		}
+	}
+
+	@Test
+	public void testConcurrentIntern() throws Exception {
+		FieldDictionary dictionary = new FieldDictionary();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<String[]>> results = new ArrayList<>();
+			for (int t = 0; t < 4; t++) {
+				results.add(executor.submit(() -> {
+					String[] values = new String[1000];
+					for (int i = 0; i < values.length; i++) {
+						ByteBuffer buffer = buffer("v" + i);
+						values[i] = dictionary.intern(buffer, 1, buffer.limit() - 1);
+					}
+					return values;
+				}));
+			}
+			String[] first = results.get(0).get();
+			for (Future<String[]> result : results) {
+				String[] values = result.get();
+				for (int i = 0; i < values.length; i++) {
+					assertSame(first[i], values[i]);
+				}
+			}
+			assertEquals(1001, dictionary.size());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+}
@@ -0,0 +1,111 @@
+package com.moviefinder.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.moviefinder.model.MovieData;
+
+public class IndexSnapshotTest {
+
+	Path file;
+	Path source;
+	List<String> titles;
+	IndexSnapshot snapshot;
+
+	@Before
+	public void writeSnapshot() throws IOException {
+		file = Files.createTempFile("moviefinder", ".snapshot");
+		source = Files.createTempFile("moviefinder", ".tsv");
+		Files.write(source, "titleId\tordering\ttitle\n".getBytes(StandardCharsets.UTF_8));
+		titles = CompactTrieTest.loadTitles();
+		CompactTrie trie = new CompactTrie();
+		MovieRecordStore records = new MovieRecordStore();
+		for (String title : titles) {
+			trie.insert(title);
+			records.add(MovieData.builder().titleId("tt" + records.size() / 3).ordering(records.size() % 3).title(title)
+					.region("FR").language("\\N").types(null).attributes("\\N").isOriginalTitle("0").build());
+		}
+		snapshot = new IndexSnapshot(trie, new TrigramIndex(titles), records);
+		snapshot.write(file, source);
+	}
+
+	@After
+	public void deleteFile() throws IOException {
+		Files.deleteIfExists(file);
+		Files.deleteIfExists(source);
+	}
+
+	@Test
+	public void testReadRestoresIndex() throws IOException {
+		IndexSnapshot read = IndexSnapshot.read(file, source);
+		for (String key : Arrays.asList("a", "idy", "hotel", "LE C", "zzz")) {
+			assertEquals(key, snapshot.getTrie().search(key), read.getTrie().search(key));
+			assertEquals(key, snapshot.getTrie().prefixSearch(key), read.getTrie().prefixSearch(key));
+			assertEquals(key, snapshot.getSubstringIndex().search(key, 100), read.getSubstringIndex().search(key, 100));
+		}
+		assertEquals(snapshot.getRecords().size(), read.getRecords().size());
+		for (int row = 0; row < read.getRecords().size(); row++) {
+			assertEquals(snapshot.getRecords().get(row), read.getRecords().get(row));
+		}
+		assertEquals(snapshot.getRecords().getVariants("tt42"), read.getRecords().getVariants("tt42"));
+		assertEquals(3, read.getRecords().getVariants("tt42").size());
+
+		// the restored trie keeps accepting inserts
+		read.getTrie().insert("Zzz Top");
+		assertEquals("Zzz Top", read.getTrie().prefixSearch("zzz").iterator().next());
+	}
+
+	@Test
+	public void testCorruptedSnapshotIsRejected() throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.wrap(new byte[] { 42 }), channel.size() / 2);
+		}
+		try {
+			IndexSnapshot.read(file, source);
+			fail("corrupted snapshot read");
+		} catch (IOException e) {
+			assertEquals("Corrupted index snapshot " + file, e.getMessage());
+		}
+	}
+
+	@Test
+	public void testSnapshotOfChangedSourceIsRejected() throws IOException {
+		Files.write(source, "tt0000001\t1\tCarmencita\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+		try {
+			IndexSnapshot.read(file, source);
+			fail("stale snapshot read");
+		} catch (IOException e) {
+			assertEquals("Stale index snapshot " + file + ", " + source + " has changed", e.getMessage());
+		}
+		try {
+			IndexSnapshot.read(file, null);
+			fail("snapshot of a file read without one");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().startsWith("Stale index snapshot"));
+		}
+	}
+
+	@Test(expected=IOException.class)
+	public void testTruncatedSnapshotIsRejected() throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.truncate(channel.size() - 1);
+		}
+		IndexSnapshot.read(file, source);
+	}
+
+}
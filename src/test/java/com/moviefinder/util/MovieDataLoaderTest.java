@@ -0,0 +1,132 @@
+package com.moviefinder.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.moviefinder.model.MovieData;
+
+public class MovieDataLoaderTest {
+
+	Path file;
+	ForkJoinPool pool;
+
+	@Before
+	public void createFile() throws IOException {
+		file = Files.createTempFile("moviedata", ".tsv");
+		pool = new ForkJoinPool(4);
+	}
+
+	@After
+	public void deleteFile() throws IOException {
+		pool.shutdown();
+		Files.deleteIfExists(file);
+	}
+
+	@Test
+	public void testMappedReadMatchesLineRead() throws IOException {
+		try (InputStream in = getClass().getResourceAsStream("/assets/data/moviedata.tsv")) {
+			Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+		}
+		List<MovieData> expected = readLines(file);
+		// small chunks so that many of them end in the middle of a line
+		for (int chunkSize : new int[] { 100, 4096, MovieDataLoader.DEFAULT_CHUNK_SIZE }) {
+			List<MovieData> rows = new ArrayList<>();
+			assertEquals(expected.size(), MovieDataLoader.read(file, pool, chunkSize, rows::add));
+			assertEquals(expected, rows);
+		}
+	}
+
+	@Test
+	public void testMappedReadSkipsIncompleteLines() throws IOException {
+		Files.write(file, ("titleId\tordering\ttitle\tregion\tlanguage\ttypes\tattributes\tisOriginalTitle\r\n"
+				+ "tt0000001\t12\tCarmencita\tHU\t\\N\timdbDisplay\t\\N\t0\r\n"
+				+ "tt0000002\t3\tbroken\n"
+				+ "tt0000004\tfirst\tNot ordered\tFR\t\\N\t\\N\t\\N\t0\n"
+				+ "tt0000005\t\tUnordered\tFR\t\\N\t\\N\t\\N\t0\n"
+				+ "tt0000003\t1\tPauvre Pierrot\tFR\t\\N\t\\N\t\\N\t1").getBytes(StandardCharsets.UTF_8));
+		List<MovieData> rows = new ArrayList<>();
+		int[] skipped = new int[1];
+		assertEquals(2, MovieDataLoader.read(file, pool, 16, rows::add, count -> skipped[0] += count));
+		assertEquals(3, skipped[0]);
+		assertEquals(MovieData.builder().titleId("tt0000001").ordering(12).title("Carmencita").region("HU")
+				.language("\\N").types("imdbDisplay").attributes("\\N").isOriginalTitle("0").build(), rows.get(0));
+		assertEquals("1", rows.get(1).getIsOriginalTitle());
+		// the low cardinality fields are the instances of the dictionary
+		FieldDictionary dictionary = FieldDictionary.getInstance();
+		assertSame(dictionary.intern("HU"), rows.get(0).getRegion());
+		assertSame(dictionary.intern("imdbDisplay"), rows.get(0).getTypes());
+		assertSame(rows.get(0).getLanguage(), rows.get(1).getAttributes());
+	}
+
+	/**
+	 * Generated titles, with multi byte characters, across many chunks.
+	 */
+	@Test
+	public void testMappedReadMatchesLineReadOnGeneratedFile() throws IOException {
+		int rows = 20000;
+		writeSyntheticFile(file, rows);
+		List<MovieData> expected = readLines(file);
+		assertEquals(rows, expected.size());
+		List<MovieData> mapped = new ArrayList<>();
+		assertEquals(rows, MovieDataLoader.read(file, pool, 4096, mapped::add));
+		assertEquals(expected, mapped);
+	}
+
+	private static List<MovieData> readLines(Path file) throws IOException {
+		List<MovieData> rows = new ArrayList<>();
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8))) {
+			MovieDataLoader.read(reader, rows::add);
+		}
+		return rows;
+	}
+
+	static void writeSyntheticFile(Path file, int rows) throws IOException {
+		String[] words = { "The", "Night", "Hotel", "Idylle", "Return", "of", "la", "Nuit", "été", "Managed" };
+		String[] regions = { "US", "FR", "\\N", "XWW", "DE" };
+		Random random = new Random(42);
+		try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			writer.write("titleId\tordering\ttitle\tregion\tlanguage\ttypes\tattributes\tisOriginalTitle\n");
+			for (int i = 0; i < rows; i++) {
+				StringBuilder title = new StringBuilder();
+				for (int w = random.nextInt(4); w >= 0; w--) {
+					title.append(words[random.nextInt(words.length)]).append(' ');
+				}
+				title.append(i);
+				writer.write(String.format("tt%07d\t%d\t%s\t%s\t\\N\t\\N\t\\N\t%d%n", i / 3, i % 3 + 1, title,
+						regions[random.nextInt(regions.length)], i % 3 == 0 ? 1 : 0));
+			}
+		}
+	}
+
+	@Test
+	public void testReadVotes() throws IOException {
+		Map<String, Integer> votes = MovieDataLoader.readVotes(new BufferedReader(
+				new StringReader("tconst\taverageRating\tnumVotes\ntt0000001\t5.7\t1898\ntt0000002\t6.0\ntt0000003\t6.5\t1700\n")));
+		assertEquals(2, votes.size());
+		assertEquals(Integer.valueOf(1898), votes.get("tt0000001"));
+		assertEquals(Integer.valueOf(1700), votes.get("tt0000003"));
+	}
+
+}
+
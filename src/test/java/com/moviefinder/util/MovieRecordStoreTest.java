@@ -0,0 +1,126 @@
+package com.moviefinder.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import com.moviefinder.model.MovieData;
+
+public class MovieRecordStoreTest {
+
+	private static MovieData movieData(String titleId, int ordering, String title, String region) {
+		return MovieData.builder().titleId(titleId).ordering(ordering).title(title).region(region).language("\\N")
+				.types("\\N").attributes("\\N").isOriginalTitle("0").build();
+	}
+
+	private static MovieData copy(MovieData movieData, int id, String titleId) {
+		return MovieData.builder().id(id).titleId(titleId).ordering(movieData.getOrdering()).title(movieData.getTitle())
+				.region(movieData.getRegion()).language(movieData.getLanguage()).types(movieData.getTypes())
+				.attributes(movieData.getAttributes()).isOriginalTitle(movieData.getIsOriginalTitle()).build();
+	}
+
+	@Test
+	public void testVariantsByTitleId() {
+		MovieRecordStore store = new MovieRecordStore();
+		store.add(movieData("tt0000002", 2, "Le clown et ses chiens", "FR"));
+		store.add(movieData("tt0000001", 1, "Carmencita", "HU"));
+		store.add(movieData("tt0000002", 1, "The Clown and His Dogs", "US"));
+		store.add(movieData("tt12345678", 1, "Recent", null));
+
+		List<MovieData> variants = store.getVariants("tt0000002");
+		assertEquals(2, variants.size());
+		assertEquals(copy(movieData("tt0000002", 1, "The Clown and His Dogs", "US"), 2, "tt0000002"), variants.get(0));
+		assertEquals("Le clown et ses chiens", variants.get(1).getTitle());
+		assertEquals("FR", variants.get(1).getRegion());
+		assertEquals(0, variants.get(1).getId());
+
+		assertEquals("tt12345678", store.getVariants("tt12345678").get(0).getTitleId());
+		assertEquals(null, store.getVariants("tt12345678").get(0).getRegion());
+		assertTrue(store.getVariants("tt0000003").isEmpty());
+		assertTrue(store.getVariants("nm0000002").isEmpty());
+		assertEquals(4, store.size());
+		assertEquals(3, store.titleIdCount());
+	}
+
+	@Test
+	public void testSameOrderingReplacesRow() {
+		MovieRecordStore store = new MovieRecordStore();
+		store.add(movieData("tt0000001", 1, "Carmencita", "HU"));
+		assertEquals(0, store.add(movieData("tt0000001", 1, "Carmencita", "US")));
+		assertEquals(1, store.size());
+		assertEquals("US", store.get(0).getRegion());
+	}
+
+	@Test
+	public void testCopyIsIndependent() {
+		MovieRecordStore store = new MovieRecordStore();
+		store.add(movieData("tt0000001", 1, "Carmencita", "HU"));
+		MovieRecordStore copy = store.copy();
+		copy.add(movieData("tt0000001", 1, "Carmencita", "US"));
+		copy.add(movieData("tt0000001", 2, "Carmencita", "FR"));
+		assertEquals(1, store.size());
+		assertEquals("HU", store.get(0).getRegion());
+		assertEquals(1, store.getVariants("tt0000001").size());
+		assertEquals(2, copy.size());
+		assertEquals("US", copy.get(0).getRegion());
+		assertEquals(2, copy.getVariants("tt0000001").size());
+	}
+
+	@Test
+	public void testMemoryEstimate() {
+		MovieRecordStore store = new MovieRecordStore();
+		long empty = store.memoryEstimate();
+		store.add(movieData("tt0000001", 1, "Carmencita", "HU"));
+		long one = store.memoryEstimate();
+		assertEquals(empty + 40 + 2 * "Carmencita".length(), one);
+		store.add(movieData("tt0000001", 1, "Carmencita", "US"));
+		assertEquals(one, store.memoryEstimate());
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvalidTitleId() {
+		new MovieRecordStore().add(movieData("t0000001", 1, "Carmencita", "HU"));
+	}
+
+	@Test
+	public void testRowsMatchSampleData() throws IOException {
+		List<MovieData> rows = loadRows();
+		MovieRecordStore store = new MovieRecordStore();
+		for (int i = 0; i < 1000; i++) {
+			for (MovieData movieData : rows) {
+				int titleId = MovieRecordStore.parseTitleId(movieData.getTitleId()) + i * 1000000;
+				store.add(copy(movieData, 0, MovieRecordStore.formatTitleId(titleId)));
+			}
+		}
+		assertEquals(rows.size() * 1000, store.size());
+		for (MovieData movieData : rows) {
+			List<MovieData> expected = rows.stream().filter(row -> row.getTitleId().equals(movieData.getTitleId()))
+					.sorted((first, second) -> Integer.compare(first.getOrdering(), second.getOrdering()))
+					.collect(Collectors.toList());
+			List<MovieData> variants = store.getVariants(movieData.getTitleId());
+			assertEquals(expected.size(), variants.size());
+			for (int i = 0; i < variants.size(); i++) {
+				assertEquals(expected.get(i), copy(variants.get(i), 0, variants.get(i).getTitleId()));
+			}
+		}
+	}
+
+	private List<MovieData> loadRows() throws IOException {
+		List<MovieData> rows = new ArrayList<>();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+				getClass().getResourceAsStream("/assets/data/moviedata.tsv"), StandardCharsets.UTF_8))) {
+			MovieDataLoader.read(reader, rows::add);
+		}
+		return rows;
+	}
+
+}
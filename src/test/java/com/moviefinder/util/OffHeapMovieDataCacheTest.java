@@ -0,0 +1,187 @@
+package com.moviefinder.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.moviefinder.model.MovieData;
+
+public class OffHeapMovieDataCacheTest {
+
+	private static MovieData movieData(String titleId, String title, String region) {
+		return MovieData.builder().id(0).titleId(titleId).ordering(2).title(title).region(region).language(null)
+				.types("imdbDisplay").attributes("\\N").isOriginalTitle("0").build();
+	}
+
+	@Test
+	public void testMatchesMapAcrossPages() throws IOException {
+		// small pages so that the records span many of them and the table grows
+		OffHeapMovieDataCache cache = new OffHeapMovieDataCache(4096, null);
+		Map<String, MovieData> expected = new HashMap<>();
+		// numbers the rows like the store
+		MovieRecordStore records = new MovieRecordStore();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+				getClass().getResourceAsStream("/assets/data/moviedata.tsv"), StandardCharsets.UTF_8))) {
+			MovieDataLoader.read(reader, movieData -> {
+				movieData.setId(records.add(movieData));
+				for (int copy = 0; copy < 5; copy++) {
+					String key = movieData.getTitle().toLowerCase() + (copy == 0 ? "" : " " + copy);
+					cache.put(key, movieData);
+					expected.put(key, movieData);
+				}
+			});
+		}
+		assertEquals(expected.size(), cache.size());
+		for (Map.Entry<String, MovieData> entry : expected.entrySet()) {
+			assertTrue(cache.contains(entry.getKey()));
+			assertEquals(entry.getValue(), cache.get(entry.getKey()));
+		}
+		assertNull(cache.get("not a title"));
+		assertFalse(cache.contains("not a title"));
+		assertNull(cache.get(null));
+		assertTrue(cache.storedBytes() > 4096 * 10);
+		assertEquals(records.size(), cache.rowCount());
+		assertEquals(records.titleIdCount(), cache.titleIdCount());
+		for (MovieData movieData : expected.values()) {
+			assertEquals(records.getVariants(movieData.getTitleId()), cache.getVariants(movieData.getTitleId()));
+		}
+	}
+
+	@Test
+	public void testVariants() {
+		OffHeapMovieDataCache cache = new OffHeapMovieDataCache(4096, null);
+		cache.put("heat", MovieData.builder().titleId("tt0113277").ordering(1).title("Heat").region("US").build());
+		cache.add(MovieData.builder().titleId("tt0113277").ordering(3).title("Heat").region("FR").build());
+		cache.add(MovieData.builder().titleId("tt0113277").ordering(2).title("Heat").region("DE").build());
+		cache.put("alien", MovieData.builder().titleId("tt0078748").ordering(1).title("Alien").region("US").build());
+		// replaces the row of the same ordering, keeping its id
+		cache.add(MovieData.builder().titleId("tt0113277").ordering(3).title("Heat").region("IT").build());
+
+		assertEquals(4, cache.rowCount());
+		assertEquals(2, cache.titleIdCount());
+		assertEquals(2, cache.size());
+		List<MovieData> variants = cache.getVariants("tt0113277");
+		assertEquals(3, variants.size());
+		assertEquals(Arrays.asList("US", "DE", "IT"),
+				Arrays.asList(variants.get(0).getRegion(), variants.get(1).getRegion(), variants.get(2).getRegion()));
+		assertEquals(Arrays.asList(0, 2, 1),
+				Arrays.asList(variants.get(0).getId(), variants.get(1).getId(), variants.get(2).getId()));
+		assertEquals("US", cache.get("heat").getRegion());
+		assertTrue(cache.getVariants("tt0000001").isEmpty());
+		assertTrue(cache.getVariants("not a titleId").isEmpty());
+	}
+
+	@Test
+	public void testPutReplaces() {
+		OffHeapMovieDataCache cache = new OffHeapMovieDataCache();
+		cache.put("le cabinet de méphistophélès", movieData("tt0000159", "Le cabinet de Méphistophélès", "FR"));
+		cache.put("le cabinet de méphistophélès", movieData("tt0000159", "Le cabinet de Méphistophélès", null));
+		assertEquals(1, cache.size());
+		assertEquals(movieData("tt0000159", "Le cabinet de Méphistophélès", null), cache.get("le cabinet de méphistophélès"));
+	}
+
+	/**
+	 * A copy appends to the pages of the store copied, whose lookups do not see the rows put to the copy.
+	 */
+	@Test
+	public void testCopyIsIndependent() {
+		OffHeapMovieDataCache cache = new OffHeapMovieDataCache(4096, null);
+		for (int i = 0; i < 1000; i++) {
+			cache.put("title " + i, movieData("tt" + (1000 + i), "Title " + i, "US"));
+		}
+		long stored = cache.storedBytes();
+		OffHeapMovieDataCache copy = cache.copy();
+		copy.put("title 1", movieData("tt1001", "Title 1", "FR"));
+		for (int i = 1000; i < 2000; i++) {
+			copy.put("title " + i, movieData("tt" + (1000 + i), "Title " + i, "US"));
+		}
+		assertEquals(1000, cache.size());
+		assertEquals(stored, cache.storedBytes());
+		assertEquals("US", cache.get("title 1").getRegion());
+		assertNull(cache.get("title 1500"));
+		assertFalse(cache.contains("title 1500"));
+		assertEquals("US", cache.getVariants("tt1001").get(0).getRegion());
+
+		assertEquals(2000, copy.size());
+		assertEquals("FR", copy.get("title 1").getRegion());
+		assertEquals("FR", copy.getVariants("tt1001").get(0).getRegion());
+		assertEquals(movieData("tt2500", "Title 1500", "US").getTitle(), copy.get("title 1500").getTitle());
+		assertEquals(movieData("tt1002", "Title 2", "US").getTitleId(), copy.get("title 2").getTitleId());
+
+		// a copy of the store copied writes over the records of the first copy, which was dropped
+		OffHeapMovieDataCache second = cache.copy();
+		second.put("title 1", movieData("tt1001", "Title 1", "DE"));
+		assertEquals("DE", second.get("title 1").getRegion());
+		assertEquals("US", cache.get("title 1").getRegion());
+	}
+
+	/**
+	 * Lookups while another thread puts and grows the table find every key put before they started.
+	 */
+	@Test
+	public void testLookupsDuringPuts() throws InterruptedException {
+		OffHeapMovieDataCache cache = new OffHeapMovieDataCache(4096, null);
+		int keys = 20000;
+		AtomicInteger put = new AtomicInteger();
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		Thread reader = new Thread(() -> {
+			try {
+				while (put.get() < keys) {
+					int i = put.get() - 1;
+					if (i >= 0) {
+						assertEquals(movieData("tt0000001", "Title " + i, "US"), cache.get("title " + i));
+					}
+				}
+			} catch (Throwable t) {
+				failure.set(t);
+			}
+		});
+		reader.start();
+		for (int i = 0; i < keys; i++) {
+			cache.put("title " + i, movieData("tt0000001", "Title " + i, "US"));
+			put.set(i + 1);
+		}
+		reader.join();
+		assertNull(failure.get());
+		assertEquals(keys, cache.size());
+	}
+
+	@Test
+	public void testMappedFile() throws IOException {
+		Path file = Files.createTempFile("moviefinder", ".movies");
+		try {
+			OffHeapMovieDataCache cache = new OffHeapMovieDataCache(file);
+			cache.put("heat", movieData("tt0113277", "Heat", "US"));
+			assertEquals(movieData("tt0113277", "Heat", "US"), cache.get("heat"));
+			assertEquals(OffHeapMovieDataCache.PAGE_SIZE, Files.size(file));
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testRecordLargerThanPage() {
+		StringBuilder title = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			title.append("title ");
+		}
+		new OffHeapMovieDataCache(256, null).put("key", movieData("tt0000001", title.toString(), "US"));
+	}
+
+}
@@ -0,0 +1,154 @@
+package com.moviefinder.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SearchBudgetTest {
+
+	@Before
+	public void startBudget() {
+		SearchBudget.start(0, 0);
+	}
+
+	@After
+	public void stopBudget() {
+		SearchBudget.stop();
+	}
+
+	@Test
+	public void testStepsAreBounded() {
+		SearchBudget.start(3000, 0);
+		SearchBudget budget = SearchBudget.current();
+		for (int i = 0; i < 3000; i++) {
+			assertTrue(budget.step());
+		}
+		assertFalse(SearchBudget.isTruncated());
+		assertFalse(budget.step());
+		assertFalse(budget.step());
+		assertTrue(SearchBudget.isTruncated());
+		assertTrue(SearchBudget.stop());
+		// unbounded once stopped, the truncation is kept until the next start
+		assertTrue(budget.step());
+		assertTrue(SearchBudget.isTruncated());
+		SearchBudget.start(0, 0);
+		assertFalse(SearchBudget.isTruncated());
+	}
+
+	@Test
+	public void testDeadline() throws InterruptedException {
+		SearchBudget.start(0, 1);
+		Thread.sleep(5);
+		SearchBudget budget = SearchBudget.current();
+		boolean stepped = true;
+		for (int i = 0; i <= SearchBudget.CHECK && stepped; i++) {
+			stepped = budget.step();
+		}
+		assertFalse(stepped);
+		assertTrue(SearchBudget.stop());
+	}
+
+	@Test
+	public void testExhaustedSearchesReturnWhatTheyFound() throws IOException {
+		List<String> titles = CompactTrieTest.loadTitles();
+		for (Trie<String> trie : Arrays.<Trie<String>>asList(new TrieImpl(), new CompactTrie())) {
+			trie.insertAll(titles);
+			Set<String> all = trie.search("e", 1000);
+			assertFalse(SearchBudget.isTruncated());
+
+			SearchBudget.start(2000, 0);
+			Set<String> truncated = trie.search("e", 1000);
+			assertTrue(SearchBudget.stop());
+			assertTrue(truncated.size() < all.size());
+			assertTrue(all.containsAll(truncated));
+
+			SearchBudget.start(2000, 0);
+			assertEquals(trie.prefixSearch("t", 5), trie.prefixSearch("t", 5));
+			assertFalse(SearchBudget.stop());
+		}
+	}
+
+	@Test
+	public void testIndexSearchesStop() throws IOException {
+		List<String> titles = CompactTrieTest.loadTitles();
+		TrigramIndex index = new TrigramIndex(titles);
+		WordIndex words = new WordIndex(titles);
+		int all = index.search("e", Integer.MAX_VALUE).size();
+		SearchBudget.start(100, 0);
+		assertTrue(index.search("e", Integer.MAX_VALUE).size() <= 100);
+		assertTrue(SearchBudget.stop());
+		SearchBudget.start(0, 0);
+		assertEquals(all, index.search("e", Integer.MAX_VALUE).size());
+		assertFalse(SearchBudget.stop());
+		SearchBudget.start(1, 0);
+		assertTrue(words.search("the l", Integer.MAX_VALUE).size() <= 1);
+		assertTrue(SearchBudget.stop());
+	}
+
+	@Test
+	public void testSharesTakeTheStepsOfTheCaller() throws InterruptedException {
+		SearchBudget.start(3000, 0);
+		SearchBudget.Share[] shares = { SearchBudget.share(2), SearchBudget.share(2) };
+		// one part on another thread, which exhausts its 1500 steps, and one on the calling thread
+		Thread part = new Thread(() -> SearchBudget.run(shares[1], () -> {
+			SearchBudget budget = SearchBudget.current();
+			int steps = 0;
+			while (budget.step()) {
+				steps++;
+			}
+			return steps;
+		}));
+		part.start();
+		part.join();
+		int steps = SearchBudget.run(shares[0], () -> {
+			SearchBudget budget = SearchBudget.current();
+			for (int i = 0; i < 1000; i++) {
+				budget.step();
+			}
+			return 1000;
+		});
+		assertEquals(1000, steps);
+		assertFalse(SearchBudget.isTruncated());
+		SearchBudget.join(shares[0]);
+		assertFalse(SearchBudget.isTruncated());
+		SearchBudget.join(shares[1]);
+		assertTrue(SearchBudget.isTruncated());
+		// 500 steps are left to the caller
+		SearchBudget budget = SearchBudget.current();
+		for (int i = 0; i < 500; i++) {
+			assertTrue(budget.step());
+		}
+		assertFalse(budget.step());
+		assertTrue(SearchBudget.stop());
+	}
+
+	@Test
+	public void testUnboundedShare() {
+		SearchBudget.Share share = SearchBudget.share(4);
+		assertEquals(Integer.valueOf(5000), SearchBudget.run(share, () -> {
+			SearchBudget budget = SearchBudget.current();
+			int steps = 0;
+			while (steps < 5000 && budget.step()) {
+				steps++;
+			}
+			return steps;
+		}));
+		SearchBudget.join(share);
+		assertFalse(SearchBudget.stop());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidBudget() {
+		SearchBudget.start(-1, 0);
+	}
+
+}
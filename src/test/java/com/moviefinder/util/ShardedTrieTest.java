@@ -0,0 +1,175 @@
+package com.moviefinder.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.collect.Iterables;
+
+public class ShardedTrieTest {
+
+	static List<String> titles;
+	static CompactTrie single;
+	static ShardedTrie sharded;
+
+	@BeforeClass
+	public static void createTries() throws IOException {
+		titles = CompactTrieTest.loadTitles();
+		single = new CompactTrie();
+		single.insertAll(titles);
+		sharded = new ShardedTrie(4);
+		sharded.insertAll(titles);
+	}
+
+	@Test
+	public void testSameTitles() {
+		assertEquals(4, sharded.shardCount());
+		assertEquals(single.size(), sharded.size());
+		assertEquals(single.prefixSearch(""), sharded.prefixSearch(""));
+	}
+
+	@Test
+	public void testPrefixSearch() {
+		for (String prefix : new String[] { "The", "the a", "Idy", "L'", "zzz" }) {
+			assertEquals(new ArrayList<>(single.prefixSearch(prefix)), new ArrayList<>(sharded.prefixSearch(prefix)));
+			List<String> streamed = new ArrayList<>();
+			int count = sharded.prefixSearch(prefix, 3, streamed::add);
+			assertEquals(count, streamed.size());
+			assertEquals(new ArrayList<>(single.prefixSearch(prefix, 3)), streamed);
+		}
+	}
+
+	@Test
+	public void testSearch() {
+		for (String key : new String[] { "dream", "ROM", "Idylle", "zzz" }) {
+			assertEquals(new HashSet<>(single.search(key)), new HashSet<>(sharded.search(key)));
+		}
+		assertEquals(2, sharded.search("the", 2).size());
+	}
+
+	@Test
+	public void testFuzzySearch() {
+		assertTrue(sharded.fuzzySearch("Idyle interompue", 1, 10).isEmpty());
+		assertEquals("Idylle interrompue", Iterables.getOnlyElement(sharded.fuzzySearch("Idyle interompue", 2, 10)));
+		assertEquals("Idylle", sharded.fuzzySearch("idyle", 1, 10).iterator().next());
+		assertEquals(new HashSet<>(single.fuzzySearch("idyle", 1, 100)), new HashSet<>(sharded.fuzzySearch("idyle", 1, 100)));
+		assertEquals(2, sharded.fuzzySearch("idyle", 1, 2).size());
+	}
+
+	@Test
+	public void testNodesVisited() {
+		SearchCounter.reset();
+		sharded.search("dream");
+		long visited = SearchCounter.reset();
+		assertTrue(visited >= sharded.size());
+		// the count of the caller is added to, whichever thread runs the shards
+		SearchCounter.add(1000);
+		sharded.search("dream");
+		assertEquals(1000 + visited, SearchCounter.reset());
+	}
+
+	/**
+	 * The shards searched on the pool share the budget of the caller, which is truncated if one of them is.
+	 */
+	@Test
+	public void testShardsShareTheBudget() {
+		SearchCounter.reset();
+		Set<String> all = sharded.search("e", 1000);
+		long allVisited = SearchCounter.reset();
+		SearchBudget.start(2000, 0);
+		Set<String> truncated = sharded.search("e", 1000);
+		long visited = SearchCounter.reset();
+		assertTrue(SearchBudget.stop());
+		// 2000 steps in all, not per shard, plus the few nodes counted without a step
+		assertTrue(visited + " nodes visited of " + allVisited, visited < allVisited / 2);
+		assertTrue(truncated.size() < all.size());
+		assertTrue(all.containsAll(truncated));
+
+		SearchBudget.start(0, 0);
+		assertEquals(all, sharded.search("e", 1000));
+		assertFalse(SearchBudget.stop());
+	}
+
+	/**
+	 * The values are numbered in insertion order across the shards, like the titles of a substring index.
+	 */
+	@Test
+	public void testNumberedValues() {
+		for (int id = 0; id < single.size(); id++) {
+			assertEquals(single.value(id), sharded.value(id));
+		}
+		for (String prefix : new String[] { "", "The", "the a", "Idy", "zzz" }) {
+			List<Integer> found = new ArrayList<>();
+			int count = sharded.prefixSearchIds(prefix, 5, id -> id % 2 == 1, found::add);
+			assertEquals(count, found.size());
+			assertTrue(found.size() <= 5);
+			for (int id : found) {
+				assertTrue(id % 2 == 1 && CaseFolding.startsWith(sharded.value(id), CaseFolding.fold(prefix)));
+			}
+		}
+
+		ShardedTrie trie = new ShardedTrie(2);
+		trie.insertAll(Arrays.asList("Alien", "Babe", "ALIEN", "Aliens"));
+		trie.insert("babe");
+		trie.insert("Cars");
+		assertEquals(4, trie.size());
+		assertEquals(Arrays.asList("ALIEN", "babe", "Aliens", "Cars"),
+				Arrays.asList(trie.value(0), trie.value(1), trie.value(2), trie.value(3)));
+		trie.clear();
+		assertEquals(0, trie.size());
+	}
+
+	@Test
+	public void testSearchInside() {
+		TrigramIndex index = new TrigramIndex(titles);
+		for (String key : new String[] { "dream", "the", "e" }) {
+			List<Integer> expected = new ArrayList<>();
+			List<Integer> found = new ArrayList<>();
+			index.searchIds(key, 10, id -> true, expected::add);
+			assertEquals(expected.size(), sharded.searchInside(index, key, 10, id -> true, found::add));
+			assertEquals(expected, found);
+		}
+	}
+
+	@Test
+	public void testPrefixDistance() {
+		assertEquals(0, ShardedTrie.prefixDistance("idyl".toCharArray(), "Idylle"));
+		assertEquals(1, ShardedTrie.prefixDistance("idyle".toCharArray(), "Idylle"));
+		assertEquals(2, ShardedTrie.prefixDistance("ab".toCharArray(), "x"));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvalidShardCount() {
+		new ShardedTrie(-1);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvalidValue() {
+		new ShardedTrie(2).insert("");
+	}
+
+	@Test
+	public void testRankedPrefixSearch() {
+		CompactTrie ranked = new CompactTrie();
+		ranked.insertAll(titles);
+		ranked.rank(String::length, 5, 4);
+		ShardedTrie rankedShards = new ShardedTrie(3);
+		rankedShards.insertAll(titles);
+		rankedShards.rank(String::length, 5, 4);
+		for (String prefix : new String[] { "t", "The", "the a", "Idy" }) {
+			assertEquals(new ArrayList<>(ranked.prefixSearch(prefix, 5)), new ArrayList<>(rankedShards.prefixSearch(prefix, 5)));
+		}
+	}
+
+}
+
@@ -0,0 +1,76 @@
+package com.moviefinder.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.function.IntPredicate;
+
+import org.junit.Test;
+
+import com.moviefinder.model.MovieData;
+import com.moviefinder.model.SuggestionFilter;
+
+public class TitleFacetsTest {
+
+	private static MovieData row(String region, String language, String isOriginalTitle) {
+		return MovieData.builder().region(region).language(language).isOriginalTitle(isOriginalTitle).build();
+	}
+
+	@Test
+	public void testFilterNeedsEveryValue() {
+		TitleFacets facets = new TitleFacets();
+		facets.add(0, row("FR", "\\N", "0"));
+		facets.add(0, row("US", "en", "1"));
+		facets.add(2, row("FR", "fr", "0"));
+
+		IntPredicate french = facets.filter(SuggestionFilter.builder().region("fr").build());
+		assertTrue(french.test(0));
+		assertFalse(french.test(1));
+		assertTrue(french.test(2));
+
+		// the values must all be on the same row of the title
+		IntPredicate frenchOriginal = facets.filter(SuggestionFilter.builder().region("FR").isOriginalTitle("1").build());
+		assertFalse(frenchOriginal.test(0));
+		assertFalse(frenchOriginal.test(2));
+		IntPredicate englishOriginal = facets.filter(SuggestionFilter.builder().language("EN").isOriginalTitle("1").build());
+		assertTrue(englishOriginal.test(0));
+		assertFalse(englishOriginal.test(2));
+		IntPredicate frenchNotOriginal = facets.filter(SuggestionFilter.builder().region("fr").isOriginalTitle("0").build());
+		assertTrue(frenchNotOriginal.test(0));
+		assertTrue(frenchNotOriginal.test(2));
+		assertFalse(facets.filter(SuggestionFilter.builder().region("US").language("fr").build()).test(0));
+
+		assertFalse(facets.filter(SuggestionFilter.builder().language("de").build()).test(0));
+		assertNull(facets.filter(SuggestionFilter.builder().region("").build()));
+		assertNull(facets.filter(null));
+		assertEquals(7, facets.valueCount());
+		assertEquals(3, facets.rowCount());
+	}
+
+	@Test
+	public void testMerged() {
+		TitleFacets base = new TitleFacets();
+		base.add(1, row("FR", "fr", "0"));
+		TitleFacets delta = new TitleFacets();
+		delta.add(0, row("FR", "en", "1"));
+
+		TitleFacets merged = base.merged(delta, 3);
+		IntPredicate french = merged.filter(SuggestionFilter.builder().region("FR").build());
+		assertTrue(french.test(1));
+		assertTrue(french.test(3));
+		assertFalse(french.test(0));
+		// neither is modified
+		assertFalse(base.filter(SuggestionFilter.builder().region("FR").build()).test(3));
+		assertFalse(delta.filter(SuggestionFilter.builder().region("FR").build()).test(3));
+		IntPredicate frenchInEnglish = merged.filter(SuggestionFilter.builder().region("FR").language("en").build());
+		assertTrue(frenchInEnglish.test(3));
+		assertFalse(frenchInEnglish.test(1));
+
+		TitleFacets copy = base.copy();
+		copy.add(5, row("US", "en", "0"));
+		assertFalse(base.filter(SuggestionFilter.builder().region("US").build()).test(5));
+	}
+
+}
@@ -5,6 +5,18 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import org.junit.Before;
 import org.junit.Test;
 
@@ -44,6 +56,18 @@ public class TrieImplTest {
 
 	}
 	
+	@Test
+	public void testFuzzySearch() throws IOException {
+		TrieImpl trie = new TrieImpl();
+		trie.insertAll(CompactTrieTest.loadTitles());
+		assertTrue(trie.search("Idyle interompue").isEmpty());
+		assertTrue(trie.fuzzySearch("Idyle interompue", 1, 10).isEmpty());
+		assertEquals("Idylle interrompue", Iterables.getOnlyElement(trie.fuzzySearch("Idyle interompue", 2, 10)));
+		assertTrue(trie.fuzzySearch("idylle interrompu", 0, 10).contains("Idylle interrompue"));
+		assertEquals("Idylle", trie.fuzzySearch("idyle", 1, 10).iterator().next());
+		assertEquals(2, trie.fuzzySearch("idyle", 1, 2).size());
+	}
+	
 	@Test(expected=IllegalArgumentException.class)
     public void testInsertNullValue() {
         trie.insert(null);
@@ -90,6 +114,57 @@ public class TrieImplTest {
 		assertEquals(2, trie.search("an").size());
     }
 	
+	@Test
+    public void testSearchStopsAtLimit() {
+		TrieImpl trie = new TrieImpl();
+        trie.insert("Raj");
+		trie.insert("Raje");
+		trie.insert("Raja");
+		trie.insert("Rajdeep");
+		trie.insert("Rajasthan");
+		trie.insert("Rajhans");
+		assertEquals(3, trie.search("aj", 3).size());
+		assertTrue(trie.search("aj").containsAll(trie.search("aj", 3)));
+		assertEquals(2, trie.search("an", 3).size());
+		assertEquals(4, trie.prefixSearch("raj", 4).size());
+    }
+	
+	@Test
+    public void testPrefixSearchKeepsOriginalCase() {
+		TrieImpl trie = new TrieImpl();
+        trie.insert("Raj");
+		trie.insert("RAJA");
+		trie.insert("Rajdeep");
+		trie.insert("Idylle");
+		assertEquals(3, trie.prefixSearch("rAj").size());
+		assertTrue(trie.prefixSearch("raj").containsAll(Arrays.asList("Raj", "RAJA", "Rajdeep")));
+		assertEquals("Rajdeep", Iterables.getOnlyElement(trie.prefixSearch("RAJD")));
+    }
+	
+	@Test
+    public void testValuesAreNumbered() {
+		TrieImpl trie = new TrieImpl();
+		trie.insert("Raj");
+		trie.insert("Rajdeep");
+		trie.insert("RAJ");
+		trie.insert("Idylle");
+		assertEquals(3, trie.size());
+		assertEquals("RAJ", trie.value(0));
+		assertEquals("Idylle", trie.value(2));
+		List<Integer> ids = new ArrayList<>();
+		assertEquals(2, trie.prefixSearchIds("raj", 10, id -> true, ids::add));
+		assertEquals(Arrays.asList(0, 1), ids);
+		ids.clear();
+		assertEquals(1, trie.prefixSearchIds("raj", 1, id -> id != 0, ids::add));
+		assertEquals(Arrays.asList(1), ids);
+		assertEquals(0, trie.prefixSearchIds("rajx", 1, id -> true, ids::add));
+    }
+
+	@Test(expected=IllegalArgumentException.class)
+    public void testSearchInvalidLimit() {
+        trie.search("aj", 0);
+    }
+	
 	@Test
     public void testFindRootNode() {
         assertNull(Iterables.getOnlyElement(trie.search(null)));
@@ -99,4 +174,91 @@ public class TrieImplTest {
     public void testFindEmptySTring() {
 		assertNull(Iterables.getOnlyElement(trie.search("")));
     }
+	
+	@Test
+    public void testSearchMatchesScan() throws IOException {
+		List<String> titles = CompactTrieTest.loadTitles();
+		TrieImpl trie = new TrieImpl();
+		trie.insertAll(titles);
+		for (String key : new String[] {"a", "id", "hotel", "LE C", "the"}) {
+			assertEquals(key, CompactTrieTest.scan(titles, key), trie.search(key));
+		}
+    }
+	
+	/**
+	 * Runs searches for many different keys from several threads at once on the same trie, each of them
+	 * must return exactly what the same search returns when run alone.
+	 */
+	@Test
+    public void testConcurrentSearch() throws Exception {
+		List<String> titles = CompactTrieTest.loadTitles();
+		TrieImpl trie = new TrieImpl();
+		trie.insertAll(titles);
+		List<String> keys = new ArrayList<>();
+		for (String title : titles) {
+			keys.add(title.substring(0, Math.min(title.length(), 1 + keys.size() % 6)));
+		}
+		Map<String, Set<String>> expected = new HashMap<>();
+		for (String key : keys) {
+			expected.put(key, trie.search(key));
+		}
+
+		int threads = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Callable<Integer>> tasks = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				int offset = t;
+				tasks.add(() -> {
+					int mismatches = 0;
+					for (int round = 0; round < 2; round++) {
+						for (int k = 0; k < keys.size(); k++) {
+							String key = keys.get((k + offset * 31) % keys.size());
+							if (!expected.get(key).equals(trie.search(key))) {
+								mismatches++;
+							}
+						}
+					}
+					return mismatches;
+				});
+			}
+			for (Future<Integer> result : executor.invokeAll(tasks)) {
+				assertEquals(0, result.get().intValue());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+    }
+
+	@Test
+	public void testNodesVisited() {
+		TrieImpl trie = new TrieImpl();
+		trie.insertAll(Arrays.asList("abcd", "abce", "xyz"));
+		assertEquals(9, trie.nodeCount());
+		assertTrue(trie.memoryEstimate() > 0);
+
+		SearchCounter.reset();
+		trie.prefixSearch("abc", 10);
+		// a, b and c walked, then d and e iterated
+		assertEquals(5, SearchCounter.reset());
+		trie.search("abe", 10);
+		assertTrue(SearchCounter.reset() > 0);
+		assertEquals(0, SearchCounter.reset());
+
+		trie.clear();
+		assertEquals(1, trie.nodeCount());
+	}
+
+	@Test
+	public void testPrefixSearchConsumer() throws IOException {
+		TrieImpl trie = new TrieImpl();
+		trie.insertAll(CompactTrieTest.loadTitles());
+		for (String prefix : Arrays.asList("", "the", "l", "zz")) {
+			List<String> found = new ArrayList<>();
+			int count = trie.prefixSearch(prefix, 25, found::add);
+			assertEquals(found.size(), count);
+			assertEquals(new ArrayList<>(trie.prefixSearch(prefix, 25)), found);
+		}
+	}
+
 }
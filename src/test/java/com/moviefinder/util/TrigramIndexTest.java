@@ -0,0 +1,107 @@
+package com.moviefinder.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class TrigramIndexTest {
+
+	@Test
+	public void testSearchMatchesScan() throws IOException {
+		List<String> titles = CompactTrieTest.loadTitles();
+		TrigramIndex index = new TrigramIndex(titles);
+		for (String key : Arrays.asList("a", "É", "id", "zq", "e ", "idy", "HOTEL", "lle int", "the", "e de", "zzz", "Idylle interrompue")) {
+			assertEquals(key, contains(titles, key, Integer.MAX_VALUE), index.search(key, Integer.MAX_VALUE));
+		}
+	}
+
+	@Test
+	public void testSearchStopsAtLimit() throws IOException {
+		List<String> titles = CompactTrieTest.loadTitles();
+		TrigramIndex index = new TrigramIndex(titles);
+		assertEquals(contains(titles, "the", 5), index.search("the", 5));
+		assertEquals(contains(titles, "e", 5), index.search("e", 5));
+	}
+
+	@Test
+	public void testSearchNeedsContiguousTrigrams() {
+		TrigramIndex index = new TrigramIndex(Arrays.asList("abcd xcde", "abcde"));
+		assertEquals(new LinkedHashSet<>(Arrays.asList("abcde")), index.search("BCDE", 10));
+		assertEquals(new LinkedHashSet<>(Arrays.asList("abcd xcde", "abcde")), index.search("cde", 10));
+		assertTrue(index.search("abcdef", 10).isEmpty());
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testSearchInvalidLimit() {
+		new TrigramIndex(Arrays.asList("abcd")).search("abc", 0);
+	}
+
+	private static Set<String> contains(List<String> titles, String key, int limit) {
+		Set<String> matches = new LinkedHashSet<>();
+		for (String title : titles) {
+			if (matches.size() < limit && title.toLowerCase().contains(key.toLowerCase())) {
+				matches.add(title);
+			}
+		}
+		return matches;
+	}
+
+	@Test
+	public void testDeclinedTitlesDoNotCount() {
+		TrigramIndex index = new TrigramIndex(Arrays.asList("The Matrix", "Matrix Reloaded", "Heat", "Not the Matrix"));
+		List<String> taken = new ArrayList<>();
+		assertEquals(2, index.search("matrix", 2, title -> !title.startsWith("Matrix") && taken.add(title)));
+		assertEquals(Arrays.asList("The Matrix", "Not the Matrix"), taken);
+	}
+
+	/**
+	 * The candidates checked in parts on a pool give the ids of the sequential search, in the same order.
+	 */
+	@Test
+	public void testParallelSearchMatchesSequential() {
+		List<String> titles = new ArrayList<>();
+		for (int i = 0; i < 4 * TrigramIndex.PARALLEL_CANDIDATES; i++) {
+			titles.add((i % 3 == 0 ? "Movie " : "Film ") + i);
+		}
+		TrigramIndex index = new TrigramIndex(titles);
+		ForkJoinPool pool = new ForkJoinPool(3);
+		try {
+			for (String key : Arrays.asList("e 1", "ovie 2", "ilm 9", "lm 1234", "zzz")) {
+				for (int limit : new int[] { 1, 10, Integer.MAX_VALUE }) {
+					List<Integer> sequential = new ArrayList<>();
+					List<Integer> parallel = new ArrayList<>();
+					int count = index.searchIds(key, limit, id -> id % 2 == 0, sequential::add);
+					assertEquals(count, index.searchIds(key, limit, id -> id % 2 == 0, parallel::add, pool, 4));
+					assertEquals(key, sequential, parallel);
+				}
+			}
+
+			// the parts share the budget of the caller
+			SearchBudget.start(4000, 0);
+			List<Integer> truncated = new ArrayList<>();
+			index.searchIds("ilm ", Integer.MAX_VALUE, id -> true, truncated::add, pool, 4);
+			assertTrue(SearchBudget.stop());
+			// 4000 steps in all, not per part
+			assertTrue(truncated.size() + " titles found", truncated.size() <= 4000);
+
+			SearchBudget.start(0, 0);
+			List<Integer> all = new ArrayList<>();
+			index.searchIds("ilm ", Integer.MAX_VALUE, id -> true, all::add, pool, 4);
+			assertFalse(SearchBudget.stop());
+			assertEquals(contains(titles, "ilm ", Integer.MAX_VALUE).size(), all.size());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+}
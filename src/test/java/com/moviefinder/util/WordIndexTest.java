@@ -0,0 +1,106 @@
+package com.moviefinder.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class WordIndexTest {
+
+	@Test
+	public void testSearchMatchesScan() throws IOException {
+		List<String> titles = CompactTrieTest.loadTitles();
+		WordIndex index = new WordIndex(titles);
+		for (String key : Arrays.asList("the", "THE ", "hotel badly", "the l", "l the", "de la", "la de ", "a",
+				"zzz the", "the zzz", "  ", "idylle interrompue")) {
+			assertEquals(key, scan(titles, key, Integer.MAX_VALUE), index.search(key, Integer.MAX_VALUE));
+		}
+	}
+
+	@Test
+	public void testSearchSkipsAlongLongPostings() {
+		List<String> titles = new ArrayList<>();
+		for (int i = 0; i < 5000; i++) {
+			titles.add((i % 2 == 0 ? "Red " : "Blue ") + (i % 7 == 0 ? "Moon " : "Sun ") + (i % 500 == 0 ? "Rising" : "Set"));
+		}
+		WordIndex index = new WordIndex(titles);
+		for (String key : Arrays.asList("rising red", "moon red ", "red moon ri", "sun blue set", "s", "moon r")) {
+			assertEquals(key, scan(titles, key, Integer.MAX_VALUE), index.search(key, Integer.MAX_VALUE));
+		}
+	}
+
+	@Test
+	public void testWordsInAnyOrder() {
+		WordIndex index = new WordIndex(Arrays.asList("A Badly Managed Hotel", "Hotel Transylvania", "Badlands"));
+		assertEquals(new LinkedHashSet<>(Arrays.asList("A Badly Managed Hotel")), index.search("hotel badly", 10));
+		assertEquals(new LinkedHashSet<>(Arrays.asList("A Badly Managed Hotel")), index.search("Badly hot", 10));
+		assertEquals(new LinkedHashSet<>(Arrays.asList("A Badly Managed Hotel", "Hotel Transylvania")),
+				index.search("hotel ", 10));
+		assertTrue(index.search("hotel bad ", 10).isEmpty());
+		assertTrue(index.search("hotel badlyx", 10).isEmpty());
+	}
+
+	@Test
+	public void testSearchStopsAtLimit() throws IOException {
+		List<String> titles = CompactTrieTest.loadTitles();
+		WordIndex index = new WordIndex(titles);
+		assertEquals(scan(titles, "the", 5), index.search("the", 5));
+		assertEquals(scan(titles, "l the", 2), index.search("l the", 2));
+	}
+
+	@Test
+	public void testDeclinedTitlesDoNotCount() {
+		WordIndex index = new WordIndex(Arrays.asList("The Matrix", "Matrix Reloaded", "Heat", "Not the Matrix"));
+		List<String> taken = new ArrayList<>();
+		assertEquals(2, index.search("matrix the", 2, title -> !title.startsWith("The") && taken.add(title))
+				+ index.search("reloaded matrix", 2, taken::add));
+		assertEquals(Arrays.asList("Not the Matrix", "Matrix Reloaded"), taken);
+	}
+
+	@Test
+	public void testContainsWords() {
+		String[] words = WordIndex.words("Hotel, BAD");
+		assertEquals(Arrays.asList("hotel", "bad"), Arrays.asList(words));
+		assertTrue(WordIndex.containsWords("A Badly Managed Hotel", words, true));
+		assertFalse(WordIndex.containsWords("A Badly Managed Hotel", words, false));
+		assertEquals(3, WordIndex.countWords(" a-b  c "));
+		assertTrue(WordIndex.endsInWord("the m"));
+		assertFalse(WordIndex.endsInWord("the "));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testSearchInvalidLimit() {
+		new WordIndex(Arrays.asList("abcd")).search("abc", 0);
+	}
+
+	private static Set<String> scan(List<String> titles, String key, int limit) {
+		String[] words = key.toLowerCase().trim().split("[^\\p{L}\\p{N}]+");
+		boolean prefix = Character.isLetterOrDigit(key.charAt(key.length() - 1));
+		Set<String> matches = new LinkedHashSet<>();
+		if (key.trim().isEmpty()) {
+			return matches;
+		}
+		for (String title : titles) {
+			List<String> titleWords = Arrays.asList(title.toLowerCase().split("[^\\p{L}\\p{N}]+"));
+			boolean all = true;
+			for (int i = 0; i < words.length && all; i++) {
+				String word = words[i];
+				all = prefix && i == words.length - 1 ? titleWords.stream().anyMatch(w -> w.startsWith(word))
+						: titleWords.contains(word);
+			}
+			if (all && matches.size() < limit) {
+				matches.add(title);
+			}
+		}
+		return matches;
+	}
+
+}